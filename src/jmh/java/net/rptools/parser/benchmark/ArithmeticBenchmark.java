@@ -0,0 +1,97 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import net.rptools.parser.ArrayVariableResolver;
+import net.rptools.parser.LinkedExpression;
+import net.rptools.parser.MapVariableResolver;
+import net.rptools.parser.NumericMode;
+import net.rptools.parser.Parser;
+import net.rptools.parser.ParserException;
+import net.rptools.parser.VariableResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures linked evaluation of integer arithmetic on token stats in each numeric mode, which in
+ * {@link NumericMode#FAST} is done on longs. One operation evaluates all macros.
+ */
+@State(Scope.Benchmark)
+public class ArithmeticBenchmark {
+  private static final List<String> MACROS =
+      List.of(
+          "Str * 2 + Dex * 3 - Con + Level * Proficiency",
+          "(HP - Damage) * 100 + Bonus",
+          "Str + Dex + Con + Int + Wis + Cha",
+          "-(Str - 10) * (Dex - 10) + Level * Level * 2",
+          "Roll1 + Roll2 + Roll3 + Roll4 - Penalty * 2 + Bonus");
+
+  @Param({"EXACT", "FAST"})
+  public NumericMode numericMode;
+
+  /** {@code map} for {@link MapVariableResolver}, or {@code array}. */
+  @Param({"map", "array"})
+  public String resolverType;
+
+  private final List<LinkedExpression> expressions = new ArrayList<>();
+  private VariableResolver resolver;
+
+  @Setup
+  public void setup() throws ParserException {
+    Parser parser = new Parser();
+    parser.setNumericMode(numericMode);
+    for (String macro : MACROS) {
+      expressions.add(parser.parseExpression(macro).link());
+    }
+
+    resolver =
+        resolverType.equals("array") ? new ArrayVariableResolver() : new MapVariableResolver();
+    String[] names = {
+      "Str",
+      "Dex",
+      "Con",
+      "Int",
+      "Wis",
+      "Cha",
+      "Level",
+      "Proficiency",
+      "HP",
+      "Damage",
+      "Bonus",
+      "Roll1",
+      "Roll2",
+      "Roll3",
+      "Roll4",
+      "Penalty"
+    };
+    for (int i = 0; i < names.length; i++) {
+      resolver.setVariable(names[i], new BigDecimal(8 + i));
+    }
+  }
+
+  @Benchmark
+  public void evaluate(Blackhole blackhole) throws ParserException {
+    for (LinkedExpression expression : expressions) {
+      blackhole.consume(expression.evaluate(resolver));
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser.benchmark;
+
+import java.math.BigDecimal;
+import net.rptools.parser.Expression;
+import net.rptools.parser.MapVariableResolver;
+import net.rptools.parser.Parser;
+import net.rptools.parser.ParserException;
+import net.rptools.parser.VariableBatch;
+import net.rptools.parser.VariableModifiers;
+import net.rptools.parser.VariableResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares evaluating one expression for many sets of variables row by row with evaluating it as a
+ * {@link VariableBatch}. One operation evaluates every row.
+ */
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+  @Param({"10", "100", "1000"})
+  public int rows;
+
+  @Param({"max(strength, dexterity) * 2 + floor(level / 2) + 10 * (1 + 2)"})
+  public String expression;
+
+  private Expression parsed;
+  private VariableBatch batch;
+  private VariableResolver shared;
+
+  @Setup
+  public void setup() throws ParserException {
+    parsed = new Parser().parseExpression(expression);
+
+    batch = new VariableBatch(rows);
+    batch.setVariable("strength", column(7));
+    batch.setVariable("dexterity", column(11));
+
+    shared = new MapVariableResolver();
+    shared.setVariable("level", new BigDecimal(5));
+  }
+
+  private BigDecimal[] column(int seed) {
+    var values = new BigDecimal[rows];
+    for (int i = 0; i < rows; i++) {
+      values[i] = new BigDecimal((i * seed) % 20);
+    }
+    return values;
+  }
+
+  @Benchmark
+  public void rowByRow(Blackhole blackhole) throws ParserException {
+    for (int row = 0; row < rows; row++) {
+      var resolver = new MapVariableResolver();
+      resolver.setVariable("strength", batch.getVariable("strength", row));
+      resolver.setVariable("dexterity", batch.getVariable("dexterity", row));
+      resolver.setVariable("level", shared.getVariable("level", VariableModifiers.None));
+      blackhole.consume(parsed.evaluate(resolver));
+    }
+  }
+
+  @Benchmark
+  public void batch(Blackhole blackhole) throws ParserException {
+    blackhole.consume(parsed.evaluate(batch, shared));
+  }
+}
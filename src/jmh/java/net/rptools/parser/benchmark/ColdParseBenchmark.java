@@ -0,0 +1,65 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser.benchmark;
+
+import java.util.List;
+import net.rptools.parser.ExpressionParser;
+import net.rptools.parser.Parser;
+import net.rptools.parser.ParserException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures parsing with a cold prediction DFA, as for the first requests after startup, with and
+ * without {@link Parser#warmUp}. One operation parses the evaluation corpus, after the DFA has been
+ * cleared and optionally warmed up with the parse corpus.
+ */
+@State(Scope.Benchmark)
+public class ColdParseBenchmark {
+  @Param({"false", "true"})
+  public boolean warmUp;
+
+  private Parser parser;
+  private List<String> samples;
+  private List<String> inputs;
+
+  @Setup
+  public void setup() {
+    parser = new Parser();
+    samples = Corpus.get(Corpus.PARSES);
+    inputs = Corpus.get(Corpus.EVALUATIONS);
+  }
+
+  @Setup(Level.Invocation)
+  public void clearDfa() {
+    // The DFA is static, so clearing it through any parser instance clears it for all of them.
+    new ExpressionParser(null).getInterpreter().clearDFA();
+    if (warmUp) {
+      parser.warmUp(samples);
+    }
+  }
+
+  @Benchmark
+  public void parseExpression(Blackhole blackhole) throws ParserException {
+    for (String input : inputs) {
+      blackhole.consume(parser.parseExpression(input));
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import net.rptools.parser.LinkedExpression;
+import net.rptools.parser.MapVariableResolver;
+import net.rptools.parser.Parser;
+import net.rptools.parser.ParserException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures linked evaluation of macros that repeat subexpressions, with and without common
+ * subexpression elimination. One operation evaluates all macros.
+ */
+@State(Scope.Benchmark)
+public class CommonSubexpressionBenchmark {
+  private static final List<String> MACROS =
+      List.of(
+          "max(Str*2+Dex, 10) + max(Str*2+Dex, 10)/2",
+          "floor((Str - 10) / 2) + floor((Str - 10) / 2) * Level",
+          "sqrt(Dex^2 + Str^2) > 10 && sqrt(Dex^2 + Str^2) < 20",
+          "round(mean(Str, Dex, Con) * 1.5) - round(mean(Str, Dex, Con) * 1.5) / 5",
+          "hypot(Str, Dex) + hypot(Str, Dex) + hypot(Str, Dex) + hypot(Str, Dex)");
+
+  @Param({"false", "true"})
+  public boolean commonSubexpressionElimination;
+
+  private final List<LinkedExpression> expressions = new ArrayList<>();
+  private MapVariableResolver resolver;
+
+  @Setup
+  public void setup() throws ParserException {
+    Parser parser = new Parser();
+    parser.setCommonSubexpressionElimination(commonSubexpressionElimination);
+    for (String macro : MACROS) {
+      expressions.add(parser.parseExpression(macro).link());
+    }
+
+    resolver = new MapVariableResolver();
+    resolver.setVariable("Str", new BigDecimal(16));
+    resolver.setVariable("Dex", new BigDecimal(13));
+    resolver.setVariable("Con", new BigDecimal(14));
+    resolver.setVariable("Level", new BigDecimal(5));
+  }
+
+  @Benchmark
+  public void evaluate(Blackhole blackhole) throws ParserException {
+    for (LinkedExpression expression : expressions) {
+      blackhole.consume(expression.evaluate(resolver));
+    }
+  }
+}
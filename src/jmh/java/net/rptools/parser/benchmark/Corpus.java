@@ -0,0 +1,111 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+
+/** Expression corpora shared by the benchmarks. */
+final class Corpus {
+  /** Expressions from the evaluation tests. All of them evaluate with the default functions. */
+  static final String EVALUATIONS = "evaluations";
+
+  /** Expressions from the parser tests. Some of them call functions that do not exist. */
+  static final String PARSES = "parses";
+
+  /** A single expression nested 100 levels deep. */
+  static final String DEEP = "deep";
+
+  /** A single function call with 500 parameters. */
+  static final String WIDE = "wide";
+
+  private Corpus() {}
+
+  static List<String> get(String name) {
+    return switch (name) {
+      case EVALUATIONS -> load("EvaluationTest.testSuccessfulEvaluations.csv");
+      case PARSES -> load("ParserTest.testSuccessfulParses.csv");
+      case DEEP -> List.of(deep(100));
+      case WIDE -> List.of(wide(500));
+      default -> throw new IllegalArgumentException("Unknown corpus " + name);
+    };
+  }
+
+  /** Builds {@code 1 + (2 - (3 + (4 - ...)))}. */
+  static String deep(int depth) {
+    var sb = new StringBuilder();
+    for (int i = 1; i < depth; i++) {
+      sb.append(i).append(i % 2 == 0 ? " - (" : " + (");
+    }
+    sb.append(depth);
+    sb.append(")".repeat(depth - 1));
+    return sb.toString();
+  }
+
+  /** Builds {@code sum(1, 2, 3, ...)}. */
+  static String wide(int width) {
+    var joiner = new StringJoiner(", ", "sum(", ")");
+    for (int i = 1; i <= width; i++) {
+      joiner.add(Integer.toString(i));
+    }
+    return joiner.toString();
+  }
+
+  /**
+   * Reads the input column of one of the test CSV files, which use {@code ;} as the delimiter and
+   * {@code `} as the quote character.
+   */
+  private static List<String> load(String resource) {
+    String text;
+    try (InputStream in = Corpus.class.getResourceAsStream("/net/rptools/parser/" + resource)) {
+      if (in == null) {
+        throw new IllegalStateException("Missing corpus " + resource);
+      }
+      text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    var inputs = new ArrayList<String>();
+    var row = new ArrayList<String>();
+    var field = new StringBuilder();
+    boolean quoted = false;
+    boolean header = true;
+    for (int i = 0; i <= text.length(); i++) {
+      char c = i < text.length() ? text.charAt(i) : '\n';
+      if (c == '`') {
+        quoted = !quoted;
+      } else if (quoted || (c != ';' && c != '\n')) {
+        field.append(c);
+      } else {
+        row.add(field.toString());
+        field.setLength(0);
+        if (c == '\n') {
+          if (!header && row.size() > 1) {
+            inputs.add(row.get(1));
+          }
+          header = false;
+          row.clear();
+        }
+      }
+    }
+    return inputs;
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.rptools.parser.Expression;
+import net.rptools.parser.MapVariableResolver;
+import net.rptools.parser.Parser;
+import net.rptools.parser.ParserException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link Expression#getDeterministicExpression}. One operation rewrites the whole corpus.
+ */
+@State(Scope.Benchmark)
+public class DeterministicBenchmark {
+  @Param({Corpus.EVALUATIONS, Corpus.DEEP, Corpus.WIDE})
+  public String corpus;
+
+  private final List<Expression> expressions = new ArrayList<>();
+
+  @Setup
+  public void setup() throws ParserException {
+    Parser parser = new Parser();
+    for (String input : Corpus.get(corpus)) {
+      expressions.add(parser.parseExpression(input));
+    }
+  }
+
+  @Benchmark
+  public void getDeterministicExpression(Blackhole blackhole) throws ParserException {
+    for (Expression expression : expressions) {
+      blackhole.consume(expression.getDeterministicExpression(new MapVariableResolver()));
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.rptools.parser.Expression;
+import net.rptools.parser.MapVariableResolver;
+import net.rptools.parser.NumericMode;
+import net.rptools.parser.Parser;
+import net.rptools.parser.ParserException;
+import net.rptools.parser.VariableResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures evaluation of parsed expressions with each of the evaluators. One operation evaluates
+ * the whole corpus.
+ */
+@State(Scope.Benchmark)
+public class EvaluateBenchmark {
+  /** Something that evaluates an expression. */
+  interface Evaluator {
+    Object evaluate(VariableResolver resolver) throws ParserException;
+  }
+
+  @Param({Corpus.EVALUATIONS, Corpus.DEEP, Corpus.WIDE})
+  public String corpus;
+
+  /** {@code tree} for {@link Expression#evaluate}, or {@code linked} or {@code compiled}. */
+  @Param({"tree", "linked", "compiled"})
+  public String evaluator;
+
+  @Param({"EXACT", "FAST"})
+  public NumericMode numericMode;
+
+  @Param({"false", "true"})
+  public boolean constantFolding;
+
+  private final List<Evaluator> evaluators = new ArrayList<>();
+
+  @Setup
+  public void setup() throws ParserException {
+    Parser parser = new Parser();
+    parser.setNumericMode(numericMode);
+    parser.setConstantFolding(constantFolding);
+
+    for (String input : Corpus.get(corpus)) {
+      Expression expression = parser.parseExpression(input);
+      evaluators.add(
+          switch (evaluator) {
+            case "tree" -> expression::evaluate;
+            case "linked" -> expression.link()::evaluate;
+            case "compiled" -> expression.compile()::evaluate;
+            default -> throw new IllegalArgumentException("Unknown evaluator " + evaluator);
+          });
+    }
+  }
+
+  @Benchmark
+  public void evaluate(Blackhole blackhole) throws ParserException {
+    for (Evaluator e : evaluators) {
+      blackhole.consume(e.evaluate(new MapVariableResolver()));
+    }
+  }
+}
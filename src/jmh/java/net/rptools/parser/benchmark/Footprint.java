@@ -0,0 +1,81 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.rptools.parser.Expression;
+import net.rptools.parser.ExpressionLexer;
+import net.rptools.parser.ExpressionParser;
+import net.rptools.parser.Parser;
+import net.rptools.parser.ParserException;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.openjdk.jol.info.GraphLayout;
+
+/**
+ * Reports the retained heap size of parsed expressions, as an expression cache would hold them.
+ *
+ * <p>For each corpus, every expression is parsed and kept. The retained size is reported for the
+ * expressions alone, and for the expressions together with the ANTLR {@link ExpressionParser} that
+ * parsed each of them, which is what an expression used to hold on to. Objects that are shared by
+ * all expressions, like the {@link Parser} and the static prediction DFA of the generated parser,
+ * are not counted.
+ *
+ * <p>Run with {@code ./gradlew footprint}.
+ */
+public final class Footprint {
+  private Footprint() {}
+
+  public static void main(String[] args) throws ParserException {
+    System.out.printf(
+        "%-12s %6s %14s %14s %15s%n",
+        "corpus", "count", "with parser", "AST only", "per expression");
+    for (String corpus : List.of(Corpus.EVALUATIONS, Corpus.PARSES, Corpus.DEEP, Corpus.WIDE)) {
+      report(corpus, Corpus.get(corpus));
+    }
+  }
+
+  private static void report(String corpus, List<String> sources) throws ParserException {
+    Parser parser = new Parser();
+    var expressions = new ArrayList<Expression>(sources.size());
+    var expressionParsers = new ArrayList<ExpressionParser>(sources.size());
+    for (String source : sources) {
+      expressions.add(parser.parseExpression(source));
+      expressionParsers.add(parse(source));
+    }
+
+    // The functions and the static DFA of the generated parser are shared by all expressions.
+    GraphLayout shared = GraphLayout.parseInstance(parser, parse("1"));
+    long after = GraphLayout.parseInstance(expressions).subtract(shared).totalSize();
+    long before =
+        GraphLayout.parseInstance(expressions, expressionParsers).subtract(shared).totalSize();
+
+    System.out.printf(
+        "%-12s %6d %14d %14d %6d -> %6d%n",
+        corpus, sources.size(), before, after, before / sources.size(), after / sources.size());
+  }
+
+  /**
+   * @return a generated parser after parsing {@code source}, as {@code Parser} used to create it
+   */
+  private static ExpressionParser parse(String source) {
+    var expressionParser =
+        new ExpressionParser(
+            new CommonTokenStream(new ExpressionLexer(CharStreams.fromString(source))));
+    expressionParser.full();
+    return expressionParser;
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import net.rptools.parser.Expression;
+import net.rptools.parser.ExpressionLibrary;
+import net.rptools.parser.Parser;
+import net.rptools.parser.ParserException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares starting up with an {@link ExpressionLibrary} against parsing every expression up front.
+ * The library is opened and a single expression is looked up, which is what a server does when it
+ * starts and then runs the first macro it is asked for.
+ */
+@State(Scope.Benchmark)
+public class LibraryBenchmark {
+  @Param({Corpus.EVALUATIONS, Corpus.PARSES, Corpus.DEEP, Corpus.WIDE})
+  public String corpus;
+
+  private Parser parser;
+  private List<String> inputs;
+  private Path file;
+
+  @Setup
+  public void setup() throws ParserException, IOException {
+    parser = new Parser();
+    inputs = Corpus.get(corpus);
+
+    var expressions = new LinkedHashMap<String, Expression>();
+    for (int i = 0; i < inputs.size(); i++) {
+      expressions.put("macro" + i, parser.parseExpression(inputs.get(i)));
+    }
+    file = Files.createTempFile("library", ".rptl");
+    ExpressionLibrary.write(file, expressions);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.delete(file);
+  }
+
+  @Benchmark
+  public void parseAll(Blackhole blackhole) throws ParserException {
+    for (String input : inputs) {
+      blackhole.consume(parser.parseExpression(input));
+    }
+  }
+
+  @Benchmark
+  public Expression openLibrary() throws IOException {
+    return ExpressionLibrary.open(parser, file).get("macro0");
+  }
+}
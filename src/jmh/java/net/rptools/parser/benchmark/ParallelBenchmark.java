@@ -0,0 +1,71 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import net.rptools.parser.Expression;
+import net.rptools.parser.MapVariableResolver;
+import net.rptools.parser.ParallelEvaluator;
+import net.rptools.parser.Parser;
+import net.rptools.parser.ParserException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures how {@link ParallelEvaluator} scales with the number of threads. One operation evaluates
+ * the evaluation corpus 100 times over.
+ */
+@State(Scope.Benchmark)
+public class ParallelBenchmark {
+  @Param({"1", "2", "4", "8"})
+  public int threads;
+
+  private final List<Expression> expressions = new ArrayList<>();
+  private ForkJoinPool pool;
+  private ParallelEvaluator evaluator;
+
+  @Setup
+  public void setup() throws ParserException {
+    Parser parser = new Parser();
+    parser.freeze();
+
+    List<String> inputs = Corpus.get(Corpus.EVALUATIONS);
+    for (int i = 0; i < 100; i++) {
+      for (String input : inputs) {
+        expressions.add(parser.parseExpression(input));
+      }
+    }
+
+    pool = new ForkJoinPool(threads);
+    evaluator = new ParallelEvaluator(pool, 16);
+  }
+
+  @TearDown
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Benchmark
+  public void evaluate(Blackhole blackhole) throws ParserException {
+    blackhole.consume(evaluator.evaluate(expressions, MapVariableResolver::new));
+  }
+}
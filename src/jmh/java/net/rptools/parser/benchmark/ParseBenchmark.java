@@ -0,0 +1,53 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser.benchmark;
+
+import java.util.List;
+import net.rptools.parser.Parser;
+import net.rptools.parser.ParserBackend;
+import net.rptools.parser.ParserException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Measures {@link Parser#parseExpression(String)}. One operation parses the whole corpus. */
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+  @Param({Corpus.EVALUATIONS, Corpus.PARSES, Corpus.DEEP, Corpus.WIDE})
+  public String corpus;
+
+  @Param({"ANTLR", "PRATT"})
+  public ParserBackend backend;
+
+  private Parser parser;
+  private List<String> inputs;
+
+  @Setup
+  public void setup() {
+    parser = new Parser();
+    parser.setBackend(backend);
+    inputs = Corpus.get(corpus);
+  }
+
+  @Benchmark
+  public void parseExpression(Blackhole blackhole) throws ParserException {
+    for (String input : inputs) {
+      blackhole.consume(parser.parseExpression(input));
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.rptools.parser.Expression;
+import net.rptools.parser.MapVariableResolver;
+import net.rptools.parser.Parser;
+import net.rptools.parser.ParserException;
+import net.rptools.parser.PrefetchingVariableResolver;
+import net.rptools.parser.VariableModifiers;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures tree evaluation against a resolver whose every round trip is expensive, as if it was
+ * backed by a remote store, looking variables up one at a time or {@linkplain
+ * Expression#evaluatePrefetched prefetching} them in one batch. One operation evaluates all macros,
+ * and the number of round trips is reported as a secondary result.
+ */
+@State(Scope.Benchmark)
+public class PrefetchBenchmark {
+  private static final List<String> MACROS =
+      List.of(
+          "Str + Dex + Con + Int + Wis + Cha",
+          "max(Str, Dex) * Level + Proficiency",
+          "(HP - Damage) / MaxHP * 100",
+          "floor((Str - 10) / 2) + floor((Dex - 10) / 2) + floor((Con - 10) / 2)");
+
+  /** The CPU spent on each round trip to the resolver, however many variables it reads. */
+  private static final long ROUND_TRIP_COST = 100;
+
+  /** The number of round trips to the resolver. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class RoundTrips {
+    public long roundTrips;
+  }
+
+  /** A resolver that makes every round trip expensive, and counts them. */
+  private static final class RemoteResolver extends MapVariableResolver
+      implements PrefetchingVariableResolver {
+    RoundTrips roundTrips;
+
+    @Override
+    public Object lookupVariable(String name, VariableModifiers vType) throws ParserException {
+      roundTrip();
+      return super.lookupVariable(name, vType);
+    }
+
+    @Override
+    public Map<String, Object> fetchVariables(Set<String> names) throws ParserException {
+      roundTrip();
+      var values = new HashMap<String, Object>();
+      for (String name : names) {
+        Object value = super.lookupVariable(name, VariableModifiers.None);
+        if (value != UNDEFINED) {
+          values.put(name, value);
+        }
+      }
+      return values;
+    }
+
+    void roundTrip() {
+      roundTrips.roundTrips++;
+      Blackhole.consumeCPU(ROUND_TRIP_COST);
+    }
+  }
+
+  @Param({"lookup", "prefetch", "async"})
+  public String mode;
+
+  private final List<Expression> expressions = new ArrayList<>();
+  private RemoteResolver resolver;
+
+  @Setup
+  public void setup() throws ParserException {
+    Parser parser = new Parser();
+    for (String macro : MACROS) {
+      expressions.add(parser.parseExpression(macro));
+    }
+
+    resolver = new RemoteResolver();
+    String[] names = {
+      "Str", "Dex", "Con", "Int", "Wis", "Cha", "Level", "Proficiency", "HP", "Damage", "MaxHP"
+    };
+    for (int i = 0; i < names.length; i++) {
+      resolver.setVariable(names[i], new BigDecimal(10 + i));
+    }
+  }
+
+  @Benchmark
+  public void evaluate(Blackhole blackhole, RoundTrips roundTrips) throws ParserException {
+    resolver.roundTrips = roundTrips;
+    for (Expression expression : expressions) {
+      blackhole.consume(
+          switch (mode) {
+            case "prefetch" -> expression.evaluatePrefetched(resolver);
+            case "async" -> expression.evaluateAsync(resolver).join();
+            default -> expression.evaluate(resolver);
+          });
+    }
+  }
+}
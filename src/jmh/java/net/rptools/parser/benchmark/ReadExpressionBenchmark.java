@@ -0,0 +1,69 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import net.rptools.parser.Parser;
+import net.rptools.parser.ParserException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares loading expressions with {@link Parser#readExpression} against parsing their source
+ * again. One operation loads the whole corpus.
+ */
+@State(Scope.Benchmark)
+public class ReadExpressionBenchmark {
+  @Param({Corpus.EVALUATIONS, Corpus.PARSES, Corpus.DEEP, Corpus.WIDE})
+  public String corpus;
+
+  private Parser parser;
+  private List<String> inputs;
+  private byte[] encoded;
+
+  @Setup
+  public void setup() throws ParserException, IOException {
+    parser = new Parser();
+    inputs = Corpus.get(corpus);
+
+    var out = new ByteArrayOutputStream();
+    for (String input : inputs) {
+      parser.parseExpression(input).writeTo(out);
+    }
+    encoded = out.toByteArray();
+  }
+
+  @Benchmark
+  public void parseExpression(Blackhole blackhole) throws ParserException {
+    for (String input : inputs) {
+      blackhole.consume(parser.parseExpression(input));
+    }
+  }
+
+  @Benchmark
+  public void readExpression(Blackhole blackhole) throws IOException {
+    var in = new ByteArrayInputStream(encoded);
+    for (int i = 0; i < inputs.size(); i++) {
+      blackhole.consume(parser.readExpression(in));
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser.benchmark;
+
+import java.math.BigDecimal;
+import net.rptools.parser.Expression;
+import net.rptools.parser.MapVariableResolver;
+import net.rptools.parser.Parser;
+import net.rptools.parser.ParserException;
+import net.rptools.parser.VariableModifiers;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures nested macro calls that isolate their assignments either by copying the variables of the
+ * caller or by giving each call a {@linkplain MapVariableResolver#getParent() scope} of the caller.
+ * One operation makes a chain of nested calls, each of which reads a variable of the outermost
+ * resolver and assigns one of its own. The number of variables stored by the whole chain is
+ * reported as a secondary result, next to the allocation rate of the gc profiler.
+ */
+@State(Scope.Benchmark)
+public class ScopeBenchmark {
+  /** The number of variables stored along the chain. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Stored {
+    public long storedVariables;
+  }
+
+  @Param({"copy", "scope"})
+  public String mode;
+
+  @Param({"1", "8", "32"})
+  public int depth;
+
+  @Param({"1000"})
+  public int variables;
+
+  private MapVariableResolver root;
+  private Expression call;
+
+  @Setup
+  public void setup() throws ParserException {
+    root = new MapVariableResolver();
+    for (int i = 0; i < variables; i++) {
+      root.setVariable("prop" + i, new BigDecimal(i));
+    }
+    call = new Parser().parseExpression("result = prop0 + prop" + (variables - 1));
+  }
+
+  @Benchmark
+  public void nest(Blackhole blackhole, Stored stored) throws ParserException {
+    MapVariableResolver resolver = root;
+    for (int i = 0; i < depth; i++) {
+      resolver = mode.equals("copy") ? copy(resolver) : new MapVariableResolver(resolver);
+      blackhole.consume(call.evaluate(resolver));
+      // Only count what this level stores itself, not what it reads through to.
+      stored.storedVariables += resolver.getParent() == null ? resolver.getVariables().size() : 1;
+    }
+    blackhole.consume(resolver);
+  }
+
+  private static MapVariableResolver copy(MapVariableResolver resolver) throws ParserException {
+    var copy = new MapVariableResolver();
+    for (String name : resolver.getVariables()) {
+      copy.setVariable(name, VariableModifiers.None, resolver.getVariable(name));
+    }
+    return copy;
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import net.rptools.parser.ArrayVariableResolver;
+import net.rptools.parser.LinkedExpression;
+import net.rptools.parser.MapVariableResolver;
+import net.rptools.parser.Parser;
+import net.rptools.parser.ParserException;
+import net.rptools.parser.VariableResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures linked evaluation of macros that read many variables, resolving them by name through a
+ * {@link MapVariableResolver} or by slot through an {@link ArrayVariableResolver}. One operation
+ * evaluates all macros.
+ */
+@State(Scope.Benchmark)
+public class VariableBenchmark {
+  private static final List<String> MACROS =
+      List.of(
+          "Str + Dex + Con + Int + Wis + Cha",
+          "max(Str, Dex) * Level + Proficiency",
+          "(HP - Damage) / MaxHP * 100",
+          "Str > 10 && Dex > 10 || Level >= 5",
+          "floor((Str - 10) / 2) + floor((Dex - 10) / 2) + floor((Con - 10) / 2)");
+
+  /** {@code map} for {@link MapVariableResolver}, or {@code array}. */
+  @Param({"map", "array"})
+  public String resolverType;
+
+  private final List<LinkedExpression> expressions = new ArrayList<>();
+  private VariableResolver resolver;
+
+  @Setup
+  public void setup() throws ParserException {
+    Parser parser = new Parser();
+    for (String macro : MACROS) {
+      expressions.add(parser.parseExpression(macro).link());
+    }
+
+    resolver =
+        switch (resolverType) {
+          case "map" -> new MapVariableResolver();
+          case "array" -> new ArrayVariableResolver();
+          default -> throw new IllegalArgumentException("Unknown resolver " + resolverType);
+        };
+    String[] names = {
+      "Str", "Dex", "Con", "Int", "Wis", "Cha", "Level", "Proficiency", "HP", "Damage", "MaxHP"
+    };
+    for (int i = 0; i < names.length; i++) {
+      resolver.setVariable(names[i], new BigDecimal(10 + i));
+    }
+  }
+
+  @Benchmark
+  public void evaluate(Blackhole blackhole) throws ParserException {
+    for (LinkedExpression expression : expressions) {
+      blackhole.consume(expression.evaluate(resolver));
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import net.rptools.parser.Expression;
+import net.rptools.parser.MapVariableResolver;
+import net.rptools.parser.Parser;
+import net.rptools.parser.ParserException;
+import net.rptools.parser.VariableModifiers;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures tree evaluation against a resolver whose every call is expensive, as if it was backed by
+ * a remote store, with and without a single-call {@link
+ * net.rptools.parser.VariableResolver#lookupVariable}. One operation evaluates all macros, and the
+ * number of resolver calls is reported as a secondary result.
+ */
+@State(Scope.Benchmark)
+public class VariableLookupBenchmark {
+  private static final List<String> MACROS =
+      List.of(
+          "Str + Dex + Con + Int + Wis + Cha",
+          "max(Str, Dex) * Level + Proficiency",
+          "(HP - Damage) / MaxHP * 100",
+          "floor((Str - 10) / 2) + floor((Dex - 10) / 2) + floor((Con - 10) / 2)");
+
+  /** The CPU spent on each call to the resolver. */
+  private static final long CALL_COST = 100;
+
+  /** The number of calls to the resolver. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Calls {
+    public long resolverCalls;
+  }
+
+  /** A resolver that makes every call expensive, and counts the calls. */
+  private static final class RemoteResolver extends MapVariableResolver {
+    private final boolean singleLookup;
+    Calls calls;
+
+    RemoteResolver(boolean singleLookup) {
+      this.singleLookup = singleLookup;
+    }
+
+    @Override
+    public boolean containsVariable(String name, VariableModifiers vType) throws ParserException {
+      call();
+      return super.containsVariable(name, vType);
+    }
+
+    @Override
+    public Object getVariable(String variableName, VariableModifiers vType) throws ParserException {
+      call();
+      return super.getVariable(variableName, vType);
+    }
+
+    @Override
+    public Object lookupVariable(String name, VariableModifiers vType) throws ParserException {
+      if (!singleLookup) {
+        // What the default implementation does.
+        return containsVariable(name, vType) ? getVariable(name, vType) : UNDEFINED;
+      }
+      call();
+      return super.lookupVariable(name, vType);
+    }
+
+    void call() {
+      calls.resolverCalls++;
+      Blackhole.consumeCPU(CALL_COST);
+    }
+  }
+
+  @Param({"false", "true"})
+  public boolean singleLookup;
+
+  private final List<Expression> expressions = new ArrayList<>();
+  private RemoteResolver resolver;
+
+  @Setup
+  public void setup() throws ParserException {
+    Parser parser = new Parser();
+    for (String macro : MACROS) {
+      expressions.add(parser.parseExpression(macro));
+    }
+
+    resolver = new RemoteResolver(singleLookup);
+    String[] names = {
+      "Str", "Dex", "Con", "Int", "Wis", "Cha", "Level", "Proficiency", "HP", "Damage", "MaxHP"
+    };
+    for (int i = 0; i < names.length; i++) {
+      resolver.setVariable(names[i], new BigDecimal(10 + i));
+    }
+  }
+
+  @Benchmark
+  public void evaluate(Blackhole blackhole, Calls calls) throws ParserException {
+    resolver.calls = calls;
+    for (Expression expression : expressions) {
+      blackhole.consume(expression.evaluate(resolver));
+    }
+  }
+}
@@ -14,18 +14,25 @@
  */
 package net.rptools;
 
-import java.util.ArrayList;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.ConcurrentModificationException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Set;
 
 /**
  * Implements a Map with case-insensitive keys.
  *
+ * <p>Entries are kept in an open-addressing table with linear probing. Keys are hashed and compared
+ * on their case-folded characters in place, so lookups never allocate.
+ *
  * <p>This class needs to have a <a href="http://xstream.codehaus.org/converter-tutorial.html">
  * converter class</a> for use by XStream so that it can read/write them in such a manner that older
  * tokens (or other uses) will be upwardly compatible. This is currently a problem for tokens older
@@ -35,63 +42,127 @@ import java.util.Set;
  * @param <V> is the type of the value for the Map implementation
  */
 public class CaseInsensitiveHashMap<V> implements Map<String, V> {
-  private final Map<String, KeyValue> store = new HashMap<String, KeyValue>();
+  private static final int INITIAL_CAPACITY = 16;
+
+  /** The table; its length is a power of two and it is never more than half full. */
+  private KeyValue[] table = newTable(INITIAL_CAPACITY);
+
+  private int size;
+  private int modCount;
+
+  private Set<String> keySet;
+  private Collection<V> values;
+  private Set<Entry<String, V>> entrySet;
 
   public void clear() {
-    store.clear();
+    Arrays.fill(table, null);
+    size = 0;
+    modCount++;
   }
 
+  /**
+   * Returns a copy of the entries keyed by their lowercase key.
+   *
+   * @return a snapshot of the entries; changes to it are not reflected in this map
+   * @deprecated entries are no longer stored in a {@code HashMap}; use {@link #entrySet()}
+   */
+  @Deprecated
   protected Map<String, KeyValue> getStore() {
+    Map<String, KeyValue> store = new HashMap<String, KeyValue>();
+    for (KeyValue kv : table) {
+      if (kv != null) store.put(kv.normalizedKey(), kv);
+    }
     return store;
   }
 
-  private String normalizeKey(Object key) {
-    if (key == null) return null;
-    return ((String) key).toLowerCase();
+  /**
+   * Hashes the case-folded code points of a key, consistent with {@link
+   * String#equalsIgnoreCase(String)}.
+   */
+  private static int hash(String key) {
+    if (key == null) return 0;
+
+    int h = 0;
+    for (int i = 0; i < key.length(); ) {
+      int c = key.charAt(i);
+      if (c < 0x80) {
+        if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+        i++;
+      } else {
+        c = key.codePointAt(i);
+        i += Character.charCount(c);
+        c = Character.toLowerCase(Character.toUpperCase(c));
+      }
+      h = 31 * h + c;
+    }
+    return h ^ (h >>> 16);
+  }
+
+  private static boolean keyEquals(String k1, String k2) {
+    return k1 == k2 || (k1 != null && k1.equalsIgnoreCase(k2));
+  }
+
+  /**
+   * @return the slot holding {@code key}, or the empty slot where it would be inserted.
+   */
+  private int slotFor(int hash, String key) {
+    KeyValue[] tab = table;
+    int mask = tab.length - 1;
+    int i = hash & mask;
+    for (KeyValue kv = tab[i]; kv != null; kv = tab[i]) {
+      if (kv.hash == hash && keyEquals(kv.key, key)) return i;
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  private KeyValue getEntry(Object key) {
+    if (key != null && !(key instanceof String)) return null;
+    String k = (String) key;
+    return table[slotFor(hash(k), k)];
   }
 
   public boolean containsKey(Object key) {
-    return store.containsKey(normalizeKey(key));
+    return getEntry(key) != null;
   }
 
   public boolean containsValue(Object value) {
-    for (Entry<String, KeyValue> entry : store.entrySet()) {
-      if ((entry.getValue()).value == value) return true;
+    for (KeyValue kv : table) {
+      if (kv != null && kv.value == value) return true;
     }
     return false;
   }
 
   public Set<java.util.Map.Entry<String, V>> entrySet() {
-    HashSet<Entry<String, V>> ret = new HashSet<Entry<String, V>>();
-
-    for (Entry<String, KeyValue> entry : store.entrySet()) {
-      ret.add(entry.getValue());
-    }
-    return ret;
+    if (entrySet == null) entrySet = new EntrySet();
+    return entrySet;
   }
 
   public V get(Object key) {
-    KeyValue kv = store.get(normalizeKey(key));
+    KeyValue kv = getEntry(key);
     if (kv == null) return null;
     return kv.getValue();
   }
 
+  @Override
+  public V getOrDefault(Object key, V defaultValue) {
+    KeyValue kv = getEntry(key);
+    if (kv == null) return defaultValue;
+    return kv.getValue();
+  }
+
   public boolean isEmpty() {
-    return store.isEmpty();
+    return size == 0;
   }
 
   /**
-   * Returns a key Set<> which contains case-insensitive Strings.
+   * Returns a key Set<> which contains case-insensitive Strings. The set is a view of this map.
    *
-   * @return list of keys converted to lowercase
+   * @return set of keys converted to lowercase
    */
   public Set<String> keySet() {
-    HashSet<String> ret = new HashSet<String>();
-
-    for (Entry<String, KeyValue> entry : store.entrySet()) {
-      ret.add(entry.getKey());
-    }
-    return ret;
+    if (keySet == null) keySet = new KeySet();
+    return keySet;
   }
 
   /**
@@ -104,16 +175,23 @@ public class CaseInsensitiveHashMap<V> implements Map<String, V> {
   public Set<String> keySetRaw() {
     HashSet<String> ret = new HashSet<String>();
 
-    for (Entry<String, KeyValue> entry : store.entrySet()) {
-      ret.add(entry.getValue().getKey());
+    for (KeyValue kv : table) {
+      if (kv != null) ret.add(kv.getKey());
     }
     return ret;
   }
 
   public V put(String key, V value) {
-    KeyValue oldValue = store.put(normalizeKey(key), new KeyValue(key, value));
+    int hash = hash(key);
+    int i = slotFor(hash, key);
+    KeyValue oldValue = table[i];
+    table[i] = new KeyValue(hash, key, value);
 
     if (oldValue != null) return oldValue.getValue();
+
+    size++;
+    modCount++;
+    if (size > table.length >>> 1) resize();
     return null;
   }
 
@@ -128,30 +206,201 @@ public class CaseInsensitiveHashMap<V> implements Map<String, V> {
   }
 
   public V remove(Object key) {
-    KeyValue oldValue = store.remove(normalizeKey(key));
+    if (key != null && !(key instanceof String)) return null;
+    String k = (String) key;
+    int i = slotFor(hash(k), k);
+    KeyValue oldValue = table[i];
 
-    if (oldValue != null) return oldValue.getValue();
-    return null;
+    if (oldValue == null) return null;
+    deleteSlot(i);
+    return oldValue.getValue();
   }
 
   public int size() {
-    return store.size();
+    return size;
   }
 
   public Collection<V> values() {
-    List<V> ret = new ArrayList<V>();
+    if (values == null) values = new Values();
+    return values;
+  }
+
+  private void resize() {
+    KeyValue[] oldTable = table;
+    KeyValue[] newTable = newTable(oldTable.length << 1);
+    int mask = newTable.length - 1;
 
-    for (Entry<String, KeyValue> entry : store.entrySet()) {
-      ret.add(entry.getValue().getValue());
+    for (KeyValue kv : oldTable) {
+      if (kv == null) continue;
+      int i = kv.hash & mask;
+      while (newTable[i] != null) i = (i + 1) & mask;
+      newTable[i] = kv;
+    }
+    table = newTable;
+  }
+
+  /**
+   * Empties slot {@code i}, moving later entries of the same probe sequence back so that no
+   * tombstones are needed (Knuth, Algorithm R).
+   */
+  private void deleteSlot(int i) {
+    KeyValue[] tab = table;
+    int mask = tab.length - 1;
+
+    for (int j = (i + 1) & mask; tab[j] != null; j = (j + 1) & mask) {
+      int home = tab[j].hash & mask;
+      // Move the entry at j back unless its home slot lies cyclically in (i, j].
+      boolean stays = (i <= j) ? (i < home && home <= j) : (i < home || home <= j);
+      if (!stays) {
+        tab[i] = tab[j];
+        i = j;
+      }
+    }
+    tab[i] = null;
+    size--;
+    modCount++;
+  }
+
+  @SuppressWarnings("unchecked")
+  private KeyValue[] newTable(int capacity) {
+    return (KeyValue[]) new CaseInsensitiveHashMap<?>.KeyValue[capacity];
+  }
+
+  /**
+   * Iterates over the table starting just after an empty slot. Since removals only move entries
+   * backwards within a run of occupied slots, an entry shifted into the slot just returned is the
+   * only one that could be skipped, so {@link #remove()} revisits that slot.
+   */
+  private abstract class TableIterator<T> implements Iterator<T> {
+    private final KeyValue[] tab = table;
+    private final int start;
+    private int offset = 0;
+    private int lastOffset = -1;
+    private int expectedModCount = modCount;
+
+    TableIterator() {
+      int empty = 0;
+      while (tab[empty] != null) empty++;
+      start = empty + 1;
+    }
+
+    private int index(int offset) {
+      return (start + offset) & (tab.length - 1);
+    }
+
+    public boolean hasNext() {
+      while (offset < tab.length && tab[index(offset)] == null) offset++;
+      return offset < tab.length;
+    }
+
+    KeyValue nextEntry() {
+      if (modCount != expectedModCount) throw new ConcurrentModificationException();
+      if (!hasNext()) throw new NoSuchElementException();
+      lastOffset = offset++;
+      return tab[index(lastOffset)];
+    }
+
+    public void remove() {
+      if (lastOffset < 0) throw new IllegalStateException();
+      if (modCount != expectedModCount) throw new ConcurrentModificationException();
+
+      int i = index(lastOffset);
+      deleteSlot(i);
+      expectedModCount = modCount;
+      if (tab[i] != null) offset = lastOffset;
+      lastOffset = -1;
+    }
+  }
+
+  private class KeySet extends AbstractSet<String> {
+    public Iterator<String> iterator() {
+      return new TableIterator<String>() {
+        public String next() {
+          return nextEntry().normalizedKey();
+        }
+      };
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public boolean contains(Object o) {
+      return containsKey(o);
+    }
+
+    public boolean remove(Object o) {
+      int oldSize = size;
+      CaseInsensitiveHashMap.this.remove(o);
+      return size != oldSize;
+    }
+
+    public void clear() {
+      CaseInsensitiveHashMap.this.clear();
+    }
+  }
+
+  private class Values extends AbstractCollection<V> {
+    public Iterator<V> iterator() {
+      return new TableIterator<V>() {
+        public V next() {
+          return nextEntry().getValue();
+        }
+      };
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public void clear() {
+      CaseInsensitiveHashMap.this.clear();
+    }
+  }
+
+  private class EntrySet extends AbstractSet<Entry<String, V>> {
+    public Iterator<Entry<String, V>> iterator() {
+      return new TableIterator<Entry<String, V>>() {
+        public Entry<String, V> next() {
+          return nextEntry();
+        }
+      };
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public boolean contains(Object o) {
+      if (!(o instanceof Map.Entry<?, ?> e)) return false;
+      KeyValue kv = getEntry(e.getKey());
+      return kv != null && Objects.equals(kv.getValue(), e.getValue());
+    }
+
+    public boolean remove(Object o) {
+      if (!contains(o)) return false;
+      CaseInsensitiveHashMap.this.remove(((Map.Entry<?, ?>) o).getKey());
+      return true;
+    }
+
+    public void clear() {
+      CaseInsensitiveHashMap.this.clear();
     }
-    return ret;
   }
 
   protected class KeyValue implements Map.Entry<String, V> {
     public String key;
     public V value;
 
+    private final int hash;
+    private String normalizedKey;
+
     public KeyValue(String key, V value) {
+      this(CaseInsensitiveHashMap.hash(key), key, value);
+    }
+
+    private KeyValue(int hash, String key, V value) {
+      this.hash = hash;
       this.key = key;
       this.value = value;
     }
@@ -170,6 +419,14 @@ public class CaseInsensitiveHashMap<V> implements Map<String, V> {
       return oldValue;
     }
 
+    /**
+     * @return the key converted to lowercase
+     */
+    String normalizedKey() {
+      if (normalizedKey == null && key != null) normalizedKey = key.toLowerCase();
+      return normalizedKey;
+    }
+
     @Override
     public final boolean equals(Object o) {
       if (o instanceof Map.Entry) {
@@ -0,0 +1,130 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import net.rptools.CaseInsensitiveHashMap;
+
+/**
+ * An {@link IndexedVariableResolver} that keeps the values of its variables in an array.
+ *
+ * <p>Apart from resolving variables by slot, it behaves just like {@link MapVariableResolver}:
+ * names are case insensitive, modifiers are ignored, and {@code true} and {@code false} are
+ * predefined constants.
+ *
+ * <p>This class is not thread-safe. When evaluating in parallel, give each task its own resolver.
+ */
+public class ArrayVariableResolver implements IndexedVariableResolver {
+  private static final Map<String, Object> constants =
+      Map.of(
+          "true", BigDecimal.ONE,
+          "false", BigDecimal.ZERO);
+
+  private final Map<String, Integer> slots = new CaseInsensitiveHashMap<>();
+  private Object[] values = new Object[16];
+
+  public ArrayVariableResolver() {
+    for (var constant : constants.entrySet()) {
+      values[getSlot(constant.getKey())] = constant.getValue();
+    }
+  }
+
+  @Override
+  public int getSlot(String name) {
+    Integer slot = slots.get(name);
+    if (slot == null) {
+      slot = slots.size();
+      if (slot == values.length) {
+        values = Arrays.copyOf(values, slot * 2);
+      }
+      values[slot] = UNDEFINED;
+      slots.put(name, slot);
+    }
+    return slot;
+  }
+
+  @Override
+  public boolean containsVariable(int slot) {
+    return values[slot] != UNDEFINED;
+  }
+
+  @Override
+  public Object getVariable(int slot) {
+    Object value = values[slot];
+    return value == UNDEFINED ? null : value;
+  }
+
+  @Override
+  public void setVariable(int slot, Object value) {
+    values[slot] = value;
+  }
+
+  public boolean containsVariable(String name) throws ParserException {
+    return containsVariable(name, VariableModifiers.None);
+  }
+
+  public void setVariable(String name, Object value) throws ParserException {
+    if (constants.containsKey(name)) {
+      throw new ParserException(name + " can not be the target of assignment.");
+    }
+    setVariable(name, VariableModifiers.None, value);
+  }
+
+  public Object getVariable(String variableName) throws ParserException {
+    return getVariable(variableName, VariableModifiers.None);
+  }
+
+  public boolean containsVariable(String name, VariableModifiers vType) throws ParserException {
+    Integer slot = slots.get(name);
+    return slot != null && containsVariable(slot);
+  }
+
+  public void setVariable(String name, VariableModifiers vType, Object value)
+      throws ParserException {
+    setVariable(getSlot(name), value);
+  }
+
+  public Object getVariable(String variableName, VariableModifiers vType) throws ParserException {
+    Integer slot = slots.get(variableName);
+    return slot == null ? null : getVariable(slot);
+  }
+
+  @Override
+  public Object lookupVariable(int slot) {
+    return values[slot];
+  }
+
+  @Override
+  public Object lookupVariable(String name, VariableModifiers vType) throws ParserException {
+    Integer slot = slots.get(name);
+    return slot == null ? UNDEFINED : values[slot];
+  }
+
+  @Override
+  public Set<String> getVariables() {
+    var variables = new HashSet<String>();
+    for (var entry : slots.entrySet()) {
+      if (containsVariable(entry.getValue())) {
+        variables.add(entry.getKey());
+      }
+    }
+    return Collections.unmodifiableSet(variables);
+  }
+}
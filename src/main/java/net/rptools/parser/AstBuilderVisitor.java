@@ -18,11 +18,25 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import net.rptools.parser.ast.AST;
+import net.rptools.parser.ast.AstInterner;
 import net.rptools.parser.ast.BinaryOperator;
 import net.rptools.parser.ast.UnaryOperator;
 import org.antlr.v4.runtime.Token;
 
 public class AstBuilderVisitor extends ExpressionParserBaseVisitor<AST> {
+  private final AstInterner interner;
+
+  public AstBuilderVisitor() {
+    this(null);
+  }
+
+  /**
+   * @param interner the interner for the nodes that are built, or {@code null} to not intern them
+   */
+  public AstBuilderVisitor(AstInterner interner) {
+    this.interner = interner;
+  }
+
   @Override
   public AST visitBracket(ExpressionParser.BracketContext ctx) {
     return visit(ctx.child);
@@ -30,25 +44,25 @@ public class AstBuilderVisitor extends ExpressionParserBaseVisitor<AST> {
 
   @Override
   public AST.Variable visitVariable(ExpressionParser.VariableContext ctx) {
-    return new AST.Variable(ctx.getText(), ctx.id.getText());
+    return intern(new AST.Variable(ctx.getText(), ctx.id.getText()));
   }
 
   @Override
   public AST.PromptVariable visitPromptvariable(ExpressionParser.PromptvariableContext ctx) {
     var id = ctx.id.getText();
-    return new AST.PromptVariable(ctx.getText(), id);
+    return intern(new AST.PromptVariable(ctx.getText(), id));
   }
 
   @Override
   public AST.NumberLiteral visitDecimal(ExpressionParser.DecimalContext ctx) {
     var value = new BigDecimal(ctx.number.getText());
-    return new AST.NumberLiteral(ctx.getText(), value);
+    return intern(new AST.NumberLiteral(ctx.getText(), value));
   }
 
   @Override
   public AST.NumberLiteral visitHexadecimal(ExpressionParser.HexadecimalContext ctx) {
     var value = new BigInteger(ctx.number.getText().substring(2), 16);
-    return new AST.NumberLiteral(ctx.getText(), new BigDecimal(value));
+    return intern(new AST.NumberLiteral(ctx.getText(), new BigDecimal(value)));
   }
 
   @Override
@@ -56,7 +70,7 @@ public class AstBuilderVisitor extends ExpressionParserBaseVisitor<AST> {
     // First and last character are the quotes, so discard those.
     var text = ctx.string.getText();
     var value = text.substring(1, text.length() - 1);
-    return new AST.StringLiteral(ctx.getText(), value);
+    return intern(new AST.StringLiteral(ctx.getText(), value));
   }
 
   @Override
@@ -96,9 +110,9 @@ public class AstBuilderVisitor extends ExpressionParserBaseVisitor<AST> {
 
   @Override
   public AST.Assignment visitAssignment(ExpressionParser.AssignmentContext ctx) {
-    var lhs = new AST.Variable(ctx.id.getText(), ctx.id.getText());
+    var lhs = intern(new AST.Variable(ctx.id.getText(), ctx.id.getText()));
     var rhs = visit(ctx.rhs);
-    return new AST.Assignment(ctx.operator.getText(), lhs, rhs);
+    return intern(new AST.Assignment(ctx.operator.getText(), lhs, rhs));
   }
 
   @Override
@@ -108,7 +122,7 @@ public class AstBuilderVisitor extends ExpressionParserBaseVisitor<AST> {
     for (var expr : ctx.expr()) {
       params.add(visit(expr));
     }
-    return new AST.FunctionCall(function, function, params);
+    return intern(new AST.FunctionCall(function, function, params));
   }
 
   private AST.Unary buildUnary(Token operatorToken, ExpressionParser.ExprContext operand) {
@@ -121,7 +135,7 @@ public class AstBuilderVisitor extends ExpressionParserBaseVisitor<AST> {
               throw new RuntimeException("Invalid unary operator " + operatorToken.getText());
         };
 
-    return new AST.Unary(operatorToken.getText(), operator, visit(operand));
+    return intern(new AST.Unary(operatorToken.getText(), operator, visit(operand)));
   }
 
   private AST.Binary buildBinary(
@@ -145,6 +159,10 @@ public class AstBuilderVisitor extends ExpressionParserBaseVisitor<AST> {
               throw new RuntimeException("Invalid binary operator " + operatorToken.getText());
         };
 
-    return new AST.Binary(operatorToken.getText(), operator, visit(lhs), visit(rhs));
+    return intern(new AST.Binary(operatorToken.getText(), operator, visit(lhs), visit(rhs)));
+  }
+
+  private <T extends AST> T intern(T node) {
+    return interner == null ? node : interner.intern(node);
   }
 }
@@ -0,0 +1,356 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.rptools.CaseInsensitiveHashMap;
+import net.rptools.parser.ast.AST;
+import net.rptools.parser.function.EvaluationException;
+import net.rptools.parser.function.Function;
+import net.rptools.parser.function.LazyFunction;
+
+/**
+ * Evaluates an {@link AST} for every row of a {@link VariableBatch}.
+ *
+ * <p>The tree is walked once per batch rather than once per row. Each node looks up its function
+ * once and then calls it in a tight loop over the rows, and subtrees that do not depend on any
+ * variable are evaluated only once for the whole batch. Variables that come from the batch are read
+ * straight from its columns.
+ *
+ * <p>Every row gets its own {@link VariableResolver}, so assignments in one row are not visible to
+ * the others. A row resolver reads variables assigned in its row first, then the batch, then the
+ * shared resolver passed to {@link #evaluate}. The shared resolver is never written to. As long as
+ * no row has assigned a variable, a variable that is not in the batch is read from the shared
+ * resolver once per node rather than once per row.
+ *
+ * <p>Calls to a {@link LazyFunction} are made row by row, and each row evaluates the parameters the
+ * function asks for on its own.
+ *
+ * <p>Nodes are evaluated column by column, so the calls for different rows are interleaved
+ * differently than when evaluating each row on its own. Within a row, the evaluation order is the
+ * same. If the evaluation fails for any row, the whole batch fails.
+ */
+public class BatchEvaluator {
+  private final Parser parser;
+
+  public BatchEvaluator(Parser parser) {
+    this.parser = parser;
+  }
+
+  /**
+   * Evaluate a tree for every row of a batch.
+   *
+   * @param node the tree to evaluate
+   * @param batch the variable bindings for each row
+   * @param resolver the resolver for variables that are not in the batch
+   * @return the result of each row
+   * @throws ParserException if the evaluation fails for any row
+   */
+  public Object[] evaluate(AST node, VariableBatch batch, VariableResolver resolver)
+      throws ParserException {
+    var context = new Context(batch, resolver);
+    Column result = evaluate(node, context);
+
+    var results = new Object[batch.size()];
+    for (int row = 0; row < results.length; row++) {
+      results[row] = result.get(row);
+    }
+    return results;
+  }
+
+  private Column evaluate(AST node, Context context) throws ParserException {
+    return switch (node) {
+      case AST.Variable variable -> variable(variable.variable(), VariableModifiers.None, context);
+      case AST.PromptVariable promptVariable ->
+          variable(promptVariable.variable(), VariableModifiers.Prompt, context);
+      case AST.NumberLiteral numberLiteral -> new Uniform(numberLiteral.value());
+      case AST.StringLiteral stringLiteral -> new Uniform(stringLiteral.value());
+      case AST.Unary unary -> {
+        var functionName = unary.operator().asText();
+        if (parser.getFunction(functionName) instanceof LazyFunction lazy) {
+          yield lazyCall(lazy, functionName, List.of(unary.operand()), context);
+        }
+
+        var operand = evaluate(unary.operand(), context);
+        yield call(
+            lookup(functionName, "Undefined unary function: %s"),
+            functionName,
+            new Column[] {operand},
+            context);
+      }
+      case AST.Binary binary -> {
+        var functionName = binary.operator().asText();
+        if (parser.getFunction(functionName) instanceof LazyFunction lazy) {
+          yield lazyCall(lazy, functionName, List.of(binary.lhs(), binary.rhs()), context);
+        }
+
+        var lhs = evaluate(binary.lhs(), context);
+        var rhs = evaluate(binary.rhs(), context);
+        yield call(
+            lookup(functionName, "Undefined binary function: %s"),
+            functionName,
+            new Column[] {lhs, rhs},
+            context);
+      }
+      case AST.Assignment assignment -> {
+        // Note: the left-hand side is passed by name, not evaluated.
+        var name = assignment.lhs().text();
+
+        var functionName = "=";
+        if (parser.getFunction(functionName) instanceof LazyFunction lazy) {
+          yield lazyCall(
+              lazy,
+              functionName,
+              List.of(new AST.StringLiteral(name, name), assignment.rhs()),
+              context);
+        }
+
+        var lhs = new Uniform(name);
+        var rhs = evaluate(assignment.rhs(), context);
+        yield call(
+            lookup(functionName, "Undefined binary function: %s"),
+            functionName,
+            new Column[] {lhs, rhs},
+            context);
+      }
+      case AST.FunctionCall functionCall -> {
+        String name = functionCall.function();
+        if (parser.getFunction(name) instanceof LazyFunction lazy) {
+          yield lazyCall(lazy, name, functionCall.parameters(), context);
+        }
+
+        var params = new Column[functionCall.parameters().size()];
+        for (int i = 0; i < params.length; i++) {
+          params[i] = evaluate(functionCall.parameters().get(i), context);
+        }
+
+        yield call(lookup(name, "Undefined function: %s"), name, params, context);
+      }
+    };
+  }
+
+  private Function lookup(String functionName, String errorFormat) throws EvaluationException {
+    Function function = parser.getFunction(functionName);
+    if (function == null) {
+      throw new EvaluationException(String.format(errorFormat, functionName));
+    }
+    return function;
+  }
+
+  private Column variable(String name, VariableModifiers modifiers, Context context)
+      throws ParserException {
+    if (!context.assigned) {
+      Object[] column = context.batch.getColumn(name);
+      if (column != null) {
+        return new Values(column);
+      }
+      Object value = context.shared.lookupVariable(name, modifiers);
+      if (value == VariableResolver.UNDEFINED) {
+        throw new EvaluationException(String.format("Undefined variable: %s", name));
+      }
+      return new Uniform(value);
+    }
+
+    // Some row has assigned a variable, so each row has to be resolved on its own.
+    var values = new Object[context.batch.size()];
+    for (int row = 0; row < values.length; row++) {
+      Object value = context.row(row).lookupVariable(name, modifiers);
+      if (value == VariableResolver.UNDEFINED) {
+        throw new EvaluationException(String.format("Undefined variable: %s", name));
+      }
+      values[row] = value;
+    }
+    return new Values(values);
+  }
+
+  private Column call(Function function, String functionName, Column[] params, Context context)
+      throws ParserException {
+    if (function.isDeterministic() && Arrays.stream(params).allMatch(p -> p instanceof Uniform)) {
+      // The result is the same for every row, unless the function uses the resolver. Try it once
+      // with a resolver that refuses to be used, and fall back to evaluating each row if it fails.
+      var args = new Object[params.length];
+      for (int i = 0; i < args.length; i++) {
+        args[i] = ((Uniform) params[i]).value();
+      }
+      try {
+        return new Uniform(
+            function.evaluate(
+                parser, NoVariableResolver.INSTANCE, functionName, Arrays.asList(args)));
+      } catch (ParserException | RuntimeException e) {
+        // Evaluate each row below, which reports the failure if it was not caused by the resolver.
+      }
+    }
+
+    var results = new Object[context.batch.size()];
+    for (int row = 0; row < results.length; row++) {
+      // Each call gets its own array, in case the function holds on to its parameters.
+      var args = new Object[params.length];
+      for (int i = 0; i < args.length; i++) {
+        args[i] = params[i].get(row);
+      }
+      results[row] = function.evaluate(parser, context.row(row), functionName, Arrays.asList(args));
+    }
+    return new Values(results);
+  }
+
+  /**
+   * Call a lazy function for each row. Its parameters can not be evaluated for the whole batch up
+   * front, so each row evaluates the parameters the function asks for on its own.
+   */
+  private Column lazyCall(
+      LazyFunction function, String functionName, List<AST> params, Context context)
+      throws ParserException {
+    EvaluationTreeParser rowEvaluator = parser.getEvaluationTreeParser();
+
+    var results = new Object[context.batch.size()];
+    for (int row = 0; row < results.length; row++) {
+      VariableResolver resolver = context.row(row);
+      var args = new LazyFunction.Parameter[params.size()];
+      for (int i = 0; i < args.length; i++) {
+        AST param = params.get(i);
+        args[i] = () -> rowEvaluator.evaluate(param, resolver);
+      }
+      results[row] = function.evaluateLazily(parser, resolver, functionName, Arrays.asList(args));
+    }
+    return new Values(results);
+  }
+
+  /** The values of a node for every row. */
+  private sealed interface Column permits Uniform, Values {
+    Object get(int row);
+  }
+
+  /** A node that has the same value for every row. */
+  private record Uniform(Object value) implements Column {
+    @Override
+    public Object get(int row) {
+      return value;
+    }
+  }
+
+  /** A node that has a value per row. */
+  private record Values(Object[] values) implements Column {
+    @Override
+    public Object get(int row) {
+      return values[row];
+    }
+  }
+
+  /** The state of a single batch evaluation. */
+  private static final class Context {
+    private final VariableBatch batch;
+    private final VariableResolver shared;
+    private final RowResolver[] rows;
+
+    /** Whether any row has assigned a variable. */
+    private boolean assigned;
+
+    Context(VariableBatch batch, VariableResolver shared) {
+      this.batch = batch;
+      this.shared = shared;
+      this.rows = new RowResolver[batch.size()];
+    }
+
+    RowResolver row(int row) {
+      RowResolver resolver = rows[row];
+      if (resolver == null) {
+        resolver = new RowResolver(this, row);
+        rows[row] = resolver;
+      }
+      return resolver;
+    }
+  }
+
+  /** Resolves the variables of one row of a batch. */
+  private static final class RowResolver implements VariableResolver {
+    private final Context context;
+    private final int row;
+    private Map<String, Object> assigned;
+
+    RowResolver(Context context, int row) {
+      this.context = context;
+      this.row = row;
+    }
+
+    @Override
+    public boolean containsVariable(String name) throws ParserException {
+      return containsVariable(name, VariableModifiers.None);
+    }
+
+    @Override
+    public void setVariable(String name, Object value) throws ParserException {
+      setVariable(name, VariableModifiers.None, value);
+    }
+
+    @Override
+    public Object getVariable(String variableName) throws ParserException {
+      return getVariable(variableName, VariableModifiers.None);
+    }
+
+    @Override
+    public boolean containsVariable(String name, VariableModifiers vType) throws ParserException {
+      return (assigned != null && assigned.containsKey(name))
+          || context.batch.containsVariable(name)
+          || context.shared.containsVariable(name, vType);
+    }
+
+    @Override
+    public void setVariable(String name, VariableModifiers vType, Object value)
+        throws ParserException {
+      if (assigned == null) {
+        assigned = new CaseInsensitiveHashMap<>();
+      }
+      assigned.put(name, value);
+      context.assigned = true;
+    }
+
+    @Override
+    public Object getVariable(String variableName, VariableModifiers vType) throws ParserException {
+      if (assigned != null && assigned.containsKey(variableName)) {
+        return assigned.get(variableName);
+      }
+      if (context.batch.containsVariable(variableName)) {
+        return context.batch.getVariable(variableName, row);
+      }
+      return context.shared.getVariable(variableName, vType);
+    }
+
+    @Override
+    public Object lookupVariable(String name, VariableModifiers vType) throws ParserException {
+      if (assigned != null && assigned.containsKey(name)) {
+        return assigned.get(name);
+      }
+      Object[] column = context.batch.getColumn(name);
+      if (column != null) {
+        return column[row];
+      }
+      return context.shared.lookupVariable(name, vType);
+    }
+
+    @Override
+    public Set<String> getVariables() {
+      var variables = new HashSet<>(context.shared.getVariables());
+      variables.addAll(context.batch.getVariables());
+      if (assigned != null) {
+        variables.addAll(assigned.keySet());
+      }
+      return variables;
+    }
+  }
+}
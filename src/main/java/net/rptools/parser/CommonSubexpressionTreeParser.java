@@ -0,0 +1,209 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import net.rptools.CaseInsensitiveHashMap;
+import net.rptools.parser.ast.AST;
+import net.rptools.parser.ast.AstInterner;
+import net.rptools.parser.function.Function;
+
+/**
+ * Finds the subtrees of an {@link AST} that are evaluated more than once, so that an evaluator can
+ * compute each of them only once per evaluation.
+ *
+ * <p>First, {@link #share} makes structurally equal subtrees of a tree the same instance. {@link
+ * #findCommon} then reports the shared subtrees that occur more than once and always produce the
+ * same value during an evaluation: those that only call deterministic functions, and only read
+ * variables that the tree does not assign. Prompt variables, assignments and calls to functions
+ * that {@linkplain Function#assignsVariables assign variables} are never common, and if the tree
+ * calls such a function, other than {@code set()} with a literal name, no variable is considered
+ * stable at all.
+ *
+ * <p>Only the outermost occurrence of a repeated subtree is counted, so a subtree that only occurs
+ * within a larger common subtree is not reported on its own.
+ *
+ * @see ExpressionLinker
+ */
+public class CommonSubexpressionTreeParser {
+  private final Parser parser;
+
+  public CommonSubexpressionTreeParser(Parser parser) {
+    this.parser = parser;
+  }
+
+  /**
+   * Make structurally equal subtrees of a tree share a single instance.
+   *
+   * @param node the tree
+   * @return an equal tree in which equal subtrees are identical
+   */
+  public AST share(AST node) {
+    return share(node, new AstInterner(Integer.MAX_VALUE));
+  }
+
+  private AST share(AST node, AstInterner interner) {
+    return switch (node) {
+      case AST.Variable variable -> interner.intern(variable);
+      case AST.PromptVariable promptVariable -> interner.intern(promptVariable);
+      case AST.NumberLiteral numberLiteral -> interner.intern(numberLiteral);
+      case AST.StringLiteral stringLiteral -> interner.intern(stringLiteral);
+      case AST.Unary unary -> {
+        var operand = share(unary.operand(), interner);
+        yield interner.intern(
+            operand == unary.operand()
+                ? unary
+                : new AST.Unary(unary.text(), unary.operator(), operand));
+      }
+      case AST.Binary binary -> {
+        var lhs = share(binary.lhs(), interner);
+        var rhs = share(binary.rhs(), interner);
+        yield interner.intern(
+            lhs == binary.lhs() && rhs == binary.rhs()
+                ? binary
+                : new AST.Binary(binary.text(), binary.operator(), lhs, rhs));
+      }
+      case AST.Assignment assignment -> {
+        var lhs = interner.intern(assignment.lhs());
+        var rhs = share(assignment.rhs(), interner);
+        yield interner.intern(
+            lhs == assignment.lhs() && rhs == assignment.rhs()
+                ? assignment
+                : new AST.Assignment(assignment.text(), lhs, rhs));
+      }
+      case AST.FunctionCall functionCall -> {
+        var parameters = new ArrayList<AST>(functionCall.parameters().size());
+        boolean changed = false;
+        for (var parameter : functionCall.parameters()) {
+          var shared = share(parameter, interner);
+          changed |= shared != parameter;
+          parameters.add(shared);
+        }
+        yield interner.intern(
+            changed
+                ? new AST.FunctionCall(functionCall.text(), functionCall.function(), parameters)
+                : functionCall);
+      }
+    };
+  }
+
+  /**
+   * Find the common subexpressions of a tree.
+   *
+   * @param node a tree returned by {@link #share}
+   * @return the subtrees that are worth computing only once, compared by identity
+   */
+  public Set<AST> findCommon(AST node) {
+    var stableVariables = new CaseInsensitiveHashMap<Boolean>();
+    Expression.forEachVariable(node, name -> stableVariables.put(name, true));
+    if (!new ConstantFoldingTreeParser(parser).removeAssigned(node, stableVariables)) {
+      stableVariables.clear();
+    }
+
+    var stable = new IdentityHashMap<AST, Boolean>();
+    var counts = new IdentityHashMap<AST, Integer>();
+    count(node, stableVariables, stable, counts);
+
+    Set<AST> common = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (var entry : counts.entrySet()) {
+      if (entry.getValue() > 1) {
+        common.add(entry.getKey());
+      }
+    }
+    return common;
+  }
+
+  private void count(
+      AST node,
+      Map<String, Boolean> stableVariables,
+      Map<AST, Boolean> stable,
+      Map<AST, Integer> counts) {
+    boolean candidate =
+        switch (node) {
+          case AST.Unary unary -> true;
+          case AST.Binary binary -> true;
+          case AST.FunctionCall functionCall -> true;
+          default -> false; // Leaves cost no more to evaluate than to look up.
+        };
+    if (candidate
+        && isStable(node, stableVariables, stable)
+        && counts.merge(node, 1, Integer::sum) > 1) {
+      // The first occurrence already counted the subtrees.
+      return;
+    }
+
+    switch (node) {
+      case AST.Unary unary -> count(unary.operand(), stableVariables, stable, counts);
+      case AST.Binary binary -> {
+        count(binary.lhs(), stableVariables, stable, counts);
+        count(binary.rhs(), stableVariables, stable, counts);
+      }
+      case AST.Assignment assignment -> count(assignment.rhs(), stableVariables, stable, counts);
+      case AST.FunctionCall functionCall -> {
+        for (var parameter : functionCall.parameters()) {
+          count(parameter, stableVariables, stable, counts);
+        }
+      }
+      default -> {}
+    }
+  }
+
+  /** Whether a subtree has the same value wherever it is evaluated during an evaluation. */
+  private boolean isStable(
+      AST node, Map<String, Boolean> stableVariables, Map<AST, Boolean> stable) {
+    Boolean known = stable.get(node);
+    if (known != null) {
+      return known;
+    }
+
+    boolean result =
+        switch (node) {
+          case AST.Variable variable -> stableVariables.containsKey(variable.variable());
+          case AST.PromptVariable promptVariable -> false;
+          case AST.NumberLiteral numberLiteral -> true;
+          case AST.StringLiteral stringLiteral -> true;
+          case AST.Unary unary ->
+              isDeterministic(unary.operator().asText())
+                  && isStable(unary.operand(), stableVariables, stable);
+          case AST.Binary binary ->
+              isDeterministic(binary.operator().asText())
+                  && isStable(binary.lhs(), stableVariables, stable)
+                  && isStable(binary.rhs(), stableVariables, stable);
+          case AST.Assignment assignment -> false;
+          case AST.FunctionCall functionCall -> {
+            if (!isDeterministic(functionCall.function())) {
+              yield false;
+            }
+            for (var parameter : functionCall.parameters()) {
+              if (!isStable(parameter, stableVariables, stable)) {
+                yield false;
+              }
+            }
+            yield true;
+          }
+        };
+    stable.put(node, result);
+    return result;
+  }
+
+  private boolean isDeterministic(String functionName) {
+    Function function = parser.getFunction(functionName);
+    return function != null && function.isDeterministic() && !function.assignsVariables();
+  }
+}
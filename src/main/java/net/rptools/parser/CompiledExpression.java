@@ -0,0 +1,52 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import java.lang.invoke.MethodHandle;
+import net.rptools.parser.function.EvaluationException;
+
+/**
+ * An {@link Expression} compiled by {@link ExpressionCompiler}.
+ *
+ * <p>A compiled expression holds no evaluation state of its own, so it can be reused and shared
+ * between threads just like the expression it was compiled from.
+ */
+public class CompiledExpression {
+  private final Expression expression;
+  private final MethodHandle handle;
+
+  CompiledExpression(Expression expression, MethodHandle handle) {
+    this.expression = expression;
+    this.handle = handle;
+  }
+
+  public Expression getExpression() {
+    return expression;
+  }
+
+  public Object evaluate() throws ParserException {
+    return evaluate(new MapVariableResolver());
+  }
+
+  public Object evaluate(VariableResolver resolver) throws ParserException {
+    try {
+      return (Object) handle.invokeExact(resolver);
+    } catch (ParserException | RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new EvaluationException(t);
+    }
+  }
+}
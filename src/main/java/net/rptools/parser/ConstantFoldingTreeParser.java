@@ -0,0 +1,231 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import net.rptools.CaseInsensitiveHashMap;
+import net.rptools.parser.ast.AST;
+import net.rptools.parser.function.Function;
+import net.rptools.parser.function.impl.Assignment;
+
+/**
+ * Folds constant subtrees of an {@link AST} into literals.
+ *
+ * <p>A call to a {@linkplain Function#isDeterministic() deterministic} function whose parameters
+ * are all literals is evaluated once and replaced by its result. Folding works bottom up, so {@code
+ * 1 + 2 * 10} becomes the single literal {@code 21}. A call is left alone if it does not produce a
+ * number or a string that can be written as a literal, if its function is undefined, or if it
+ * fails, so that evaluating the folded tree reports the same errors as evaluating the original one.
+ * Functions are evaluated without any variables, so a call that reads or writes variables, like
+ * {@code set()} or {@code eval()} with a variable, is never folded.
+ *
+ * <p>A tree can also be {@linkplain #specialize specialized} for known variable values, which
+ * substitutes those values before folding.
+ *
+ * <p>Folding uses the functions and numeric mode of the parser at the time the tree is folded.
+ */
+public class ConstantFoldingTreeParser {
+  private final Parser parser;
+
+  public ConstantFoldingTreeParser(Parser parser) {
+    this.parser = parser;
+  }
+
+  /**
+   * Fold the constant subtrees of a tree.
+   *
+   * @param node the tree to fold
+   * @return the folded tree, or {@code node} itself if nothing could be folded
+   */
+  public AST fold(AST node) {
+    return fold(node, Map.of());
+  }
+
+  /**
+   * Substitute known variable values into a tree and fold the result.
+   *
+   * <p>Only numbers and strings are substituted, and prompt variables are left alone. A variable
+   * that the tree assigns with {@code =} or {@code set()} is not substituted either, since its
+   * value may change during the evaluation. If the tree calls {@code eval()}, {@code set()} with a
+   * computed name, or any other function that {@linkplain Function#assignsVariables assigns
+   * variables}, it may read or assign any variable, so nothing is substituted and the tree is only
+   * folded.
+   *
+   * @param node the tree to specialize
+   * @param knownValues the values of the known variables
+   * @return the specialized tree, or {@code node} itself if nothing could be substituted or folded
+   */
+  public AST specialize(AST node, Map<String, ?> knownValues) {
+    var values = new CaseInsensitiveHashMap<Object>();
+    for (var entry : knownValues.entrySet()) {
+      if (entry.getValue() instanceof BigDecimal || entry.getValue() instanceof String) {
+        values.put(entry.getKey(), entry.getValue());
+      }
+    }
+    if (!removeAssigned(node, values)) {
+      values.clear();
+    }
+    return fold(node, values);
+  }
+
+  /**
+   * Remove the variables assigned anywhere in a tree from {@code values}.
+   *
+   * @return {@code false} if the tree may access variables that can not be determined up front
+   */
+  boolean removeAssigned(AST node, Map<String, ?> values) {
+    return switch (node) {
+      case AST.Assignment assignment -> {
+        values.remove(assignment.lhs().variable());
+        yield removeAssigned(assignment.rhs(), values);
+      }
+      case AST.Unary unary -> removeAssigned(unary.operand(), values);
+      case AST.Binary binary ->
+          removeAssigned(binary.lhs(), values) && removeAssigned(binary.rhs(), values);
+      case AST.FunctionCall functionCall -> {
+        var parameters = functionCall.parameters();
+        Function function = parser.getFunction(functionCall.function());
+        if (function instanceof Assignment) {
+          if (parameters.isEmpty() || !(parameters.get(0) instanceof AST.StringLiteral name)) {
+            yield false;
+          }
+          values.remove(name.value());
+        } else if (function != null && function.assignsVariables()) {
+          // Like eval(), it may assign any variable.
+          yield false;
+        }
+        for (var parameter : parameters) {
+          if (!removeAssigned(parameter, values)) {
+            yield false;
+          }
+        }
+        yield true;
+      }
+      default -> true;
+    };
+  }
+
+  private AST fold(AST node, Map<String, ?> values) {
+    return switch (node) {
+      case AST.Variable variable -> {
+        Object value = values.get(variable.variable());
+        AST literal = value == null ? null : createNode(value);
+        yield literal == null ? variable : literal;
+      }
+      case AST.PromptVariable promptVariable -> promptVariable;
+      case AST.NumberLiteral numberLiteral -> numberLiteral;
+      case AST.StringLiteral stringLiteral -> stringLiteral;
+      case AST.Unary unary -> {
+        var operand = fold(unary.operand(), values);
+        var folded = evaluate(unary.operator().asText(), operand);
+        if (folded != null) {
+          yield folded;
+        }
+        yield operand == unary.operand()
+            ? unary
+            : new AST.Unary(unary.text(), unary.operator(), operand);
+      }
+      case AST.Binary binary -> {
+        var lhs = fold(binary.lhs(), values);
+        var rhs = fold(binary.rhs(), values);
+        var folded = evaluate(binary.operator().asText(), lhs, rhs);
+        if (folded != null) {
+          yield folded;
+        }
+        yield lhs == binary.lhs() && rhs == binary.rhs()
+            ? binary
+            : new AST.Binary(binary.text(), binary.operator(), lhs, rhs);
+      }
+      case AST.Assignment assignment -> {
+        // The assignment itself has to happen on every evaluation, but its value may be constant.
+        var rhs = fold(assignment.rhs(), values);
+        yield rhs == assignment.rhs()
+            ? assignment
+            : new AST.Assignment(assignment.text(), assignment.lhs(), rhs);
+      }
+      case AST.FunctionCall functionCall -> {
+        var parameters = new ArrayList<AST>(functionCall.parameters().size());
+        boolean changed = false;
+        for (var parameter : functionCall.parameters()) {
+          var folded = fold(parameter, values);
+          changed |= folded != parameter;
+          parameters.add(folded);
+        }
+
+        var folded = evaluate(functionCall.function(), parameters.toArray(new AST[0]));
+        if (folded != null) {
+          yield folded;
+        }
+        yield changed
+            ? new AST.FunctionCall(functionCall.text(), functionCall.function(), parameters)
+            : functionCall;
+      }
+    };
+  }
+
+  /**
+   * Evaluate a call if it is constant.
+   *
+   * @return the result as a literal, or {@code null} if the call can not be folded
+   */
+  private AST evaluate(String functionName, AST... parameters) {
+    Function function = parser.getFunction(functionName);
+    if (function == null || !function.isDeterministic()) {
+      return null;
+    }
+
+    var values = new Object[parameters.length];
+    for (int i = 0; i < parameters.length; i++) {
+      switch (parameters[i]) {
+        case AST.NumberLiteral numberLiteral -> values[i] = numberLiteral.value();
+        case AST.StringLiteral stringLiteral -> values[i] = stringLiteral.value();
+        default -> {
+          return null;
+        }
+      }
+    }
+
+    Object result;
+    try {
+      result =
+          function.evaluate(
+              parser, NoVariableResolver.INSTANCE, functionName, Arrays.asList(values));
+    } catch (ParserException | RuntimeException e) {
+      // Leave it to the evaluation to fail, or to use the variables it needs.
+      return null;
+    }
+    return createNode(result);
+  }
+
+  /**
+   * @return a literal of {@code value}, or {@code null} if it can not be written as one
+   */
+  private static AST createNode(Object value) {
+    if (value instanceof BigDecimal bd) {
+      return new AST.NumberLiteral(bd.toPlainString(), bd);
+    } else if (value instanceof String string) {
+      // String literals have no escapes, so a string with both kinds of quotes has no literal.
+      if (string.indexOf('\'') < 0) {
+        return new AST.StringLiteral("'" + string + "'", string);
+      } else if (string.indexOf('"') < 0) {
+        return new AST.StringLiteral('"' + string + '"', string);
+      }
+    }
+    return null;
+  }
+}
@@ -18,6 +18,7 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.logging.Logger;
 import net.rptools.parser.ast.AST;
+import net.rptools.parser.ast.AstInterner;
 import net.rptools.parser.function.EvaluationException;
 import net.rptools.parser.function.Function;
 
@@ -25,42 +26,52 @@ public class DeterministicTreeParser {
   private static final Logger log = Logger.getLogger(DeterministicTreeParser.class.getName());
 
   private final Parser parser;
+  private final AstInterner interner;
 
   public DeterministicTreeParser(Parser parser) {
     this.parser = parser;
+    this.interner = parser.getAstInterner();
   }
 
   public AST evaluate(AST node, VariableResolver resolver) throws ParserException {
     return switch (node) {
       case AST.Variable variable -> {
         String name = variable.variable();
-        if (!resolver.containsVariable(name, VariableModifiers.None)) {
+        Object value = resolver.lookupVariable(name, VariableModifiers.None);
+        if (value == VariableResolver.UNDEFINED) {
           throw new EvaluationException(String.format("Undefined variable: %s", name));
         }
-        Object value = resolver.getVariable(name, VariableModifiers.None);
         yield createNode(value);
       }
       case AST.PromptVariable promptVariable -> {
         String name = promptVariable.variable();
-        if (!resolver.containsVariable(name, VariableModifiers.None)) {
+        Object value = resolver.lookupVariable(name, VariableModifiers.None);
+        if (value == VariableResolver.UNDEFINED) {
           throw new EvaluationException(String.format("Undefined variable: %s", name));
         }
-        Object value = resolver.getVariable(name, VariableModifiers.None);
         yield createNode(value);
       }
       case AST.NumberLiteral numberLiteral -> numberLiteral;
       case AST.StringLiteral stringLiteral -> stringLiteral;
-      case AST.Unary unary ->
-          new AST.Unary(unary.text(), unary.operator(), evaluate(unary.operand(), resolver));
-      case AST.Binary binary ->
-          new AST.Binary(
-              binary.text(),
-              binary.operator(),
-              evaluate(binary.lhs(), resolver),
-              evaluate(binary.rhs(), resolver));
-      case AST.Assignment assignment ->
-          new AST.Assignment(
-              assignment.text(), assignment.lhs(), evaluate(assignment.rhs(), resolver));
+      case AST.Unary unary -> {
+        var operand = evaluate(unary.operand(), resolver);
+        yield operand == unary.operand()
+            ? unary
+            : intern(new AST.Unary(unary.text(), unary.operator(), operand));
+      }
+      case AST.Binary binary -> {
+        var lhs = evaluate(binary.lhs(), resolver);
+        var rhs = evaluate(binary.rhs(), resolver);
+        yield lhs == binary.lhs() && rhs == binary.rhs()
+            ? binary
+            : intern(new AST.Binary(binary.text(), binary.operator(), lhs, rhs));
+      }
+      case AST.Assignment assignment -> {
+        var rhs = evaluate(assignment.rhs(), resolver);
+        yield rhs == assignment.rhs()
+            ? assignment
+            : intern(new AST.Assignment(assignment.text(), assignment.lhs(), rhs));
+      }
       case AST.FunctionCall functionCall -> {
         String name = functionCall.function();
         Function function = parser.getFunction(name);
@@ -73,11 +84,17 @@ public class DeterministicTreeParser {
           yield createNode(value);
         } else {
           var parameters = new ArrayList<AST>();
+          boolean changed = false;
           for (var param : functionCall.parameters()) {
             var result = evaluate(param, resolver);
+            changed |= result != param;
             parameters.add(result);
           }
-          yield new AST.FunctionCall(functionCall.text(), functionCall.function(), parameters);
+          // Share unchanged subtrees rather than copying them.
+          yield changed
+              ? intern(
+                  new AST.FunctionCall(functionCall.text(), functionCall.function(), parameters))
+              : functionCall;
         }
       }
     };
@@ -85,10 +102,14 @@ public class DeterministicTreeParser {
 
   private AST createNode(Object value) {
     if (value instanceof BigDecimal bd) {
-      return new AST.NumberLiteral(bd.toString(), bd);
+      return intern(new AST.NumberLiteral(bd.toString(), bd));
     } else {
       var string = value.toString();
-      return new AST.StringLiteral(string, string);
+      return intern(new AST.StringLiteral(string, string));
     }
   }
+
+  private <T extends AST> T intern(T node) {
+    return interner == null ? node : interner.intern(node);
+  }
 }
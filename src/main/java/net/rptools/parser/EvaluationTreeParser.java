@@ -19,7 +19,14 @@ import java.util.List;
 import net.rptools.parser.ast.AST;
 import net.rptools.parser.function.EvaluationException;
 import net.rptools.parser.function.Function;
+import net.rptools.parser.function.LazyFunction;
 
+/**
+ * Evaluates an {@link AST} by walking it.
+ *
+ * <p>An evaluation tree parser holds no state besides its parser, so it can evaluate expressions on
+ * several threads at the same time.
+ */
 public class EvaluationTreeParser {
   private final Parser parser;
 
@@ -31,25 +38,31 @@ public class EvaluationTreeParser {
     return switch (node) {
       case AST.Variable variable -> {
         String name = variable.variable();
-        if (!resolver.containsVariable(name, VariableModifiers.None)) {
+        Object value = resolver.lookupVariable(name, VariableModifiers.None);
+        if (value == VariableResolver.UNDEFINED) {
           throw new EvaluationException(String.format("Undefined variable: %s", name));
         }
-        yield resolver.getVariable(name, VariableModifiers.None);
+        yield value;
       }
       case AST.PromptVariable promptVariable -> {
         String name = promptVariable.variable();
-        if (!resolver.containsVariable(name, VariableModifiers.Prompt)) {
+        Object value = resolver.lookupVariable(name, VariableModifiers.Prompt);
+        if (value == VariableResolver.UNDEFINED) {
           throw new EvaluationException(String.format("Undefined variable: %s", name));
         }
-        yield resolver.getVariable(promptVariable.variable(), VariableModifiers.Prompt);
+        yield value;
       }
       case AST.NumberLiteral numberLiteral -> numberLiteral.value();
       case AST.StringLiteral stringLiteral -> stringLiteral.value();
       case AST.Unary unary -> {
-        var child = evaluate(unary.operand(), resolver);
-
         var functionName = unary.operator().asText();
         Function function = parser.getFunction(functionName);
+        if (function instanceof LazyFunction lazy) {
+          yield lazy.evaluateLazily(
+              parser, resolver, functionName, List.of(parameter(unary.operand(), resolver)));
+        }
+
+        var child = evaluate(unary.operand(), resolver);
         if (function == null) {
           throw new EvaluationException(
               String.format("Undefined unary function: %s", functionName));
@@ -57,11 +70,18 @@ public class EvaluationTreeParser {
         yield function.evaluate(parser, resolver, functionName, List.of(child));
       }
       case AST.Binary binary -> {
-        var lhs = evaluate(binary.lhs(), resolver);
-        var rhs = evaluate(binary.rhs(), resolver);
-
         var functionName = binary.operator().asText();
         Function function = parser.getFunction(functionName);
+        if (function instanceof LazyFunction lazy) {
+          yield lazy.evaluateLazily(
+              parser,
+              resolver,
+              functionName,
+              List.of(parameter(binary.lhs(), resolver), parameter(binary.rhs(), resolver)));
+        }
+
+        var lhs = evaluate(binary.lhs(), resolver);
+        var rhs = evaluate(binary.rhs(), resolver);
         if (function == null) {
           throw new EvaluationException(
               String.format("Undefined binary function: %s", functionName));
@@ -71,10 +91,18 @@ public class EvaluationTreeParser {
       case AST.Assignment assignment -> {
         // Note: don't evaluate the left-hand side - we don't what to look up the variable!
         var lhs = assignment.lhs().text();
-        var rhs = evaluate(assignment.rhs(), resolver);
 
         var functionName = "=";
         Function function = parser.getFunction(functionName);
+        if (function instanceof LazyFunction lazy) {
+          yield lazy.evaluateLazily(
+              parser,
+              resolver,
+              functionName,
+              List.of(() -> lhs, parameter(assignment.rhs(), resolver)));
+        }
+
+        var rhs = evaluate(assignment.rhs(), resolver);
         if (function == null) {
           throw new EvaluationException(
               String.format("Undefined binary function: %s", functionName));
@@ -83,13 +111,19 @@ public class EvaluationTreeParser {
       }
       case AST.FunctionCall functionCall -> {
         String name = functionCall.function();
+        Function function = parser.getFunction(name);
+        if (function instanceof LazyFunction lazy) {
+          var params = new ArrayList<LazyFunction.Parameter>();
+          for (var child : functionCall.parameters()) {
+            params.add(parameter(child, resolver));
+          }
+          yield lazy.evaluateLazily(parser, resolver, name, params);
+        }
 
         var params = new ArrayList<>();
         for (var child : functionCall.parameters()) {
           params.add(evaluate(child, resolver));
         }
-
-        Function function = parser.getFunction(name);
         if (function == null) {
           throw new EvaluationException(String.format("Undefined function: %s", name));
         }
@@ -97,4 +131,8 @@ public class EvaluationTreeParser {
       }
     };
   }
+
+  private LazyFunction.Parameter parameter(AST node, VariableResolver resolver) {
+    return () -> evaluate(node, resolver);
+  }
 }
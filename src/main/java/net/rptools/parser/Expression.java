@@ -14,39 +14,252 @@
  */
 package net.rptools.parser;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import net.rptools.CaseInsensitiveHashMap;
 import net.rptools.parser.ast.AST;
+import net.rptools.parser.ast.AstCodec;
 
+/**
+ * A parsed expression.
+ *
+ * <p>An expression holds nothing but its {@link AST}, not the tokens or parse tree it was built
+ * from, so that large numbers of parsed expressions can be kept around cheaply.
+ */
 public class Expression {
   private static final InlineTreeFormatter inlineFormatter = new InlineTreeFormatter();
 
+  /** The number of specializations remembered by each expression. */
+  private static final int SPECIALIZATION_CACHE_SIZE = 64;
+
+  /** Stands in for the value of a variable that is not known when specializing. */
+  private static final Object UNKNOWN = new Object();
+
   private final Parser parser;
-  private final ExpressionParser expressionParser;
   private final AST tree;
+  private final AST evaluationTree;
+
+  // Created by the first call to specialize().
+  private volatile Specializations specializations;
+
+  // Collected by the first call to getVariables().
+  private volatile Set<String> variables;
 
-  Expression(Parser parser, ExpressionParser expressionParser, AST tree) {
+  Expression(Parser parser, AST tree) {
+    this(
+        parser,
+        tree,
+        parser.isConstantFolding() ? new ConstantFoldingTreeParser(parser).fold(tree) : tree);
+  }
+
+  private Expression(Parser parser, AST tree, AST evaluationTree) {
     this.parser = parser;
-    this.expressionParser = expressionParser;
     this.tree = tree;
+    this.evaluationTree = evaluationTree;
   }
 
   public Parser getParser() {
     return parser;
   }
 
+  /**
+   * An expression no longer keeps the ANTLR parser it was parsed with.
+   *
+   * @return never
+   * @throws UnsupportedOperationException always
+   * @deprecated the parse tree is discarded once the {@link AST} is built; use {@link #getTree()}
+   *     instead. This method will be removed in a future release.
+   */
+  @Deprecated(forRemoval = true)
   public ExpressionParser getExpressionParser() {
-    return expressionParser;
+    throw new UnsupportedOperationException(
+        "Expressions no longer keep their ExpressionParser; use getTree() instead");
   }
 
   public AST getTree() {
     return tree;
   }
 
+  /**
+   * @return the tree that is evaluated, which has its constants folded if the parser has {@link
+   *     Parser#setConstantFolding(boolean) constant folding} enabled
+   */
+  public AST getEvaluationTree() {
+    return evaluationTree;
+  }
+
   public Object evaluate() throws ParserException {
-    return parser.getEvaluationTreeParser().evaluate(tree, new MapVariableResolver());
+    return parser.getEvaluationTreeParser().evaluate(evaluationTree, new MapVariableResolver());
   }
 
   public Object evaluate(VariableResolver resolver) throws ParserException {
-    return parser.getEvaluationTreeParser().evaluate(tree, resolver);
+    return parser.getEvaluationTreeParser().evaluate(evaluationTree, resolver);
+  }
+
+  /**
+   * Get the free variables of this expression: the variables its {@linkplain #getEvaluationTree()
+   * evaluation tree} reads, in the order they first appear. Names are compared ignoring case, and
+   * each variable is included once, spelled as it first appears. Prompt variables and variables
+   * that are only assigned to are not included.
+   *
+   * <p>Variables read by expressions that are built at run time, such as the argument of {@code
+   * eval()}, can not be told up front and are not included either.
+   *
+   * @return the names of the variables, which can not be modified
+   */
+  public Set<String> getVariables() {
+    Set<String> v = variables;
+    if (v == null) {
+      var names = new LinkedHashSet<String>();
+      var seen = new CaseInsensitiveHashMap<String>();
+      forEachVariable(
+          evaluationTree,
+          name -> {
+            if (seen.putIfAbsent(name, name) == null) {
+              names.add(name);
+            }
+          });
+      v = Collections.unmodifiableSet(names);
+      variables = v;
+    }
+    return v;
+  }
+
+  /**
+   * Evaluate this expression after fetching all of its {@linkplain #getVariables() variables} in a
+   * single call to {@link PrefetchingVariableResolver#fetchVariables}.
+   *
+   * <p>The evaluation reads the fetched variables without asking the resolver again. Assignments
+   * are written through to the resolver, and any other variable, such as a prompt variable or one
+   * read by {@code eval()}, is still resolved one at a time.
+   *
+   * @param resolver the resolver to fetch the variables from
+   * @return the result
+   * @throws ParserException if fetching the variables or the evaluation fails
+   */
+  public Object evaluatePrefetched(PrefetchingVariableResolver resolver) throws ParserException {
+    Set<String> names = getVariables();
+    Map<String, Object> values = resolver.fetchVariables(names);
+    return evaluate(new PrefetchedVariableResolver(resolver, names, values));
+  }
+
+  /**
+   * Evaluate this expression once all of its {@linkplain #getVariables() variables} have been
+   * fetched by a single call to {@link PrefetchingVariableResolver#fetchVariablesAsync}.
+   *
+   * <p>The evaluation runs in the thread that completes the fetch, or in the calling thread if the
+   * fetch is already complete, and otherwise works as in {@link #evaluatePrefetched}.
+   *
+   * @param resolver the resolver to fetch the variables from
+   * @return a future of the result, which fails with a {@link ParserException} if fetching the
+   *     variables or the evaluation fails
+   */
+  public CompletableFuture<Object> evaluateAsync(PrefetchingVariableResolver resolver) {
+    Set<String> names = getVariables();
+    return resolver
+        .fetchVariablesAsync(names)
+        .thenCompose(
+            values -> {
+              try {
+                return CompletableFuture.completedFuture(
+                    evaluate(new PrefetchedVariableResolver(resolver, names, values)));
+              } catch (ParserException e) {
+                return CompletableFuture.failedFuture(e);
+              }
+            });
+  }
+
+  /**
+   * Evaluate this expression for every row of a batch.
+   *
+   * @param batch the variable bindings for each row
+   * @return the result of each row
+   * @throws ParserException if the evaluation fails for any row
+   * @see BatchEvaluator
+   */
+  public Object[] evaluate(VariableBatch batch) throws ParserException {
+    return evaluate(batch, new MapVariableResolver());
+  }
+
+  /**
+   * Evaluate this expression for every row of a batch.
+   *
+   * @param batch the variable bindings for each row
+   * @param resolver the resolver for variables that are not in the batch, which is not written to
+   * @return the result of each row
+   * @throws ParserException if the evaluation fails for any row
+   * @see BatchEvaluator
+   */
+  public Object[] evaluate(VariableBatch batch, VariableResolver resolver) throws ParserException {
+    return new BatchEvaluator(parser).evaluate(evaluationTree, batch, resolver);
+  }
+
+  /**
+   * Compile this expression for repeated evaluation.
+   *
+   * <p>All functions are resolved against the parser when this method is called.
+   *
+   * @return the compiled expression
+   * @throws ParserException if the expression calls an undefined function
+   */
+  public CompiledExpression compile() throws ParserException {
+    return new CompiledExpression(this, new ExpressionCompiler(parser).compile(evaluationTree));
+  }
+
+  /**
+   * Compile this expression for repeated evaluation with variables of known types.
+   *
+   * <p>Functions whose parameter types are known up front are compiled to implementations that are
+   * specialized for those types. See {@link VariableResolver#getVariableType} for what the hints
+   * promise.
+   *
+   * @param typeHints the resolver that provides the types of variables
+   * @return the compiled expression
+   * @throws ParserException if the expression calls an undefined function
+   * @see TypeInferenceTreeParser
+   */
+  public CompiledExpression compile(VariableResolver typeHints) throws ParserException {
+    return new CompiledExpression(
+        this, new ExpressionCompiler(parser).compile(evaluationTree, typeHints));
+  }
+
+  /**
+   * Link this expression into a tree of evaluator nodes for repeated evaluation.
+   *
+   * <p>All functions are resolved against the parser when this method is called.
+   *
+   * @return the linked expression
+   * @throws ParserException if the expression calls an undefined function
+   */
+  public LinkedExpression link() throws ParserException {
+    return new LinkedExpression(this, new ExpressionLinker(parser).link(evaluationTree));
+  }
+
+  /**
+   * Link this expression for repeated evaluation with variables of known types.
+   *
+   * <p>Functions whose parameter types are known up front are linked to implementations that are
+   * specialized for those types. See {@link VariableResolver#getVariableType} for what the hints
+   * promise.
+   *
+   * @param typeHints the resolver that provides the types of variables
+   * @return the linked expression
+   * @throws ParserException if the expression calls an undefined function
+   * @see TypeInferenceTreeParser
+   */
+  public LinkedExpression link(VariableResolver typeHints) throws ParserException {
+    return new LinkedExpression(this, new ExpressionLinker(parser).link(evaluationTree, typeHints));
   }
 
   public Expression getDeterministicExpression(VariableResolver resolver) throws ParserException {
@@ -54,14 +267,123 @@ public class Expression {
 
     AST newTree = tp.evaluate(tree, resolver);
 
-    if (tree.equalsTree(newTree)) {
+    if (newTree == tree || tree.equalsTree(newTree)) {
       return this;
     } else {
-      return new Expression(parser, expressionParser, newTree);
+      return new Expression(parser, newTree);
+    }
+  }
+
+  /**
+   * Specialize this expression for known variable values.
+   *
+   * <p>The known values are substituted into the expression, and everything that becomes constant
+   * as a result is folded, so evaluating the specialized expression only does the work that depends
+   * on the remaining variables. See {@link ConstantFoldingTreeParser#specialize} for which
+   * variables can be substituted.
+   *
+   * <p>Specializations are remembered, keyed by the values of the variables this expression
+   * actually uses, so specializing again for the same values returns the same expression even if
+   * {@code knownValues} holds other, unrelated variables.
+   *
+   * @param knownValues the values of the known variables
+   * @return the specialized expression, or this expression if nothing could be specialized
+   */
+  public Expression specialize(Map<String, ?> knownValues) {
+    Specializations s = specializations;
+    if (s == null) {
+      synchronized (this) {
+        s = specializations;
+        if (s == null) {
+          s = new Specializations(tree);
+          specializations = s;
+        }
+      }
+    }
+
+    var key = new Object[s.variables.size()];
+    Arrays.fill(key, UNKNOWN);
+    for (var entry : knownValues.entrySet()) {
+      Integer index = s.variables.get(entry.getKey());
+      Object value = entry.getValue();
+      if (index != null && (value instanceof BigDecimal || value instanceof String)) {
+        key[index] = value;
+      }
+    }
+    List<Object> cacheKey = Arrays.asList(key);
+
+    Expression specialized = s.cache.get(cacheKey);
+    if (specialized != null) {
+      return specialized;
     }
+
+    var values = new HashMap<String, Object>();
+    for (var entry : s.variables.entrySet()) {
+      if (key[entry.getValue()] != UNKNOWN) {
+        values.put(entry.getKey(), key[entry.getValue()]);
+      }
+    }
+    AST specializedTree = new ConstantFoldingTreeParser(parser).specialize(tree, values);
+    specialized =
+        specializedTree == tree ? this : new Expression(parser, specializedTree, specializedTree);
+    return s.cache.put(cacheKey, specialized);
   }
 
   public String format() {
     return inlineFormatter.format(tree);
   }
+
+  /**
+   * Write this expression in the binary format of {@link AstCodec}, to be read back with {@link
+   * Parser#readExpression(InputStream)} without parsing it again.
+   *
+   * <p>Only the tree is written, not the settings of the parser, so constant folding is up to the
+   * parser that reads the expression.
+   *
+   * @param out the stream to write to, which is not closed
+   * @throws IOException if writing fails
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    AstCodec.write(tree, out);
+  }
+
+  /**
+   * Call {@code action} with the name of each variable that {@code node} reads, in the order they
+   * appear, including repeats. Prompt variables and the targets of assignments are skipped.
+   *
+   * @param node the tree to walk
+   * @param action called with each variable name
+   */
+  static void forEachVariable(AST node, Consumer<String> action) {
+    switch (node) {
+      case AST.Variable variable -> action.accept(variable.variable());
+      case AST.PromptVariable promptVariable -> {}
+      case AST.NumberLiteral numberLiteral -> {}
+      case AST.StringLiteral stringLiteral -> {}
+      case AST.Unary unary -> forEachVariable(unary.operand(), action);
+      case AST.Binary binary -> {
+        forEachVariable(binary.lhs(), action);
+        forEachVariable(binary.rhs(), action);
+      }
+      case AST.Assignment assignment -> forEachVariable(assignment.rhs(), action);
+      case AST.FunctionCall functionCall -> {
+        for (AST parameter : functionCall.parameters()) {
+          forEachVariable(parameter, action);
+        }
+      }
+    }
+  }
+
+  /** The variables of an expression and the specializations made for their values. */
+  private static final class Specializations {
+    /** The position of each variable in the cache keys. */
+    private final Map<String, Integer> variables = new CaseInsensitiveHashMap<>();
+
+    private final ExpressionCache<List<Object>> cache =
+        new ExpressionCache<>(SPECIALIZATION_CACHE_SIZE);
+
+    Specializations(AST tree) {
+      forEachVariable(tree, name -> variables.putIfAbsent(name, variables.size()));
+    }
+  }
 }
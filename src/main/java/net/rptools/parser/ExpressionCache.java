@@ -0,0 +1,125 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, thread-safe cache of {@link Expression}s.
+ *
+ * <p>{@link Parser} caches parsed expressions keyed by their (transformed) source text, and {@link
+ * Expression#specialize} caches specialized expressions keyed by the values they were specialized
+ * for.
+ *
+ * <p>Entries are evicted in least-recently-used order once the cache holds more than its maximum
+ * size. Since an {@link Expression} is immutable, a cached instance can be handed out to any number
+ * of callers at the same time.
+ *
+ * @param <K> the type of the keys
+ */
+public class ExpressionCache<K> {
+  private final int maximumSize;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  private final Map<K, Expression> entries;
+
+  public ExpressionCache(int maximumSize) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("Cache size must be positive: " + maximumSize);
+    }
+    this.maximumSize = maximumSize;
+    this.entries =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<K, Expression> eldest) {
+            if (size() > ExpressionCache.this.maximumSize) {
+              evictions.increment();
+              return true;
+            }
+            return false;
+          }
+        };
+  }
+
+  /**
+   * Look up a cached expression.
+   *
+   * @param key the key of the expression
+   * @return the cached expression, or {@code null} if there is none
+   */
+  public Expression get(K key) {
+    Expression expression;
+    synchronized (entries) {
+      expression = entries.get(key);
+    }
+
+    if (expression == null) {
+      misses.increment();
+    } else {
+      hits.increment();
+    }
+    return expression;
+  }
+
+  /**
+   * Add an expression to the cache, possibly evicting the least recently used entry.
+   *
+   * <p>If another thread cached an expression for the same key in the meantime, that expression is
+   * kept and returned so that all callers share the same instance.
+   *
+   * @param key the key of the expression
+   * @param expression the expression
+   * @return the expression now cached for {@code key}
+   */
+  public Expression put(K key, Expression expression) {
+    synchronized (entries) {
+      Expression existing = entries.putIfAbsent(key, expression);
+      return existing == null ? expression : existing;
+    }
+  }
+
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+    }
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+}
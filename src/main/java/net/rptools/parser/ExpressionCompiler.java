@@ -0,0 +1,312 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import net.rptools.parser.ast.AST;
+import net.rptools.parser.function.AbstractFunction;
+import net.rptools.parser.function.EvaluationException;
+import net.rptools.parser.function.Function;
+import net.rptools.parser.function.LazyFunction;
+import net.rptools.parser.function.ValueType;
+
+/**
+ * Compiles an {@link AST} into a {@link MethodHandle} of type {@code (VariableResolver)Object}.
+ *
+ * <p>Each node becomes a method handle with its {@link Function} bound as a constant, and the
+ * handles of child nodes are folded into their parent in evaluation order. The JVM spins bytecode
+ * for the resulting method handle tree and specializes it once it gets hot, so a compiled
+ * expression runs as straight-line code without any per-node function lookups.
+ *
+ * <p>As with {@link ExpressionLinker}, calls to functions that are {@linkplain FunctionSignatures
+ * checked by their signature} have their parameter count checked at compile time, and skip the type
+ * checks that can be done up front.
+ *
+ * <p>Functions are resolved when the expression is compiled. Functions added to the parser
+ * afterwards are not seen by an existing compiled expression.
+ */
+public class ExpressionCompiler {
+  /**
+   * A method handle takes at most 255 arguments, so calls with more parameters than this evaluate
+   * their parameter handles in a loop instead of folding them in.
+   */
+  private static final int MAX_FOLDED_PARAMETERS = 250;
+
+  private static final MethodHandle VARIABLE;
+  private static final MethodHandle CALL;
+  private static final MethodHandle CALL_DIRECT;
+  private static final MethodHandle CALL_EACH;
+  private static final MethodHandle CALL_LAZY;
+
+  static {
+    try {
+      var lookup = MethodHandles.lookup();
+      VARIABLE =
+          lookup.findStatic(
+              ExpressionCompiler.class,
+              "variable",
+              MethodType.methodType(
+                  Object.class, String.class, VariableModifiers.class, VariableResolver.class));
+      CALL =
+          lookup.findStatic(
+              ExpressionCompiler.class,
+              "call",
+              MethodType.methodType(
+                  Object.class,
+                  Function.class,
+                  Parser.class,
+                  String.class,
+                  Object[].class,
+                  VariableResolver.class));
+      CALL_DIRECT =
+          lookup.findStatic(
+              ExpressionCompiler.class,
+              "callDirect",
+              MethodType.methodType(
+                  Object.class,
+                  AbstractFunction.class,
+                  Parser.class,
+                  String.class,
+                  int[].class,
+                  Object[].class,
+                  VariableResolver.class));
+      CALL_EACH =
+          lookup.findStatic(
+              ExpressionCompiler.class,
+              "callEach",
+              MethodType.methodType(
+                  Object.class,
+                  Function.class,
+                  Parser.class,
+                  String.class,
+                  MethodHandle[].class,
+                  VariableResolver.class));
+      CALL_LAZY =
+          lookup.findStatic(
+              ExpressionCompiler.class,
+              "callLazy",
+              MethodType.methodType(
+                  Object.class,
+                  LazyFunction.class,
+                  Parser.class,
+                  String.class,
+                  MethodHandle[].class,
+                  VariableResolver.class));
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private final Parser parser;
+
+  public ExpressionCompiler(Parser parser) {
+    this.parser = parser;
+  }
+
+  public MethodHandle compile(AST node) throws ParserException {
+    return compile(node, NoVariableResolver.INSTANCE);
+  }
+
+  /**
+   * @param node the tree to compile
+   * @param typeHints the resolver that provides {@linkplain VariableResolver#getVariableType type
+   *     hints} for the variables of the tree
+   */
+  public MethodHandle compile(AST node, VariableResolver typeHints) throws ParserException {
+    return compile(node, new TypeInferenceTreeParser(parser).infer(node, typeHints));
+  }
+
+  private MethodHandle compile(AST node, Map<AST, ValueType> types) throws ParserException {
+    return switch (node) {
+      case AST.Variable variable ->
+          MethodHandles.insertArguments(VARIABLE, 0, variable.variable(), VariableModifiers.None);
+      case AST.PromptVariable promptVariable ->
+          MethodHandles.insertArguments(
+              VARIABLE, 0, promptVariable.variable(), VariableModifiers.Prompt);
+      case AST.NumberLiteral numberLiteral -> constant(numberLiteral.value());
+      case AST.StringLiteral stringLiteral -> constant(stringLiteral.value());
+      case AST.Unary unary -> {
+        var functionName = unary.operator().asText();
+        yield call(
+            lookup(functionName, "Undefined unary function: %s"),
+            functionName,
+            List.of(unary.operand()),
+            types);
+      }
+      case AST.Binary binary -> {
+        var functionName = binary.operator().asText();
+        yield call(
+            lookup(functionName, "Undefined binary function: %s"),
+            functionName,
+            List.of(binary.lhs(), binary.rhs()),
+            types);
+      }
+      case AST.Assignment assignment -> {
+        // Note: the left-hand side is passed by name, not evaluated.
+        var functionName = "=";
+        var name = assignment.lhs().text();
+        yield call(
+            lookup(functionName, "Undefined binary function: %s"),
+            functionName,
+            List.of(new AST.StringLiteral(name, name), assignment.rhs()),
+            types);
+      }
+      case AST.FunctionCall functionCall -> {
+        String name = functionCall.function();
+        yield call(lookup(name, "Undefined function: %s"), name, functionCall.parameters(), types);
+      }
+    };
+  }
+
+  private Function lookup(String functionName, String errorFormat) throws EvaluationException {
+    Function function = parser.getFunction(functionName);
+    if (function == null) {
+      throw new EvaluationException(String.format(errorFormat, functionName));
+    }
+    return function;
+  }
+
+  private static MethodHandle constant(Object value) {
+    return MethodHandles.dropArguments(
+        MethodHandles.constant(Object.class, value), 0, VariableResolver.class);
+  }
+
+  /**
+   * Build a handle that evaluates {@code parameters} from left to right and passes the results to
+   * {@code function}.
+   */
+  private MethodHandle call(
+      Function function, String functionName, List<AST> parameters, Map<AST, ValueType> types)
+      throws ParserException {
+    var params = new ArrayList<MethodHandle>(parameters.size());
+    for (AST parameter : parameters) {
+      params.add(compile(parameter, types));
+    }
+
+    var parameterTypes = FunctionSignatures.parameterTypes(parameters, types);
+    function = function.specialize(parameterTypes);
+
+    if (function instanceof LazyFunction lazy) {
+      // The parameters are passed as handles, to be invoked by the function when it needs them.
+      return MethodHandles.insertArguments(
+          CALL_LAZY, 0, lazy, parser, functionName, params.toArray(new MethodHandle[0]));
+    }
+    if (params.size() > MAX_FOLDED_PARAMETERS) {
+      return MethodHandles.insertArguments(
+          CALL_EACH, 0, function, parser, functionName, params.toArray(new MethodHandle[0]));
+    }
+
+    // (Object[], VariableResolver) -> Object
+    MethodHandle invoker;
+    if (FunctionSignatures.isCheckedBySignature(function)) {
+      var checkedFunction = (AbstractFunction) function;
+      int[] unchecked = FunctionSignatures.check(checkedFunction, functionName, parameterTypes);
+      invoker =
+          MethodHandles.insertArguments(
+              CALL_DIRECT, 0, checkedFunction, parser, functionName, unchecked);
+    } else {
+      invoker = MethodHandles.insertArguments(CALL, 0, function, parser, functionName);
+    }
+
+    // (Object p0, ..., Object pN, VariableResolver) -> Object
+    MethodHandle target = invoker.asCollector(0, Object[].class, params.size());
+
+    // Fold the parameters in from the right, so that the leftmost one ends up outermost and is
+    // therefore evaluated first.
+    for (int i = params.size() - 1; i >= 0; i--) {
+      target = MethodHandles.foldArguments(target, i, params.get(i));
+    }
+    return target;
+  }
+
+  private static Object variable(
+      String name, VariableModifiers modifiers, VariableResolver resolver) throws ParserException {
+    Object value = resolver.lookupVariable(name, modifiers);
+    if (value == VariableResolver.UNDEFINED) {
+      throw new EvaluationException(String.format("Undefined variable: %s", name));
+    }
+    return value;
+  }
+
+  private static Object call(
+      Function function,
+      Parser parser,
+      String functionName,
+      Object[] params,
+      VariableResolver resolver)
+      throws ParserException {
+    return function.evaluate(parser, resolver, functionName, Arrays.asList(params));
+  }
+
+  private static Object callDirect(
+      AbstractFunction function,
+      Parser parser,
+      String functionName,
+      int[] unchecked,
+      Object[] params,
+      VariableResolver resolver)
+      throws ParserException {
+    for (int i : unchecked) {
+      function.checkParameterType(i, params[i]);
+    }
+    return function.childEvaluate(parser, resolver, functionName, Arrays.asList(params));
+  }
+
+  private static Object callEach(
+      Function function,
+      Parser parser,
+      String functionName,
+      MethodHandle[] params,
+      VariableResolver resolver)
+      throws Throwable {
+    var values = new Object[params.length];
+    for (int i = 0; i < params.length; i++) {
+      values[i] = (Object) params[i].invokeExact(resolver);
+    }
+    return function.evaluate(parser, resolver, functionName, Arrays.asList(values));
+  }
+
+  private static Object callLazy(
+      LazyFunction function,
+      Parser parser,
+      String functionName,
+      MethodHandle[] params,
+      VariableResolver resolver)
+      throws ParserException {
+    var args = new LazyFunction.Parameter[params.length];
+    for (int i = 0; i < params.length; i++) {
+      MethodHandle param = params[i];
+      args[i] = () -> invoke(param, resolver);
+    }
+    return function.evaluateLazily(parser, resolver, functionName, Arrays.asList(args));
+  }
+
+  private static Object invoke(MethodHandle handle, VariableResolver resolver)
+      throws ParserException {
+    try {
+      return (Object) handle.invokeExact(resolver);
+    } catch (ParserException | RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new EvaluationException(t);
+    }
+  }
+}
@@ -0,0 +1,315 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import net.rptools.parser.ast.AST;
+import net.rptools.parser.ast.AstCodec;
+
+/**
+ * A read-only library of named, precompiled expressions in a memory-mapped file.
+ *
+ * <p>Opening a library maps its file and checks its index, which takes a pass over the index but
+ * does not decode any expression; an expression is only decoded when it is {@linkplain #get(String)
+ * requested}. The library itself is kept outside of the heap, so a server can open a library of
+ * tens of thousands of expressions at startup and only pay for the ones it uses. Decoded
+ * expressions can optionally be kept in an {@link ExpressionCache}.
+ *
+ * <p>A library file consists of:
+ *
+ * <ol>
+ *   <li>the magic number {@code RPTL}, a format version and the number of expressions,
+ *   <li>an index with one entry per expression, sorted by the hash code of its name, holding the
+ *       hash code and the offset and length of the name and of the expression,
+ *   <li>the names as UTF-8, and the expressions in the format of {@link AstCodec}.
+ * </ol>
+ *
+ * <p>Looking up an expression is a binary search over the index, which is read straight from the
+ * mapped file. A library is thread-safe.
+ */
+public class ExpressionLibrary {
+  /** The magic number that starts every library file: {@code RPTL}. */
+  public static final int MAGIC = 0x5250544c;
+
+  /** The version of the format written by this class. */
+  public static final int VERSION = 1;
+
+  private static final int HEADER_SIZE = 12;
+  private static final int ENTRY_SIZE = 20;
+
+  private final Parser parser;
+  private final ByteBuffer buffer;
+  private final int size;
+  private final ExpressionCache<String> cache;
+
+  private ExpressionLibrary(Parser parser, ByteBuffer buffer, int cacheSize) throws IOException {
+    this.parser = parser;
+    this.buffer = buffer;
+    this.cache = cacheSize == 0 ? null : new ExpressionCache<>(cacheSize);
+
+    if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+      throw new IOException("Not an expression library");
+    }
+    int version = buffer.getInt(4);
+    if (version != VERSION) {
+      throw new IOException("Unsupported expression library version: " + version);
+    }
+    size = buffer.getInt(8);
+    if (size < 0 || (long) HEADER_SIZE + (long) size * ENTRY_SIZE > buffer.capacity()) {
+      throw new IOException("Truncated expression library");
+    }
+    // Check the index up front, so that lookups can trust it.
+    for (int i = 0; i < size; i++) {
+      int base = HEADER_SIZE + i * ENTRY_SIZE;
+      if (!inBounds(base + 4) || !inBounds(base + 12)) {
+        throw new IOException("Truncated expression library");
+      }
+      // The binary search in find() would silently miss entries of an unsorted index.
+      if (i > 0 && hash(i - 1) > hash(i)) {
+        throw new IOException("Expression library index is not sorted");
+      }
+    }
+  }
+
+  /**
+   * @return whether the offset and length at {@code position} describe a range of the buffer
+   */
+  private boolean inBounds(int position) {
+    long offset = buffer.getInt(position);
+    long length = buffer.getInt(position + 4);
+    return offset >= 0 && length >= 0 && offset + length <= buffer.capacity();
+  }
+
+  /**
+   * Open a library without caching decoded expressions.
+   *
+   * @param parser the parser the expressions belong to
+   * @param file the library file
+   * @return the library
+   * @throws IOException if the file can not be mapped or is not a library
+   */
+  public static ExpressionLibrary open(Parser parser, Path file) throws IOException {
+    return open(parser, file, 0);
+  }
+
+  /**
+   * Open a library.
+   *
+   * @param parser the parser the expressions belong to
+   * @param file the library file
+   * @param cacheSize the maximum number of decoded expressions to keep, or 0 to decode an
+   *     expression every time it is requested
+   * @return the library
+   * @throws IOException if the file can not be mapped or is not a library
+   */
+  public static ExpressionLibrary open(Parser parser, Path file, int cacheSize) throws IOException {
+    // The mapping stays valid after the channel is closed.
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new ExpressionLibrary(parser, buffer, cacheSize);
+    }
+  }
+
+  /**
+   * Write a library file.
+   *
+   * @param file the file to write, which is replaced if it exists
+   * @param expressions the expressions of the library by name
+   * @throws IOException if writing fails
+   */
+  public static void write(Path file, Map<String, Expression> expressions) throws IOException {
+    record Entry(int hash, byte[] name, byte[] expression) {}
+
+    var entries = new ArrayList<Entry>(expressions.size());
+    for (var e : expressions.entrySet()) {
+      var encoded = new ByteArrayOutputStream();
+      e.getValue().writeTo(encoded);
+      byte[] name = e.getKey().getBytes(StandardCharsets.UTF_8);
+      entries.add(new Entry(e.getKey().hashCode(), name, encoded.toByteArray()));
+    }
+    entries.sort(Comparator.comparingInt(Entry::hash));
+
+    try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(entries.size());
+
+      long offset = HEADER_SIZE + (long) entries.size() * ENTRY_SIZE;
+      for (Entry entry : entries) {
+        out.writeInt(entry.hash());
+        out.writeInt(toOffset(offset));
+        out.writeInt(entry.name().length);
+        offset += entry.name().length;
+        out.writeInt(toOffset(offset));
+        out.writeInt(entry.expression().length);
+        offset += entry.expression().length;
+      }
+      // A single mapping can not be larger than this either.
+      toOffset(offset);
+
+      for (Entry entry : entries) {
+        out.write(entry.name());
+        out.write(entry.expression());
+      }
+    }
+  }
+
+  private static int toOffset(long offset) throws IOException {
+    if (offset > Integer.MAX_VALUE) {
+      throw new IOException("Expression library too large");
+    }
+    return (int) offset;
+  }
+
+  /**
+   * @return the number of expressions in the library
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the names of all expressions in the library
+   */
+  public List<String> getNames() {
+    var names = new ArrayList<String>(size);
+    for (int i = 0; i < size; i++) {
+      names.add(name(i));
+    }
+    return names;
+  }
+
+  public boolean contains(String name) {
+    return find(name) >= 0;
+  }
+
+  /**
+   * Get an expression, decoding it if it is not cached.
+   *
+   * @param name the name of the expression
+   * @return the expression, or {@code null} if there is no expression of that name
+   * @throws IOException if the expression can not be decoded
+   */
+  public Expression get(String name) throws IOException {
+    if (cache != null) {
+      Expression cached = cache.get(name);
+      if (cached != null) {
+        return cached;
+      }
+    }
+
+    int entry = find(name);
+    if (entry < 0) {
+      return null;
+    }
+    ByteBuffer encoded = slice(HEADER_SIZE + entry * ENTRY_SIZE + 12);
+    AST tree = AstCodec.read(new ByteBufferInputStream(encoded));
+    Expression expression = new Expression(parser, tree);
+    return cache == null ? expression : cache.put(name, expression);
+  }
+
+  /**
+   * @return the cache of decoded expressions, or {@code null} if they are not cached
+   */
+  public ExpressionCache<String> getExpressionCache() {
+    return cache;
+  }
+
+  /**
+   * @return the index of the entry for {@code name}, or -1 if there is none
+   */
+  private int find(String name) {
+    int hash = name.hashCode();
+
+    // Find the first entry with the hash, then compare the names of all entries that share it.
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (hash(mid) < hash) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    ByteBuffer bytes = null;
+    for (int i = low; i < size && hash(i) == hash; i++) {
+      if (bytes == null) {
+        bytes = ByteBuffer.wrap(name.getBytes(StandardCharsets.UTF_8));
+      }
+      if (slice(HEADER_SIZE + i * ENTRY_SIZE + 4).equals(bytes)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private int hash(int entry) {
+    return buffer.getInt(HEADER_SIZE + entry * ENTRY_SIZE);
+  }
+
+  private String name(int entry) {
+    return StandardCharsets.UTF_8.decode(slice(HEADER_SIZE + entry * ENTRY_SIZE + 4)).toString();
+  }
+
+  /**
+   * @param position the position of an offset and length in the index
+   * @return the part of the file they describe, as a buffer of its own
+   */
+  private ByteBuffer slice(int position) {
+    return buffer.slice(buffer.getInt(position), buffer.getInt(position + 4));
+  }
+
+  /** Reads a buffer without changing the position of the buffer it was sliced from. */
+  private static final class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int n = Math.min(len, buffer.remaining());
+      buffer.get(b, off, n);
+      return n;
+    }
+  }
+}
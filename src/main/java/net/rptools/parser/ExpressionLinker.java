@@ -0,0 +1,730 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import java.lang.ref.WeakReference;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.rptools.parser.ast.AST;
+import net.rptools.parser.ast.BinaryOperator;
+import net.rptools.parser.ast.UnaryOperator;
+import net.rptools.parser.function.AbstractFunction;
+import net.rptools.parser.function.EvaluationException;
+import net.rptools.parser.function.Function;
+import net.rptools.parser.function.LazyFunction;
+import net.rptools.parser.function.ValueType;
+import net.rptools.parser.function.impl.Addition;
+import net.rptools.parser.function.impl.Multiplication;
+import net.rptools.parser.function.impl.Subtraction;
+
+/**
+ * Links an {@link AST} into a tree of evaluator nodes.
+ *
+ * <p>Linking resolves every function once, so evaluating a {@link LinkedExpression} does not look
+ * up functions by name and does not need to inspect the type of each node. It is a lighter
+ * alternative to {@link ExpressionCompiler} that does not depend on the JIT to pay off.
+ *
+ * <p>Calls to functions that are {@linkplain FunctionSignatures checked by their signature} have
+ * their parameter count checked when they are linked, which fails the link if it is wrong, and skip
+ * the type checks that can be done up front.
+ *
+ * <p>The variables of the expression are numbered when it is linked. An evaluation looks up their
+ * {@linkplain IndexedVariableResolver#getSlot slots} in the resolver once, and then reads them by
+ * slot rather than by name. The slots are reused while the same resolver is used. Resolvers that
+ * are not an {@link IndexedVariableResolver} are wrapped in an {@link
+ * IndexedVariableResolverAdapter}.
+ *
+ * <p>If {@linkplain Parser#setCommonSubexpressionElimination enabled}, subtrees that are found by
+ * {@link CommonSubexpressionTreeParser} to be evaluated more than once keep their value for the
+ * rest of the evaluation. The value is taken the first time the subtree is actually evaluated, so
+ * short-circuiting functions still skip what they skip without it.
+ *
+ * <p>In {@link NumericMode#FAST}, subtrees that only add, subtract, multiply and negate integer
+ * literals and variables with the built-in functions are evaluated on {@code long}s, and only their
+ * result is converted to a {@link BigDecimal}. When a variable is not an integer or the arithmetic
+ * overflows, that evaluation of the subtree falls back to the functions, which reuse the variable
+ * values that were already read instead of asking the resolver again.
+ *
+ * <p>Functions are resolved when the expression is linked. Functions added to the parser afterwards
+ * are not seen by an existing linked expression.
+ */
+public class ExpressionLinker {
+  private static final int[] NO_SLOTS = new int[0];
+  private static final Object[] NO_VALUES = new Object[0];
+  private static final Frame NO_FRAME = new Frame(null, NO_SLOTS, NO_VALUES);
+
+  /** Integers with at most this many digits fit in a {@code long}. */
+  private static final int LONG_DIGITS = 18;
+
+  private final Parser parser;
+
+  public ExpressionLinker(Parser parser) {
+    this.parser = parser;
+  }
+
+  public Node link(AST node) throws ParserException {
+    return link(node, NoVariableResolver.INSTANCE);
+  }
+
+  /**
+   * @param node the tree to link
+   * @param typeHints the resolver that provides {@linkplain VariableResolver#getVariableType type
+   *     hints} for the variables of the tree
+   */
+  public Node link(AST node, VariableResolver typeHints) throws ParserException {
+    AST tree = node;
+    Set<AST> common = Set.of();
+    if (parser.isCommonSubexpressionElimination()) {
+      var cse = new CommonSubexpressionTreeParser(parser);
+      tree = cse.share(node);
+      common = cse.findCommon(tree);
+    }
+
+    var types = new TypeInferenceTreeParser(parser).infer(tree, typeHints);
+    var context =
+        new Context(
+            types,
+            common,
+            new IdentityHashMap<>(),
+            new LinkedHashMap<>(),
+            new ValueSlots(),
+            parser.getNumericMode() == NumericMode.FAST,
+            Map.of());
+    Node root = link(tree, context);
+    if (context.memos().isEmpty() && context.variables().isEmpty()) {
+      return root;
+    }
+    return new FrameNode(
+        root, context.variables().keySet().toArray(new String[0]), context.values().size);
+  }
+
+  /**
+   * @param types the type of each node
+   * @param common the subtrees whose values are kept for the rest of an evaluation
+   * @param memos the node linked for each common subtree so far
+   * @param variables the index of each variable read so far
+   * @param values the slots taken so far in the values of an evaluation
+   * @param longArithmetic whether integer arithmetic is linked to be evaluated on longs
+   * @param captures the value slot of each variable that long arithmetic has already read
+   */
+  private record Context(
+      Map<AST, ValueType> types,
+      Set<AST> common,
+      Map<AST, MemoNode> memos,
+      Map<String, Integer> variables,
+      ValueSlots values,
+      boolean longArithmetic,
+      Map<String, Integer> captures) {
+    /** The same context for the subtree that is evaluated when long arithmetic fails. */
+    Context fallingBackFrom(Map<String, Integer> captures) {
+      return new Context(types, common, memos, variables, values, false, captures);
+    }
+  }
+
+  /** Counts the slots in the values of an evaluation, which {@link Frame} holds. */
+  private static final class ValueSlots {
+    int size;
+  }
+
+  private Node link(AST node, Context context) throws ParserException {
+    if (context.common().contains(node)) {
+      MemoNode memo = context.memos().get(node);
+      if (memo == null) {
+        // Link the subtree first, since it may have common subtrees of its own.
+        Node value = linkNode(node, context);
+        memo = new MemoNode(value, context.values().size++);
+        context.memos().put(node, memo);
+      }
+      return memo;
+    }
+    return linkNode(node, context);
+  }
+
+  private Node linkNode(AST node, Context context) throws ParserException {
+    if (context.longArithmetic() && (node instanceof AST.Unary || node instanceof AST.Binary)) {
+      int firstSlot = context.values().size;
+      var captures = new HashMap<String, Integer>();
+      LongNode fast = linkLong(node, context, captures);
+      if (fast != null) {
+        Node generic = linkNode(node, context.fallingBackFrom(captures));
+        return new LongArithmeticNode(fast, generic, firstSlot, captures.size());
+      }
+      // Nothing refers to the slots of the variables read so far.
+      context.values().size = firstSlot;
+    }
+
+    return switch (node) {
+      case AST.Variable variable -> {
+        var variables = context.variables();
+        int index = variables.computeIfAbsent(variable.variable(), name -> variables.size());
+        Integer slot = context.captures().get(variable.variable());
+        yield slot == null
+            ? new IndexedVariableNode(variable.variable(), index)
+            : new CapturedVariableNode(variable.variable(), index, slot);
+      }
+      case AST.PromptVariable promptVariable ->
+          new VariableNode(promptVariable.variable(), VariableModifiers.Prompt);
+      case AST.NumberLiteral numberLiteral -> new ConstantNode(numberLiteral.value());
+      case AST.StringLiteral stringLiteral -> new ConstantNode(stringLiteral.value());
+      case AST.Unary unary -> {
+        var functionName = unary.operator().asText();
+        yield call(
+            lookup(functionName, "Undefined unary function: %s"),
+            functionName,
+            List.of(unary.operand()),
+            context);
+      }
+      case AST.Binary binary -> {
+        var functionName = binary.operator().asText();
+        yield call(
+            lookup(functionName, "Undefined binary function: %s"),
+            functionName,
+            List.of(binary.lhs(), binary.rhs()),
+            context);
+      }
+      case AST.Assignment assignment -> {
+        // Note: the left-hand side is passed by name, not evaluated.
+        var functionName = "=";
+        var name = assignment.lhs().text();
+        yield call(
+            lookup(functionName, "Undefined binary function: %s"),
+            functionName,
+            List.of(new AST.StringLiteral(name, name), assignment.rhs()),
+            context);
+      }
+      case AST.FunctionCall functionCall -> {
+        String name = functionCall.function();
+        yield call(
+            lookup(name, "Undefined function: %s"), name, functionCall.parameters(), context);
+      }
+    };
+  }
+
+  private Node call(Function function, String functionName, List<AST> parameters, Context context)
+      throws ParserException {
+    var params = new Node[parameters.size()];
+    for (int i = 0; i < params.length; i++) {
+      params[i] = link(parameters.get(i), context);
+    }
+
+    var parameterTypes = FunctionSignatures.parameterTypes(parameters, context.types());
+    function = function.specialize(parameterTypes);
+
+    if (function instanceof LazyFunction lazy) {
+      return new LazyCallNode(parser, lazy, functionName, params);
+    }
+    if (FunctionSignatures.isCheckedBySignature(function)) {
+      var checkedFunction = (AbstractFunction) function;
+      int[] unchecked = FunctionSignatures.check(checkedFunction, functionName, parameterTypes);
+      return new DirectCallNode(parser, checkedFunction, functionName, params, unchecked);
+    }
+    return new CallNode(parser, function, functionName, params);
+  }
+
+  /**
+   * Link a subtree to be evaluated on longs.
+   *
+   * @param captures where to record the value slot of each variable that is read
+   * @return the linked subtree, or {@code null} if it is not integer arithmetic done by the
+   *     built-in functions
+   */
+  private LongNode linkLong(AST node, Context context, Map<String, Integer> captures) {
+    if (context.common().contains(node)) {
+      // Leave it to its memo node.
+      return null;
+    }
+
+    return switch (node) {
+      case AST.NumberLiteral numberLiteral -> {
+        BigDecimal value = numberLiteral.value();
+        yield isLong(value) ? new LongConstantNode(value.longValue()) : null;
+      }
+      case AST.Variable variable -> {
+        var variables = context.variables();
+        int index = variables.computeIfAbsent(variable.variable(), name -> variables.size());
+        int slot = captures.computeIfAbsent(variable.variable(), name -> context.values().size++);
+        yield new LongVariableNode(variable.variable(), index, slot);
+      }
+      case AST.Unary unary -> {
+        LongNode operand = linkLong(unary.operand(), context, captures);
+        if (operand == null) {
+          yield null;
+        } else if (unary.operator() == UnaryOperator.Plus && isBuiltIn("+", Addition.class)) {
+          yield operand;
+        } else if (unary.operator() == UnaryOperator.Minus && isBuiltIn("-", Subtraction.class)) {
+          yield new LongNegateNode(operand);
+        } else {
+          yield null;
+        }
+      }
+      case AST.Binary binary -> {
+        BinaryOperator operator = binary.operator();
+        boolean builtIn =
+            switch (operator) {
+              case Plus -> isBuiltIn("+", Addition.class);
+              case Minus -> isBuiltIn("-", Subtraction.class);
+              case Multiply -> isBuiltIn("*", Multiplication.class);
+              default -> false;
+            };
+        if (!builtIn) {
+          yield null;
+        }
+        LongNode lhs = linkLong(binary.lhs(), context, captures);
+        LongNode rhs = lhs == null ? null : linkLong(binary.rhs(), context, captures);
+        yield rhs == null ? null : new LongBinaryNode(operator, lhs, rhs);
+      }
+      default -> null;
+    };
+  }
+
+  private boolean isBuiltIn(String functionName, Class<? extends Function> type) {
+    Function function = parser.getFunction(functionName);
+    return function != null && function.getClass() == type;
+  }
+
+  /**
+   * @return whether {@code value} is an integer that the built-in functions keep at scale 0, and
+   *     that fits in a long
+   */
+  private static boolean isLong(BigDecimal value) {
+    return value.scale() == 0 && value.precision() <= LONG_DIGITS;
+  }
+
+  private Function lookup(String functionName, String errorFormat) throws EvaluationException {
+    Function function = parser.getFunction(functionName);
+    if (function == null) {
+      throw new EvaluationException(String.format(errorFormat, functionName));
+    }
+    return function;
+  }
+
+  /** A linked node of an expression. */
+  public abstract static sealed class Node
+      permits ConstantNode,
+          VariableNode,
+          IndexedVariableNode,
+          CapturedVariableNode,
+          CallNode,
+          DirectCallNode,
+          LazyCallNode,
+          MemoNode,
+          LongArithmeticNode,
+          FrameNode {
+    final Object evaluate(VariableResolver resolver) throws ParserException {
+      return evaluate(resolver, NO_FRAME);
+    }
+
+    /**
+     * @param resolver the resolver of the evaluation
+     * @param frame the variable slots and common subexpressions of the evaluation
+     */
+    abstract Object evaluate(VariableResolver resolver, Frame frame) throws ParserException;
+  }
+
+  static final class ConstantNode extends Node {
+    private final Object value;
+
+    ConstantNode(Object value) {
+      this.value = value;
+    }
+
+    @Override
+    Object evaluate(VariableResolver resolver, Frame frame) {
+      return value;
+    }
+  }
+
+  static final class VariableNode extends Node {
+    private final String name;
+    private final VariableModifiers modifiers;
+
+    VariableNode(String name, VariableModifiers modifiers) {
+      this.name = name;
+      this.modifiers = modifiers;
+    }
+
+    @Override
+    Object evaluate(VariableResolver resolver, Frame frame) throws ParserException {
+      Object value = resolver.lookupVariable(name, modifiers);
+      if (value == VariableResolver.UNDEFINED) {
+        throw new EvaluationException(String.format("Undefined variable: %s", name));
+      }
+      return value;
+    }
+  }
+
+  /** Reads a variable by the slot the resolver of the evaluation gave it. */
+  static final class IndexedVariableNode extends Node {
+    private final String name;
+    private final int index;
+
+    IndexedVariableNode(String name, int index) {
+      this.name = name;
+      this.index = index;
+    }
+
+    @Override
+    Object evaluate(VariableResolver resolver, Frame frame) throws ParserException {
+      Object value = frame.variables().lookupVariable(frame.variableSlots()[index]);
+      if (value == VariableResolver.UNDEFINED) {
+        throw new EvaluationException(String.format("Undefined variable: %s", name));
+      }
+      return value;
+    }
+  }
+
+  /** A variable that the long arithmetic of the enclosing subtree may have read already. */
+  static final class CapturedVariableNode extends Node {
+    private final String name;
+    private final int index;
+    private final int slot;
+
+    CapturedVariableNode(String name, int index, int slot) {
+      this.name = name;
+      this.index = index;
+      this.slot = slot;
+    }
+
+    @Override
+    Object evaluate(VariableResolver resolver, Frame frame) throws ParserException {
+      Object value = readCaptured(frame, index, slot);
+      if (value == VariableResolver.UNDEFINED) {
+        throw new EvaluationException(String.format("Undefined variable: %s", name));
+      }
+      return value;
+    }
+  }
+
+  /**
+   * Read a variable of a subtree of long arithmetic, looking it up only the first time during an
+   * evaluation of the subtree.
+   *
+   * @param index the index of the variable in the slots of the frame
+   * @param slot the slot in the values of the frame that keeps the variable
+   */
+  private static Object readCaptured(Frame frame, int index, int slot) throws ParserException {
+    Object[] values = frame.values();
+    Object value = values[slot];
+    if (value == null) {
+      value = frame.variables().lookupVariable(frame.variableSlots()[index]);
+      values[slot] = value;
+    }
+    return value;
+  }
+
+  static final class CallNode extends Node {
+    private final Parser parser;
+    private final Function function;
+    private final String functionName;
+    private final Node[] params;
+
+    CallNode(Parser parser, Function function, String functionName, Node[] params) {
+      this.parser = parser;
+      this.function = function;
+      this.functionName = functionName;
+      this.params = params;
+    }
+
+    @Override
+    Object evaluate(VariableResolver resolver, Frame frame) throws ParserException {
+      // The argument array is sized at link time but allocated per call: a shared array would
+      // break re-entrant and concurrent evaluation of the same linked expression.
+      var args = new Object[params.length];
+      for (int i = 0; i < args.length; i++) {
+        args[i] = params[i].evaluate(resolver, frame);
+      }
+      return function.evaluate(parser, resolver, functionName, Arrays.asList(args));
+    }
+  }
+
+  /** Calls a function that is checked by its signature, skipping the checks done at link time. */
+  static final class DirectCallNode extends Node {
+    private final Parser parser;
+    private final AbstractFunction function;
+    private final String functionName;
+    private final Node[] params;
+    private final int[] unchecked;
+
+    DirectCallNode(
+        Parser parser,
+        AbstractFunction function,
+        String functionName,
+        Node[] params,
+        int[] unchecked) {
+      this.parser = parser;
+      this.function = function;
+      this.functionName = functionName;
+      this.params = params;
+      this.unchecked = unchecked;
+    }
+
+    @Override
+    Object evaluate(VariableResolver resolver, Frame frame) throws ParserException {
+      var args = new Object[params.length];
+      for (int i = 0; i < args.length; i++) {
+        args[i] = params[i].evaluate(resolver, frame);
+      }
+      for (int i : unchecked) {
+        function.checkParameterType(i, args[i]);
+      }
+      return function.childEvaluate(parser, resolver, functionName, Arrays.asList(args));
+    }
+  }
+
+  static final class LazyCallNode extends Node {
+    private final Parser parser;
+    private final LazyFunction function;
+    private final String functionName;
+    private final Node[] params;
+
+    LazyCallNode(Parser parser, LazyFunction function, String functionName, Node[] params) {
+      this.parser = parser;
+      this.function = function;
+      this.functionName = functionName;
+      this.params = params;
+    }
+
+    @Override
+    Object evaluate(VariableResolver resolver, Frame frame) throws ParserException {
+      var args = new LazyFunction.Parameter[params.length];
+      for (int i = 0; i < args.length; i++) {
+        Node param = params[i];
+        args[i] = () -> param.evaluate(resolver, frame);
+      }
+      return function.evaluateLazily(parser, resolver, functionName, Arrays.asList(args));
+    }
+  }
+
+  /** Evaluates a common subexpression once per evaluation, and keeps its value in the frame. */
+  static final class MemoNode extends Node {
+    private final Node value;
+    private final int index;
+
+    MemoNode(Node value, int index) {
+      this.value = value;
+      this.index = index;
+    }
+
+    @Override
+    Object evaluate(VariableResolver resolver, Frame frame) throws ParserException {
+      Object[] values = frame.values();
+      Object result = values[index];
+      if (result == null) {
+        result = value.evaluate(resolver, frame);
+        values[index] = result;
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Evaluates a subtree of integer arithmetic on longs, falling back to the same subtree linked to
+   * the functions whenever that fails.
+   */
+  static final class LongArithmeticNode extends Node {
+    private final LongNode fast;
+    private final Node generic;
+    private final int firstSlot;
+    private final int slotCount;
+
+    /**
+     * @param firstSlot the first of the slots in the values of the frame that keep the variables of
+     *     the subtree
+     * @param slotCount the number of those slots
+     */
+    LongArithmeticNode(LongNode fast, Node generic, int firstSlot, int slotCount) {
+      this.fast = fast;
+      this.generic = generic;
+      this.firstSlot = firstSlot;
+      this.slotCount = slotCount;
+    }
+
+    @Override
+    Object evaluate(VariableResolver resolver, Frame frame) throws ParserException {
+      // A lazy function may evaluate the subtree more than once, with other variable values.
+      Arrays.fill(frame.values(), firstSlot, firstSlot + slotCount, null);
+      try {
+        return BigDecimal.valueOf(fast.evaluate(frame));
+      } catch (NotALongException | ArithmeticException e) {
+        // The subtree only reads variables, and those read so far are kept in the frame, so
+        // evaluating it again has no other effect.
+        return generic.evaluate(resolver, frame);
+      }
+    }
+  }
+
+  /** Thrown when a value in long arithmetic is not an integer that fits in a long. */
+  private static final class NotALongException extends Exception {
+    private static final NotALongException INSTANCE = new NotALongException();
+
+    private NotALongException() {
+      super(null, null, false, false);
+    }
+  }
+
+  /** A node of a subtree that is evaluated on longs. */
+  abstract static sealed class LongNode
+      permits LongConstantNode, LongVariableNode, LongNegateNode, LongBinaryNode {
+    /**
+     * @throws ArithmeticException if the result overflows a long
+     */
+    abstract long evaluate(Frame frame) throws ParserException, NotALongException;
+  }
+
+  static final class LongConstantNode extends LongNode {
+    private final long value;
+
+    LongConstantNode(long value) {
+      this.value = value;
+    }
+
+    @Override
+    long evaluate(Frame frame) {
+      return value;
+    }
+  }
+
+  static final class LongVariableNode extends LongNode {
+    private final String name;
+    private final int index;
+    private final int slot;
+
+    LongVariableNode(String name, int index, int slot) {
+      this.name = name;
+      this.index = index;
+      this.slot = slot;
+    }
+
+    @Override
+    long evaluate(Frame frame) throws ParserException, NotALongException {
+      Object value = readCaptured(frame, index, slot);
+      if (value instanceof BigDecimal number && isLong(number)) {
+        return number.longValue();
+      } else if (value == VariableResolver.UNDEFINED) {
+        throw new EvaluationException(String.format("Undefined variable: %s", name));
+      }
+      throw NotALongException.INSTANCE;
+    }
+  }
+
+  static final class LongNegateNode extends LongNode {
+    private final LongNode operand;
+
+    LongNegateNode(LongNode operand) {
+      this.operand = operand;
+    }
+
+    @Override
+    long evaluate(Frame frame) throws ParserException, NotALongException {
+      return Math.negateExact(operand.evaluate(frame));
+    }
+  }
+
+  static final class LongBinaryNode extends LongNode {
+    private final BinaryOperator operator;
+    private final LongNode lhs;
+    private final LongNode rhs;
+
+    LongBinaryNode(BinaryOperator operator, LongNode lhs, LongNode rhs) {
+      this.operator = operator;
+      this.lhs = lhs;
+      this.rhs = rhs;
+    }
+
+    @Override
+    long evaluate(Frame frame) throws ParserException, NotALongException {
+      long left = lhs.evaluate(frame);
+      long right = rhs.evaluate(frame);
+      return switch (operator) {
+        case Plus -> Math.addExact(left, right);
+        case Minus -> Math.subtractExact(left, right);
+        case Multiply -> Math.multiplyExact(left, right);
+        default -> throw new IllegalStateException("Not long arithmetic: " + operator);
+      };
+    }
+  }
+
+  /**
+   * The state of one evaluation.
+   *
+   * @param variables the resolver to read variables from by slot
+   * @param variableSlots the slot of each variable of the expression
+   * @param values the values of the common subexpressions, as far as they have been evaluated, and
+   *     the variables read by long arithmetic
+   */
+  record Frame(IndexedVariableResolver variables, int[] variableSlots, Object[] values) {}
+
+  /**
+   * The root of an expression with variables or common subexpressions, which sets up the frame of
+   * each evaluation.
+   */
+  static final class FrameNode extends Node {
+    private final Node root;
+    private final String[] variables;
+    private final int[] adapterSlots;
+    private final int valueCount;
+
+    /**
+     * The slots of the last resolver this expression was evaluated with, to skip looking them up
+     * again when the same resolver is used repeatedly. The resolver is only weakly referenced, so
+     * that a long-lived expression does not keep it alive.
+     */
+    private volatile Binding lastBinding;
+
+    private record Binding(WeakReference<IndexedVariableResolver> resolver, int[] slots) {}
+
+    FrameNode(Node root, String[] variables, int valueCount) {
+      this.root = root;
+      this.variables = variables;
+      this.adapterSlots = new int[variables.length];
+      for (int i = 0; i < adapterSlots.length; i++) {
+        adapterSlots[i] = i;
+      }
+      this.valueCount = valueCount;
+    }
+
+    @Override
+    Object evaluate(VariableResolver resolver, Frame frame) throws ParserException {
+      // Every evaluation gets its own values, so that linked expressions stay reentrant.
+      Object[] values = valueCount == 0 ? NO_VALUES : new Object[valueCount];
+      if (variables.length == 0) {
+        return root.evaluate(resolver, new Frame(null, NO_SLOTS, values));
+      }
+
+      if (!(resolver instanceof IndexedVariableResolver indexed)) {
+        // The adapter numbers the variables in the same order, so it needs no lookups.
+        var adapter = new IndexedVariableResolverAdapter(resolver, variables);
+        return root.evaluate(resolver, new Frame(adapter, adapterSlots, values));
+      }
+
+      Binding binding = lastBinding;
+      if (binding == null || binding.resolver().get() != indexed) {
+        var slots = new int[variables.length];
+        for (int i = 0; i < slots.length; i++) {
+          slots[i] = indexed.getSlot(variables[i]);
+        }
+        binding = new Binding(new WeakReference<>(indexed), slots);
+        lastBinding = binding;
+      }
+      return root.evaluate(resolver, new Frame(indexed, binding.slots(), values));
+    }
+  }
+}
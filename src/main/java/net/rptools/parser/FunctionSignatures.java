@@ -0,0 +1,105 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import net.rptools.parser.ast.AST;
+import net.rptools.parser.function.AbstractFunction;
+import net.rptools.parser.function.Function;
+import net.rptools.parser.function.ParameterException;
+import net.rptools.parser.function.ValueType;
+
+/**
+ * Checks calls against function signatures ahead of evaluation.
+ *
+ * <p>An {@link AbstractFunction} that does not override {@link AbstractFunction#checkParameters} is
+ * fully described by its parameter count and {@linkplain Function#getParameterType(int) parameter
+ * types}. For such a function the parameter count of a call can be checked once when the call is
+ * linked, and so can the types of parameters whose types are {@linkplain TypeInferenceTreeParser
+ * inferred} up front. Only the remaining parameters have to be checked on every evaluation, after
+ * which the evaluator can call {@link AbstractFunction#childEvaluate} directly.
+ */
+final class FunctionSignatures {
+  private static final ClassValue<Boolean> CHECKED_BY_SIGNATURE =
+      new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+          try {
+            return type.getMethod("checkParameters", String.class, List.class).getDeclaringClass()
+                == AbstractFunction.class;
+          } catch (NoSuchMethodException e) {
+            return false;
+          }
+        }
+      };
+
+  private FunctionSignatures() {}
+
+  /**
+   * @param function the function being called
+   * @return whether the parameter checks of {@code function} are described by its signature alone
+   */
+  static boolean isCheckedBySignature(Function function) {
+    return function instanceof AbstractFunction && CHECKED_BY_SIGNATURE.get(function.getClass());
+  }
+
+  /**
+   * Get the types of the parameters of a call.
+   *
+   * @param parameters the parameters of the call
+   * @param types the types {@linkplain TypeInferenceTreeParser inferred} for the tree of the call
+   * @return the type of each parameter
+   */
+  static List<ValueType> parameterTypes(List<AST> parameters, Map<AST, ValueType> types) {
+    var parameterTypes = new ArrayList<ValueType>(parameters.size());
+    for (AST parameter : parameters) {
+      ValueType type = types.get(parameter);
+      if (type == null) {
+        // Parameters made up by the evaluator, like the name of an assigned variable.
+        type = TypeInferenceTreeParser.literalType(parameter);
+      }
+      parameterTypes.add(type);
+    }
+    return parameterTypes;
+  }
+
+  /**
+   * Check a call against the signature of its function, as far as that is possible before
+   * evaluation.
+   *
+   * @param function the function being called, which must be {@linkplain #isCheckedBySignature
+   *     checked by its signature}
+   * @param functionName the name the function is called by
+   * @param parameterTypes the types of the parameters of the call
+   * @return the indices of the parameters whose types still have to be checked on evaluation
+   * @throws ParameterException if the call has the wrong number of parameters
+   */
+  static int[] check(AbstractFunction function, String functionName, List<ValueType> parameterTypes)
+      throws ParameterException {
+    function.checkParameterCount(functionName, parameterTypes.size());
+
+    var unchecked = new int[parameterTypes.size()];
+    int count = 0;
+    for (int i = 0; i < parameterTypes.size(); i++) {
+      if (!function.getParameterType(i).isSatisfiedBy(parameterTypes.get(i))) {
+        unchecked[count++] = i;
+      }
+    }
+    return Arrays.copyOf(unchecked, count);
+  }
+}
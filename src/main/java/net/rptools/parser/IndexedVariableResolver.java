@@ -0,0 +1,67 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+/**
+ * A {@link VariableResolver} that also resolves variables by integer slot.
+ *
+ * <p>A {@linkplain Expression#link() linked} expression asks the resolver for the slot of each of
+ * its variables once, and from then on reads them by slot, without looking up their names. Other
+ * resolvers are wrapped in an {@link IndexedVariableResolverAdapter}, which reads by name.
+ *
+ * <p>Slots only cover variables without {@linkplain VariableModifiers modifiers}: prompt variables
+ * are always resolved by name.
+ */
+public interface IndexedVariableResolver extends VariableResolver {
+  /**
+   * Get the slot of a variable.
+   *
+   * <p>A resolver returns the same slot for the same name every time, whether or not the variable
+   * is defined yet, and the slot stays valid for as long as the resolver is used.
+   *
+   * @param name the name of the variable
+   * @return the slot of the variable
+   */
+  public int getSlot(String name) throws ParserException;
+
+  /**
+   * @param slot a slot returned by {@link #getSlot}
+   * @return whether the variable of that slot is defined
+   */
+  public boolean containsVariable(int slot) throws ParserException;
+
+  /**
+   * @param slot a slot returned by {@link #getSlot}
+   * @return the value of the variable of that slot
+   */
+  public Object getVariable(int slot) throws ParserException;
+
+  /**
+   * Look up a variable by slot in a single call.
+   *
+   * @param slot a slot returned by {@link #getSlot}
+   * @return the value of the variable of that slot, or {@link #UNDEFINED} if it is not defined
+   * @see #lookupVariable(String, VariableModifiers)
+   */
+  public default Object lookupVariable(int slot) throws ParserException {
+    return containsVariable(slot) ? getVariable(slot) : UNDEFINED;
+  }
+
+  /**
+   * @param slot a slot returned by {@link #getSlot}
+   * @param value the new value of the variable of that slot
+   */
+  public void setVariable(int slot, Object value) throws ParserException;
+}
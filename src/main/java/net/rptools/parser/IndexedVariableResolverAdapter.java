@@ -0,0 +1,140 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.rptools.parser.function.ValueType;
+
+/**
+ * Adapts a {@link VariableResolver} to {@link IndexedVariableResolver}.
+ *
+ * <p>Each slot stands for a name, and every access by slot is passed on to the wrapped resolver by
+ * that name, so it works with any resolver but saves no lookups. Names are compared exactly, since
+ * only the wrapped resolver knows whether they are case sensitive.
+ */
+public class IndexedVariableResolverAdapter implements IndexedVariableResolver {
+  private final VariableResolver resolver;
+  private final List<String> names;
+  private Map<String, Integer> slots;
+
+  public IndexedVariableResolverAdapter(VariableResolver resolver) {
+    this.resolver = resolver;
+    this.names = new ArrayList<>();
+  }
+
+  /**
+   * Create an adapter whose first slots are given up front, so that they need not be looked up.
+   *
+   * @param resolver the resolver to adapt
+   * @param names the names of slot 0, 1, ... which must not contain duplicates
+   */
+  IndexedVariableResolverAdapter(VariableResolver resolver, String[] names) {
+    this.resolver = resolver;
+    this.names = new ArrayList<>(Arrays.asList(names));
+  }
+
+  public VariableResolver getResolver() {
+    return resolver;
+  }
+
+  @Override
+  public int getSlot(String name) {
+    if (slots == null) {
+      slots = new HashMap<>();
+      for (int i = 0; i < names.size(); i++) {
+        slots.put(names.get(i), i);
+      }
+    }
+
+    Integer slot = slots.get(name);
+    if (slot == null) {
+      slot = names.size();
+      names.add(name);
+      slots.put(name, slot);
+    }
+    return slot;
+  }
+
+  @Override
+  public boolean containsVariable(int slot) throws ParserException {
+    return resolver.containsVariable(names.get(slot), VariableModifiers.None);
+  }
+
+  @Override
+  public Object getVariable(int slot) throws ParserException {
+    return resolver.getVariable(names.get(slot), VariableModifiers.None);
+  }
+
+  @Override
+  public Object lookupVariable(int slot) throws ParserException {
+    return resolver.lookupVariable(names.get(slot), VariableModifiers.None);
+  }
+
+  @Override
+  public void setVariable(int slot, Object value) throws ParserException {
+    resolver.setVariable(names.get(slot), VariableModifiers.None, value);
+  }
+
+  @Override
+  public boolean containsVariable(String name) throws ParserException {
+    return resolver.containsVariable(name);
+  }
+
+  @Override
+  public void setVariable(String name, Object value) throws ParserException {
+    resolver.setVariable(name, value);
+  }
+
+  @Override
+  public Object getVariable(String variableName) throws ParserException {
+    return resolver.getVariable(variableName);
+  }
+
+  @Override
+  public boolean containsVariable(String name, VariableModifiers vType) throws ParserException {
+    return resolver.containsVariable(name, vType);
+  }
+
+  @Override
+  public void setVariable(String name, VariableModifiers vType, Object value)
+      throws ParserException {
+    resolver.setVariable(name, vType, value);
+  }
+
+  @Override
+  public Object getVariable(String variableName, VariableModifiers vType) throws ParserException {
+    return resolver.getVariable(variableName, vType);
+  }
+
+  @Override
+  public Object lookupVariable(String name, VariableModifiers vType) throws ParserException {
+    return resolver.lookupVariable(name, vType);
+  }
+
+  @Override
+  public Set<String> getVariables() {
+    return resolver.getVariables();
+  }
+
+  @Override
+  public ValueType getVariableType(String name) {
+    return resolver.getVariableType(name);
+  }
+}
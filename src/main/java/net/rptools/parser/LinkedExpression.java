@@ -0,0 +1,43 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+/**
+ * An {@link Expression} linked by {@link ExpressionLinker}.
+ *
+ * <p>A linked expression holds no evaluation state of its own, so it can be reused and shared
+ * between threads just like the expression it was linked from.
+ */
+public class LinkedExpression {
+  private final Expression expression;
+  private final ExpressionLinker.Node root;
+
+  LinkedExpression(Expression expression, ExpressionLinker.Node root) {
+    this.expression = expression;
+    this.root = root;
+  }
+
+  public Expression getExpression() {
+    return expression;
+  }
+
+  public Object evaluate() throws ParserException {
+    return evaluate(new MapVariableResolver());
+  }
+
+  public Object evaluate(VariableResolver resolver) throws ParserException {
+    return root.evaluate(resolver);
+  }
+}
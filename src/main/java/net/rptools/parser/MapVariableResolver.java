@@ -16,16 +16,49 @@ package net.rptools.parser;
 
 import java.math.BigDecimal;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import net.rptools.CaseInsensitiveHashMap;
 
 /**
  * Default implementation of a {@link VariableResolver} that uses a Map<String, Object> as the
  * backing object.
+ *
+ * <p>A resolver can be a scope of a parent resolver: it reads through to the parent, and only
+ * stores the variables that are assigned in it, which hide those of the parent without changing
+ * them. Isolating the assignments of a nested macro call thus costs one small map per call rather
+ * than a copy of every variable.
+ *
+ * <p>This class is not thread-safe. When evaluating in parallel, give each task its own resolver. A
+ * parent can be shared by scopes in several threads as long as nothing writes to it.
  */
 public class MapVariableResolver implements VariableResolver {
   private final Map<String, Object> variables = new CaseInsensitiveHashMap<Object>();
+  private final VariableResolver parent;
+
+  /**
+   * Whether a class overrides {@link #containsVariable(String, VariableModifiers)} or {@link
+   * #getVariable(String, VariableModifiers)}, in which case {@link #lookupVariable} has to go
+   * through them rather than reading the map directly.
+   */
+  private static final ClassValue<Boolean> READS_ITS_OWN_WAY =
+      new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+          try {
+            return type.getMethod("containsVariable", String.class, VariableModifiers.class)
+                        .getDeclaringClass()
+                    != MapVariableResolver.class
+                || type.getMethod("getVariable", String.class, VariableModifiers.class)
+                        .getDeclaringClass()
+                    != MapVariableResolver.class;
+          } catch (NoSuchMethodException e) {
+            return true;
+          }
+        }
+      };
 
   private static final Map<String, Object> constants =
       Map.of(
@@ -33,9 +66,29 @@ public class MapVariableResolver implements VariableResolver {
           "false", BigDecimal.ZERO);
 
   public MapVariableResolver() {
+    this.parent = null;
     variables.putAll(constants);
   }
 
+  /**
+   * Create a scope of a parent resolver.
+   *
+   * <p>Variables that are not assigned in the scope, including {@code true} and {@code false}, are
+   * read from the parent, which is never written to.
+   *
+   * @param parent the resolver to read through to
+   */
+  public MapVariableResolver(VariableResolver parent) {
+    this.parent = Objects.requireNonNull(parent);
+  }
+
+  /**
+   * @return the resolver this scope reads through to, or {@code null} if it is not a scope
+   */
+  public VariableResolver getParent() {
+    return parent;
+  }
+
   public boolean containsVariable(String name) throws ParserException {
     return containsVariable(name, VariableModifiers.None);
   }
@@ -52,7 +105,7 @@ public class MapVariableResolver implements VariableResolver {
   }
 
   public boolean containsVariable(String name, VariableModifiers vType) throws ParserException {
-    return variables.containsKey(name);
+    return variables.containsKey(name) || (parent != null && parent.containsVariable(name, vType));
   }
 
   public void setVariable(String name, VariableModifiers vType, Object value)
@@ -61,11 +114,41 @@ public class MapVariableResolver implements VariableResolver {
   }
 
   public Object getVariable(String variableName, VariableModifiers vType) throws ParserException {
+    if (parent != null && !variables.containsKey(variableName)) {
+      return parent.getVariable(variableName, vType);
+    }
     return variables.get(variableName);
   }
 
+  @Override
+  public Object lookupVariable(String name, VariableModifiers vType) throws ParserException {
+    if (READS_ITS_OWN_WAY.get(getClass())) {
+      return VariableResolver.super.lookupVariable(name, vType);
+    }
+
+    Object value = variables.getOrDefault(name, UNDEFINED);
+    if (value == UNDEFINED && parent != null) {
+      return parent.lookupVariable(name, vType);
+    }
+    return value;
+  }
+
+  /**
+   * @return the names of the variables, which for a scope is a snapshot that also holds the
+   *     variables of its parent
+   */
   @Override
   public Set<String> getVariables() {
-    return Collections.unmodifiableSet(variables.keySet());
+    if (parent == null) {
+      return Collections.unmodifiableSet(variables.keySet());
+    }
+
+    var names = new HashSet<>(variables.keySet());
+    for (String name : parent.getVariables()) {
+      if (!variables.containsKey(name)) {
+        names.add(name);
+      }
+    }
+    return Collections.unmodifiableSet(names);
   }
 }
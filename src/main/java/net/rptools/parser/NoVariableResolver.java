@@ -0,0 +1,75 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import java.util.Set;
+import net.rptools.parser.function.EvaluationException;
+
+/**
+ * A resolver that fails on any access, for evaluating functions that must not depend on variables.
+ *
+ * <p>Evaluating a function with this resolver either produces a result that holds no matter which
+ * resolver is used later, or fails because the function needs the resolver.
+ */
+final class NoVariableResolver implements VariableResolver {
+  static final NoVariableResolver INSTANCE = new NoVariableResolver();
+
+  private NoVariableResolver() {}
+
+  @Override
+  public boolean containsVariable(String name) throws ParserException {
+    throw fail();
+  }
+
+  @Override
+  public void setVariable(String name, Object value) throws ParserException {
+    throw fail();
+  }
+
+  @Override
+  public Object getVariable(String variableName) throws ParserException {
+    throw fail();
+  }
+
+  @Override
+  public boolean containsVariable(String name, VariableModifiers vType) throws ParserException {
+    throw fail();
+  }
+
+  @Override
+  public void setVariable(String name, VariableModifiers vType, Object value)
+      throws ParserException {
+    throw fail();
+  }
+
+  @Override
+  public Object getVariable(String variableName, VariableModifiers vType) throws ParserException {
+    throw fail();
+  }
+
+  @Override
+  public Object lookupVariable(String name, VariableModifiers vType) throws ParserException {
+    throw fail();
+  }
+
+  @Override
+  public Set<String> getVariables() {
+    throw new UnsupportedOperationException("Variables are not available");
+  }
+
+  private static EvaluationException fail() {
+    return new EvaluationException("Variables are not available");
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * Controls the precision used by the arithmetic functions.
+ *
+ * <p>Values are always {@link BigDecimal}s, and this mode determines the {@link MathContext} that
+ * inexact operations like division are computed with. In {@link #FAST} mode, {@linkplain
+ * ExpressionLinker linked} expressions also carry integer addition, subtraction and multiplication
+ * on {@code long}s, with the functions as a fallback when a value is not an integer or the result
+ * overflows.
+ */
+public enum NumericMode {
+  /** 34 significant digits; the default. */
+  EXACT(MathContext.DECIMAL128),
+
+  /**
+   * 16 significant digits, the same precision as a {@code double}. With this precision division,
+   * powers and averages of small numbers are computed with {@code long} arithmetic instead of
+   * {@code BigInteger}s, and results of floating point functions are rounded instead of being
+   * expanded to their full binary value. Integer arithmetic in linked expressions is done on {@code
+   * long}s, which gives exactly the same results.
+   */
+  FAST(MathContext.DECIMAL64);
+
+  private final MathContext mathContext;
+
+  NumericMode(MathContext mathContext) {
+    this.mathContext = mathContext;
+  }
+
+  public MathContext getMathContext() {
+    return mathContext;
+  }
+
+  /**
+   * Convert the result of a floating point calculation.
+   *
+   * @param value the value to convert
+   * @return the exact value of {@code value} in {@link #EXACT} mode, otherwise {@code value}
+   *     rounded to the precision of this mode
+   */
+  public BigDecimal toBigDecimal(double value) {
+    return this == EXACT ? new BigDecimal(value) : new BigDecimal(value, mathContext);
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Evaluates many expressions, or one expression with many sets of variables, in parallel on a
+ * {@link ForkJoinPool}.
+ *
+ * <p>Each evaluation gets its own {@link VariableResolver}, so evaluations do not share any mutable
+ * state through the resolver. The parser of the expressions should be {@linkplain Parser#freeze()
+ * frozen} before evaluating in parallel, and the functions it holds must be thread-safe. All the
+ * standard functions are.
+ *
+ * <p>The work is split recursively until each task evaluates at most {@link #getChunkSize()}
+ * expressions. When an evaluation fails, the remaining ones are skipped and the first failure is
+ * thrown.
+ *
+ * <p>Expressions can be evaluated in parallel in other ways too, for instance one task per
+ * evaluation on virtual threads. The same rules apply: one resolver per task and a frozen parser.
+ */
+public class ParallelEvaluator {
+  private static final int DEFAULT_CHUNK_SIZE = 16;
+
+  private final ForkJoinPool pool;
+  private final int chunkSize;
+
+  /** Create an evaluator that runs on the common pool. */
+  public ParallelEvaluator() {
+    this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * @param pool the pool to evaluate on
+   * @param chunkSize the number of evaluations below which a task is not split any further
+   */
+  public ParallelEvaluator(ForkJoinPool pool, int chunkSize) {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+    }
+    this.pool = pool;
+    this.chunkSize = chunkSize;
+  }
+
+  public ForkJoinPool getPool() {
+    return pool;
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * Evaluate many expressions, each with a new resolver.
+   *
+   * @param expressions the expressions to evaluate
+   * @param resolvers supplies a new resolver for each evaluation, and is called concurrently
+   * @return the result of each expression
+   * @throws ParserException if any evaluation fails
+   */
+  public Object[] evaluate(
+      List<Expression> expressions, Supplier<? extends VariableResolver> resolvers)
+      throws ParserException {
+    return run(expressions.size(), i -> expressions.get(i).evaluate(resolvers.get()));
+  }
+
+  /**
+   * Evaluate one expression for each of many resolvers.
+   *
+   * @param expression the expression to evaluate
+   * @param resolvers one resolver per evaluation, each of which is used by one thread only
+   * @return the result for each resolver
+   * @throws ParserException if any evaluation fails
+   */
+  public Object[] evaluate(Expression expression, List<? extends VariableResolver> resolvers)
+      throws ParserException {
+    return run(resolvers.size(), i -> expression.evaluate(resolvers.get(i)));
+  }
+
+  private Object[] run(int count, Evaluation evaluation) throws ParserException {
+    var results = new Object[count];
+    var failure = new AtomicReference<ParserException>();
+    pool.invoke(new EvaluationTask(evaluation, results, failure, 0, count));
+
+    if (failure.get() != null) {
+      throw failure.get();
+    }
+    return results;
+  }
+
+  /** Evaluates the expression with the given index. */
+  private interface Evaluation {
+    Object evaluate(int index) throws ParserException;
+  }
+
+  private final class EvaluationTask extends RecursiveAction {
+    private final Evaluation evaluation;
+    private final Object[] results;
+    private final AtomicReference<ParserException> failure;
+    private final int from;
+    private final int to;
+
+    EvaluationTask(
+        Evaluation evaluation,
+        Object[] results,
+        AtomicReference<ParserException> failure,
+        int from,
+        int to) {
+      this.evaluation = evaluation;
+      this.results = results;
+      this.failure = failure;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > chunkSize) {
+        int middle = (from + to) >>> 1;
+        invokeAll(
+            new EvaluationTask(evaluation, results, failure, from, middle),
+            new EvaluationTask(evaluation, results, failure, middle, to));
+        return;
+      }
+
+      for (int i = from; i < to && failure.get() == null; i++) {
+        try {
+          results[i] = evaluation.evaluate(i);
+        } catch (ParserException e) {
+          failure.compareAndSet(null, e);
+        }
+      }
+    }
+  }
+}
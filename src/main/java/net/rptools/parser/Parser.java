@@ -14,12 +14,22 @@
  */
 package net.rptools.parser;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import net.rptools.CaseInsensitiveHashMap;
 import net.rptools.parser.ast.AST;
+import net.rptools.parser.ast.AstCodec;
+import net.rptools.parser.ast.AstInterner;
 import net.rptools.parser.function.Function;
 import net.rptools.parser.function.impl.AbsoluteValue;
 import net.rptools.parser.function.impl.Addition;
@@ -60,7 +70,22 @@ import net.rptools.parser.transform.Transformer;
 import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 
+/**
+ * Parses expressions and holds the functions they can call.
+ *
+ * <p>A parser is configured by adding functions and transformers, after which it can be shared
+ * between threads: parsing and evaluating expressions only read its configuration. The
+ * configuration itself is not synchronized, so it must be complete before the parser is handed to
+ * other threads. {@link #freeze()} makes this explicit by rejecting any further changes.
+ *
+ * <p>{@link Expression}s and the evaluators derived from them are immutable and can be evaluated by
+ * many threads at the same time, as long as each thread uses its own {@link VariableResolver}.
+ * {@link MapVariableResolver} is not thread-safe. See {@link ParallelEvaluator} for evaluating many
+ * expressions or bindings in parallel.
+ */
 public class Parser {
   private final Map<String, Function> functions = new CaseInsensitiveHashMap<>();
 
@@ -68,6 +93,20 @@ public class Parser {
 
   private final EvaluationTreeParser evaluationTreeParser;
 
+  private volatile ExpressionCache<String> expressionCache = null;
+
+  private volatile AstInterner astInterner = null;
+
+  private NumericMode numericMode = NumericMode.EXACT;
+
+  private boolean constantFolding = false;
+
+  private boolean commonSubexpressionElimination = false;
+
+  private ParserBackend backend = ParserBackend.ANTLR;
+
+  private volatile boolean frozen = false;
+
   ///////////////////////////////////////////////////////////////////////////
   // Constructor(s)
   ///////////////////////////////////////////////////////////////////////////
@@ -147,9 +186,11 @@ public class Parser {
   }
 
   public void addFunction(Function function) {
+    checkNotFrozen();
     for (String alias : function.getAliases()) {
       functions.put(alias, function);
     }
+    clearExpressionCache();
   }
 
   public void addFunctions(Function[] functions) {
@@ -168,14 +209,105 @@ public class Parser {
     return functions.get(functionName);
   }
 
+  /**
+   * @return a read-only view of the registered functions, which reflects functions added later
+   */
   public Collection<Function> getFunctions() {
-    return functions.values();
+    return Collections.unmodifiableCollection(functions.values());
+  }
+
+  ///////////////////////////////////////////////////////////////////////////
+  // Numeric mode
+  ///////////////////////////////////////////////////////////////////////////
+
+  public NumericMode getNumericMode() {
+    return numericMode;
+  }
+
+  /**
+   * Set the precision used by the arithmetic functions.
+   *
+   * @param numericMode the numeric mode, {@link NumericMode#EXACT} by default
+   */
+  public void setNumericMode(NumericMode numericMode) {
+    checkNotFrozen();
+    this.numericMode = numericMode;
+    clearExpressionCache();
+  }
+
+  ///////////////////////////////////////////////////////////////////////////
+  // Constant folding
+  ///////////////////////////////////////////////////////////////////////////
+
+  public boolean isConstantFolding() {
+    return constantFolding;
+  }
+
+  /**
+   * Enable folding of constant subtrees when expressions are parsed.
+   *
+   * <p>The folded tree is what gets evaluated, while {@link Expression#getTree()} and {@link
+   * Expression#format()} still reflect the input. See {@link ConstantFoldingTreeParser} for what
+   * can be folded.
+   *
+   * @param constantFolding whether to fold constants, {@code false} by default
+   */
+  public void setConstantFolding(boolean constantFolding) {
+    checkNotFrozen();
+    this.constantFolding = constantFolding;
+    clearExpressionCache();
+  }
+
+  ///////////////////////////////////////////////////////////////////////////
+  // Common subexpression elimination
+  ///////////////////////////////////////////////////////////////////////////
+
+  public boolean isCommonSubexpressionElimination() {
+    return commonSubexpressionElimination;
+  }
+
+  /**
+   * Enable evaluating repeated subexpressions only once per evaluation of a {@linkplain
+   * Expression#link() linked} expression.
+   *
+   * <p>In {@code max(Str*2+Dex, 10) + max(Str*2+Dex, 10)/2}, for instance, the call to {@code max}
+   * is then evaluated once. See {@link CommonSubexpressionTreeParser} for which subexpressions
+   * qualify.
+   *
+   * @param commonSubexpressionElimination whether to eliminate common subexpressions, {@code false}
+   *     by default
+   */
+  public void setCommonSubexpressionElimination(boolean commonSubexpressionElimination) {
+    checkNotFrozen();
+    this.commonSubexpressionElimination = commonSubexpressionElimination;
+  }
+
+  ///////////////////////////////////////////////////////////////////////////
+  // Backend
+  ///////////////////////////////////////////////////////////////////////////
+
+  public ParserBackend getBackend() {
+    return backend;
+  }
+
+  /**
+   * Select the parser used by {@link #parseExpression(String)}.
+   *
+   * <p>Both backends accept the same expressions and produce the same trees. Scripts are always
+   * parsed with ANTLR, see {@link #parseScript(Reader)}.
+   *
+   * @param backend the backend, {@link ParserBackend#ANTLR} by default
+   */
+  public void setBackend(ParserBackend backend) {
+    checkNotFrozen();
+    this.backend = backend;
   }
 
   ///////////////////////////////////////////////////////////////////////////
   // Transforms
   ///////////////////////////////////////////////////////////////////////////
   public void addTransformer(Transformer t) {
+    checkNotFrozen();
     transforms.add(t);
   }
 
@@ -192,22 +324,228 @@ public class Parser {
     return evaluationTreeParser;
   }
 
+  ///////////////////////////////////////////////////////////////////////////
+  // Freezing
+  ///////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Prevent any further changes to the functions, transformers and other settings of this parser.
+   *
+   * <p>A frozen parser can safely be shared between threads once it has been published to them, for
+   * instance by submitting tasks to an executor. Freezing cannot be undone.
+   */
+  public void freeze() {
+    frozen = true;
+  }
+
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  private void checkNotFrozen() {
+    if (frozen) {
+      throw new IllegalStateException("The parser is frozen");
+    }
+  }
+
+  ///////////////////////////////////////////////////////////////////////////
+  // Expression cache
+  ///////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Enable caching of parsed expressions.
+   *
+   * <p>Expressions are cached by their text after all transformers have been applied, so repeated
+   * calls to {@link #parseExpression(String)} with the same input return the same {@link
+   * Expression} without running the lexer and parser again.
+   *
+   * <p>An expression is folded with the functions and settings of the parser when it is parsed, so
+   * the cache is cleared whenever a function is added or the {@linkplain #setNumericMode numeric
+   * mode} or {@linkplain #setConstantFolding constant folding} is changed.
+   *
+   * @param maximumSize the maximum number of cached expressions, or 0 to disable the cache
+   */
+  public void setExpressionCacheSize(int maximumSize) {
+    expressionCache = maximumSize == 0 ? null : new ExpressionCache<>(maximumSize);
+  }
+
+  /**
+   * @return the expression cache, or {@code null} if caching is disabled
+   */
+  public ExpressionCache<String> getExpressionCache() {
+    return expressionCache;
+  }
+
+  private void clearExpressionCache() {
+    ExpressionCache<String> cache = expressionCache;
+    if (cache != null) {
+      cache.clear();
+    }
+  }
+
+  ///////////////////////////////////////////////////////////////////////////
+  // AST interning
+  ///////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Enable interning of the nodes of parsed expressions.
+   *
+   * <p>Structurally equal subtrees of all expressions parsed by this parser, and of their
+   * {@linkplain Expression#getDeterministicExpression deterministic} versions, then share a single
+   * instance. This saves heap when many similar expressions are kept, for instance in a large
+   * {@linkplain #setExpressionCacheSize expression cache}. See {@link AstInterner}.
+   *
+   * @param maximumSize the maximum number of interned nodes, or 0 to disable interning
+   */
+  public void setAstInternerSize(int maximumSize) {
+    astInterner = maximumSize == 0 ? null : new AstInterner(maximumSize);
+  }
+
+  /**
+   * @return the interner of parsed nodes, or {@code null} if interning is disabled
+   */
+  public AstInterner getAstInterner() {
+    return astInterner;
+  }
+
   ///////////////////////////////////////////////////////////////////////////
   // parseExpression
   ///////////////////////////////////////////////////////////////////////////
 
   public Expression parseExpression(String expression) throws ParserException {
+    String s;
     try {
-      String s = applyTransforms(expression);
+      s = applyTransforms(expression);
+    } catch (Exception e) {
+      throw new ParserException(e);
+    }
+
+    ExpressionCache<String> cache = expressionCache;
+    if (cache == null) {
+      return parse(s);
+    }
 
-      ExpressionLexer lexer = new ExpressionLexer(CharStreams.fromString(s));
-      ExpressionParser parser = new ExpressionParser(new CommonTokenStream(lexer));
-      parser.setErrorHandler(new BailErrorStrategy());
-      AST t = new AstBuilderVisitor().visit(parser.full().result);
+    Expression cached = cache.get(s);
+    if (cached != null) {
+      return cached;
+    }
+    return cache.put(s, parse(s));
+  }
 
-      return new Expression(this, parser, t);
+  private Expression parse(String s) throws ParserException {
+    AstInterner interner = astInterner;
+    AST t;
+    try {
+      t =
+          backend == ParserBackend.PRATT
+              ? PrattExpressionParser.parse(s, interner)
+              : parseTree(s, interner);
+    } catch (ParserException e) {
+      throw e;
     } catch (Exception e) {
       throw new ParserException(e);
     }
+
+    // Only the AST is kept, so the token stream and parse tree can be collected right away.
+    return new Expression(this, t);
+  }
+
+  /**
+   * Parse in two stages: first with the faster SLL prediction, which is enough for nearly all
+   * input, and only if that fails again with full LL prediction, which tells syntax errors apart
+   * from input that SLL can not handle.
+   *
+   * <p>The prediction DFA and context cache of the generated parser are static, so what one parse
+   * learns speeds up all later parses, on any thread.
+   */
+  private static AST parseTree(String s, AstInterner interner) {
+    ExpressionLexer lexer = new ExpressionLexer(CharStreams.fromString(s));
+    ExpressionParser parser = new ExpressionParser(new CommonTokenStream(lexer));
+    parser.setErrorHandler(new BailErrorStrategy());
+    parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+    try {
+      return new AstBuilderVisitor(interner).visit(parser.full().result);
+    } catch (ParseCancellationException e) {
+      parser.reset();
+      parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+      return new AstBuilderVisitor(interner).visit(parser.full().result);
+    }
+  }
+
+  /**
+   * Warm up the parser by parsing a sample of typical expressions.
+   *
+   * <p>ANTLR builds its prediction DFA lazily, so the first expressions of each shape parse much
+   * slower than later ones. Parsing a representative sample at startup moves that cost out of the
+   * first real requests. The DFA is shared by all parsers, so this benefits every {@code Parser}
+   * instance. Transformers are applied as usual, but the expressions are not cached, and any that
+   * fail to parse are skipped. Only the ANTLR {@linkplain #setBackend backend} needs warming up.
+   *
+   * @param expressions the sample expressions
+   * @return the number of expressions that were parsed successfully
+   */
+  public int warmUp(Iterable<String> expressions) {
+    int parsed = 0;
+    for (String expression : expressions) {
+      try {
+        parseTree(applyTransforms(expression), null);
+        parsed++;
+      } catch (Exception e) {
+        // Invalid samples only mean less warm-up.
+      }
+    }
+    return parsed;
+  }
+
+  ///////////////////////////////////////////////////////////////////////////
+  // parseScript
+  ///////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Parse a script of consecutive expressions incrementally.
+   *
+   * <p>The returned parser reads from {@code reader} as expressions are requested, and closes it
+   * when it is closed itself. Transformers are not applied, see {@link ScriptParser}.
+   *
+   * <p>Scripts are always parsed with the ANTLR generated parser, whatever the {@linkplain
+   * #setBackend backend}.
+   *
+   * @param reader the script
+   * @return a parser for the expressions of the script
+   */
+  public ScriptParser parseScript(Reader reader) {
+    return new ScriptParser(this, reader);
+  }
+
+  /**
+   * Parse a UTF-8 encoded script file of consecutive expressions incrementally.
+   *
+   * @param path the script file
+   * @return a parser for the expressions of the script, which has to be closed to close the file
+   * @throws IOException if the file can not be opened
+   * @see #parseScript(Reader)
+   */
+  public ScriptParser parseScript(Path path) throws IOException {
+    return parseScript(Files.newBufferedReader(path, StandardCharsets.UTF_8));
+  }
+
+  ///////////////////////////////////////////////////////////////////////////
+  // readExpression
+  ///////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Read an expression written by {@link Expression#writeTo(OutputStream)}.
+   *
+   * <p>The expression is not parsed, so transformers are not applied and the expression cache is
+   * not used, but constant folding is applied if enabled. Reading consumes exactly the bytes of one
+   * expression, so several expressions written to the same stream can be read one after another.
+   * The stream should be buffered, since it is read in small pieces.
+   *
+   * @param in the stream to read from, which is not closed
+   * @return the expression
+   * @throws IOException if reading fails, or the stream does not hold an expression
+   */
+  public Expression readExpression(InputStream in) throws IOException {
+    return new Expression(this, AstCodec.read(in));
   }
 }
@@ -0,0 +1,388 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import net.rptools.parser.ast.AST;
+import net.rptools.parser.ast.AstInterner;
+import net.rptools.parser.ast.BinaryOperator;
+import net.rptools.parser.ast.UnaryOperator;
+
+/**
+ * A hand-written parser for the expression grammar that builds an {@link AST} directly from the
+ * input, without the tokens, parse tree and visitor of the ANTLR generated parser.
+ *
+ * <p>The parser accepts exactly the language of {@code ExpressionLexer.g4} and {@code
+ * ExpressionParser.g4}, and produces the same trees as {@link AstBuilderVisitor}:
+ *
+ * <ul>
+ *   <li>Binary operators are left-associative, and bind in the order of the grammar: {@code ^},
+ *       then {@code * /}, {@code + -}, comparisons, {@code &&} and finally {@code ||}.
+ *   <li>Unary operators bind tighter than any binary operator, so {@code -2^2} is {@code (-2)^2}.
+ *   <li>The right-hand side of an assignment extends as far as possible, and an assignment may
+ *       appear wherever an operand is expected.
+ *   <li>Any expressions following the first one are parsed, but only the first is kept.
+ * </ul>
+ *
+ * <p>See {@link ParserBackend} for how to select this parser.
+ */
+public class PrattExpressionParser {
+  private enum TokenType {
+    ASSIGN,
+    OR,
+    AND,
+    NOT,
+    EQUALS,
+    NOTEQUALS,
+    GE,
+    GT,
+    LT,
+    LE,
+    PLUS,
+    MINUS,
+    MULTIPLY,
+    DIVIDE,
+    POWER,
+    LPAREN,
+    RPAREN,
+    COMMA,
+    QUESTION,
+    NUMBER,
+    HEXNUMBER,
+    IDENTIFIER,
+    STRING,
+    /** Anything that is not a token of the grammar. */
+    ERROR,
+    EOF
+  }
+
+  // Binding powers, in the order of the alternatives of the expr rule.
+  private static final int ASSIGNMENT_POWER = 1;
+  private static final int OR_POWER = 2;
+  private static final int AND_POWER = 3;
+  private static final int COMPARE_POWER = 4;
+  private static final int ADDITIVE_POWER = 5;
+  private static final int MULTIPLICATIVE_POWER = 6;
+  private static final int POWER_POWER = 7;
+  private static final int UNARY_POWER = 8;
+
+  private final CharSequence input;
+  private final AstInterner interner;
+
+  /** The position after the current token. */
+  private int position = 0;
+
+  private TokenType type;
+  private int tokenStart;
+  private String tokenText;
+
+  private PrattExpressionParser(CharSequence input, AstInterner interner) {
+    this.input = input;
+    this.interner = interner;
+  }
+
+  /**
+   * Parse an expression.
+   *
+   * @param input the text of the expression
+   * @return the tree of the first expression of {@code input}
+   * @throws ParserException if {@code input} is not a valid expression
+   */
+  public static AST parse(CharSequence input) throws ParserException {
+    return parse(input, null);
+  }
+
+  /**
+   * Parse an expression, interning the nodes of its tree.
+   *
+   * @param input the text of the expression
+   * @param interner the interner for the nodes, or {@code null} to not intern them
+   * @return the tree of the first expression of {@code input}
+   * @throws ParserException if {@code input} is not a valid expression
+   */
+  public static AST parse(CharSequence input, AstInterner interner) throws ParserException {
+    var parser = new PrattExpressionParser(input, interner);
+    parser.advance();
+
+    AST result = parser.expression(0);
+    while (parser.type != TokenType.EOF) {
+      parser.expression(0);
+    }
+    return result;
+  }
+
+  /** Parse an expression whose binary operators bind at least as tight as {@code minimumPower}. */
+  private AST expression(int minimumPower) throws ParserException {
+    AST lhs = operand();
+    while (bindingPower(type) >= minimumPower) {
+      int power = bindingPower(type);
+      String operator = tokenText;
+      BinaryOperator binaryOperator = binaryOperator(type);
+      advance();
+
+      // Left-associative, so the right-hand side may only contain operators that bind tighter.
+      AST rhs = expression(power + 1);
+      lhs = intern(new AST.Binary(operator, binaryOperator, lhs, rhs));
+    }
+    return lhs;
+  }
+
+  private AST operand() throws ParserException {
+    String text = tokenText;
+    switch (type) {
+      case IDENTIFIER -> {
+        advance();
+        if (type == TokenType.LPAREN) {
+          return functionCall(text);
+        } else if (type == TokenType.ASSIGN) {
+          String operator = tokenText;
+          advance();
+          var lhs = intern(new AST.Variable(text, text));
+          return intern(new AST.Assignment(operator, lhs, expression(ASSIGNMENT_POWER)));
+        } else {
+          return intern(new AST.Variable(text, text));
+        }
+      }
+      case QUESTION -> {
+        advance();
+        String id = expect(TokenType.IDENTIFIER);
+        return intern(new AST.PromptVariable(text + id, id));
+      }
+      case NUMBER -> {
+        advance();
+        return intern(new AST.NumberLiteral(text, new BigDecimal(text)));
+      }
+      case HEXNUMBER -> {
+        advance();
+        var value = new BigInteger(text.substring(2), 16);
+        return intern(new AST.NumberLiteral(text, new BigDecimal(value)));
+      }
+      case STRING -> {
+        advance();
+        // First and last character are the quotes, so discard those.
+        return intern(new AST.StringLiteral(text, text.substring(1, text.length() - 1)));
+      }
+      case LPAREN -> {
+        advance();
+        AST child = expression(0);
+        expect(TokenType.RPAREN);
+        return child;
+      }
+      case PLUS, MINUS, NOT -> {
+        UnaryOperator operator =
+            switch (type) {
+              case PLUS -> UnaryOperator.Plus;
+              case MINUS -> UnaryOperator.Minus;
+              default -> UnaryOperator.Not;
+            };
+        advance();
+        return intern(new AST.Unary(text, operator, expression(UNARY_POWER)));
+      }
+      default -> throw unexpected();
+    }
+  }
+
+  private AST functionCall(String function) throws ParserException {
+    expect(TokenType.LPAREN);
+    var params = new ArrayList<AST>();
+    if (type != TokenType.RPAREN) {
+      params.add(expression(0));
+      while (type == TokenType.COMMA) {
+        advance();
+        params.add(expression(0));
+      }
+    }
+    expect(TokenType.RPAREN);
+    return intern(new AST.FunctionCall(function, function, params));
+  }
+
+  private <T extends AST> T intern(T node) {
+    return interner == null ? node : interner.intern(node);
+  }
+
+  private String expect(TokenType expected) throws ParserException {
+    if (type != expected) {
+      throw unexpected();
+    }
+    String text = tokenText;
+    advance();
+    return text;
+  }
+
+  private ParserException unexpected() {
+    String found = type == TokenType.EOF ? "end of input" : "'" + tokenText + "'";
+    return new ParserException(String.format("Unexpected %s at position %d", found, tokenStart));
+  }
+
+  private static int bindingPower(TokenType type) {
+    return switch (type) {
+      case OR -> OR_POWER;
+      case AND -> AND_POWER;
+      case EQUALS, NOTEQUALS, GE, GT, LT, LE -> COMPARE_POWER;
+      case PLUS, MINUS -> ADDITIVE_POWER;
+      case MULTIPLY, DIVIDE -> MULTIPLICATIVE_POWER;
+      case POWER -> POWER_POWER;
+      default -> -1;
+    };
+  }
+
+  private static BinaryOperator binaryOperator(TokenType type) {
+    return switch (type) {
+      case OR -> BinaryOperator.Or;
+      case AND -> BinaryOperator.And;
+      case EQUALS -> BinaryOperator.EQ;
+      case NOTEQUALS -> BinaryOperator.NE;
+      case GE -> BinaryOperator.GE;
+      case GT -> BinaryOperator.GT;
+      case LT -> BinaryOperator.LT;
+      case LE -> BinaryOperator.LE;
+      case PLUS -> BinaryOperator.Plus;
+      case MINUS -> BinaryOperator.Minus;
+      case MULTIPLY -> BinaryOperator.Multiply;
+      case DIVIDE -> BinaryOperator.Divide;
+      case POWER -> BinaryOperator.Power;
+      default -> throw new IllegalArgumentException("Not a binary operator: " + type);
+    };
+  }
+
+  ///////////////////////////////////////////////////////////////////////////
+  // Lexer
+  ///////////////////////////////////////////////////////////////////////////
+
+  /** Move on to the next token, skipping whitespace. */
+  private void advance() {
+    skipWhitespace();
+    tokenStart = position;
+    if (position == input.length()) {
+      type = TokenType.EOF;
+      tokenText = "";
+      return;
+    }
+
+    char c = input.charAt(position++);
+    type =
+        switch (c) {
+          case '=' -> match('=') ? TokenType.EQUALS : TokenType.ASSIGN;
+          case '!' -> match('=') ? TokenType.NOTEQUALS : TokenType.NOT;
+          case '>' -> match('=') ? TokenType.GE : TokenType.GT;
+          case '<' -> match('=') ? TokenType.LE : TokenType.LT;
+          case '|' -> match('|') ? TokenType.OR : TokenType.ERROR;
+          case '&' -> match('&') ? TokenType.AND : TokenType.ERROR;
+          case '+' -> TokenType.PLUS;
+          case '-' -> TokenType.MINUS;
+          case '*' -> TokenType.MULTIPLY;
+          case '/' -> TokenType.DIVIDE;
+          case '^' -> TokenType.POWER;
+          case '(' -> TokenType.LPAREN;
+          case ')' -> TokenType.RPAREN;
+          case ',' -> TokenType.COMMA;
+          case '?' -> TokenType.QUESTION;
+          case '\'', '"' -> string(c);
+          default -> {
+            if (c == '0' && peek(0) == 'x' && isHexDigit(peek(1))) {
+              position++;
+              while (isHexDigit(peek(0))) {
+                position++;
+              }
+              yield TokenType.HEXNUMBER;
+            } else if (isDigit(c)) {
+              number();
+              yield TokenType.NUMBER;
+            } else if (isLetter(c)) {
+              while (isLetter(peek(0)) || isDigit(peek(0)) || peek(0) == '.' || peek(0) == '_') {
+                position++;
+              }
+              yield TokenType.IDENTIFIER;
+            } else {
+              yield TokenType.ERROR;
+            }
+          }
+        };
+    tokenText = input.subSequence(tokenStart, position).toString();
+  }
+
+  private void skipWhitespace() {
+    while (position < input.length()) {
+      char c = input.charAt(position);
+      if (c == ' ' || c == '\t' || c == '\n') {
+        position++;
+      } else if (c == '\r' && peek(1) == '\n') {
+        // A lone carriage return is not whitespace in the grammar.
+        position += 2;
+      } else {
+        return;
+      }
+    }
+  }
+
+  private TokenType string(char quote) {
+    for (int i = position; i < input.length(); i++) {
+      if (input.charAt(i) == quote) {
+        position = i + 1;
+        return TokenType.STRING;
+      }
+    }
+    // An unterminated string is an error at the opening quote.
+    return TokenType.ERROR;
+  }
+
+  private void number() {
+    while (isDigit(peek(0))) {
+      position++;
+    }
+    // The fraction is only part of the number if there is at least one digit after the dot.
+    if (peek(0) == '.' && isDigit(peek(1))) {
+      position++;
+      while (isDigit(peek(0))) {
+        position++;
+      }
+    }
+  }
+
+  private boolean match(char expected) {
+    if (peek(0) == expected) {
+      position++;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return the character {@code offset} characters after the current position, or {@code 0} at the
+   *     end of the input
+   */
+  private char peek(int offset) {
+    int index = position + offset;
+    return index < input.length() ? input.charAt(index) : 0;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isHexDigit(char c) {
+    return isDigit(c) || (c >= 'A' && c <= 'F') || (c >= 'a' && c <= 'f');
+  }
+
+  private static boolean isLetter(char c) {
+    return (c >= 'A' && c <= 'Z')
+        || (c >= 'a' && c <= 'z')
+        || (c >= '\u00c0' && c <= '\u00d6')
+        || (c >= '\u00d8' && c <= '\u00f6')
+        || (c >= '\u00f8' && c <= '\u00ff');
+  }
+}
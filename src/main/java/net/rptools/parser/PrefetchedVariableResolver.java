@@ -0,0 +1,114 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import java.util.Map;
+import java.util.Set;
+import net.rptools.CaseInsensitiveHashMap;
+import net.rptools.parser.function.ValueType;
+
+/**
+ * Serves the variables fetched by {@link PrefetchingVariableResolver#fetchVariables} during a
+ * single evaluation, and passes everything else on to the resolver they were fetched from.
+ *
+ * <p>A fetched variable that was missing from the result is undefined without asking the resolver
+ * again. Assignments are written through to the resolver, and also recorded here so that the rest
+ * of the evaluation reads the new value. Names are compared ignoring case, like {@link
+ * MapVariableResolver} does.
+ */
+class PrefetchedVariableResolver implements VariableResolver {
+  private final VariableResolver resolver;
+
+  /** The value of each fetched or assigned variable, or {@link #UNDEFINED}. */
+  private final Map<String, Object> values = new CaseInsensitiveHashMap<>();
+
+  /**
+   * @param resolver the resolver the variables were fetched from
+   * @param fetched the names of the variables that were fetched
+   * @param values the values of those that are defined
+   */
+  PrefetchedVariableResolver(
+      VariableResolver resolver, Set<String> fetched, Map<String, Object> values) {
+    this.resolver = resolver;
+    this.values.putAll(values);
+    for (String name : fetched) {
+      this.values.putIfAbsent(name, UNDEFINED);
+    }
+  }
+
+  @Override
+  public boolean containsVariable(String name) throws ParserException {
+    return containsVariable(name, VariableModifiers.None);
+  }
+
+  @Override
+  public void setVariable(String name, Object value) throws ParserException {
+    resolver.setVariable(name, value);
+    values.put(name, value);
+  }
+
+  @Override
+  public Object getVariable(String variableName) throws ParserException {
+    return getVariable(variableName, VariableModifiers.None);
+  }
+
+  @Override
+  public boolean containsVariable(String name, VariableModifiers vType) throws ParserException {
+    if (isFetched(name, vType)) {
+      return values.get(name) != UNDEFINED;
+    }
+    return resolver.containsVariable(name, vType);
+  }
+
+  @Override
+  public void setVariable(String name, VariableModifiers vType, Object value)
+      throws ParserException {
+    resolver.setVariable(name, vType, value);
+    if (vType == VariableModifiers.None) {
+      values.put(name, value);
+    }
+  }
+
+  @Override
+  public Object getVariable(String variableName, VariableModifiers vType) throws ParserException {
+    if (isFetched(variableName, vType)) {
+      Object value = values.get(variableName);
+      return value == UNDEFINED ? null : value;
+    }
+    return resolver.getVariable(variableName, vType);
+  }
+
+  @Override
+  public Object lookupVariable(String name, VariableModifiers vType) throws ParserException {
+    if (isFetched(name, vType)) {
+      return values.get(name);
+    }
+    return resolver.lookupVariable(name, vType);
+  }
+
+  @Override
+  public Set<String> getVariables() {
+    return resolver.getVariables();
+  }
+
+  @Override
+  public ValueType getVariableType(String name) {
+    return resolver.getVariableType(name);
+  }
+
+  private boolean isFetched(String name, VariableModifiers vType) {
+    return vType == VariableModifiers.None && values.containsKey(name);
+  }
+}
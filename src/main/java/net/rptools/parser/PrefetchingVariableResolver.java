@@ -0,0 +1,55 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link VariableResolver} that can fetch many variables in a single call.
+ *
+ * <p>Resolvers backed by a remote store implement this so that {@link
+ * Expression#evaluatePrefetched} and {@link Expression#evaluateAsync} can fetch all the {@linkplain
+ * Expression#getVariables() variables of an expression} in one round trip before evaluating it,
+ * rather than making a round trip for each variable the evaluation reads.
+ */
+public interface PrefetchingVariableResolver extends VariableResolver {
+  /**
+   * Fetch the values of several variables at once.
+   *
+   * @param names the names of the variables
+   * @return the value of each of the variables that is defined, keyed by its name as given in
+   *     {@code names}; variables that are missing are treated as undefined
+   */
+  public Map<String, Object> fetchVariables(Set<String> names) throws ParserException;
+
+  /**
+   * Fetch the values of several variables at once, without blocking.
+   *
+   * <p>The default implementation calls {@link #fetchVariables} and returns a future that is
+   * already complete. Resolvers with an asynchronous store should override it.
+   *
+   * @param names the names of the variables
+   * @return a future of the values, as returned by {@link #fetchVariables}
+   */
+  public default CompletableFuture<Map<String, Object>> fetchVariablesAsync(Set<String> names) {
+    try {
+      return CompletableFuture.completedFuture(fetchVariables(names));
+    } catch (ParserException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.NoSuchElementException;
+import net.rptools.parser.ast.AST;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.UnbufferedCharStream;
+import org.antlr.v4.runtime.UnbufferedTokenStream;
+
+/**
+ * Parses a script of consecutive expressions one expression at a time.
+ *
+ * <p>The script is read through unbuffered character and token streams, so only the text and the
+ * parse tree of the expression being parsed are held in memory, no matter how large the script is.
+ * Expressions are separated the same way as by {@link Parser#parseExpression(String)}, which
+ * accepts several expressions but only keeps the first.
+ *
+ * <p>{@linkplain Parser#addTransformer Transformers} work on the text of a whole expression, which
+ * is not known before the expression is parsed, so they are not applied to scripts. Parsed
+ * expressions are not added to the {@linkplain Parser#getExpressionCache() expression cache}
+ * either.
+ *
+ * <p>A script parser is not thread-safe. Closing it closes the underlying reader.
+ *
+ * @see Parser#parseScript(Reader)
+ */
+public class ScriptParser implements Closeable {
+  private final Parser parser;
+  private final Reader reader;
+  private final ExpressionParser expressionParser;
+
+  ScriptParser(Parser parser, Reader reader) {
+    this.parser = parser;
+    this.reader = reader;
+
+    ExpressionLexer lexer = new ExpressionLexer(new UnbufferedCharStream(reader));
+    // The characters of a token are gone from an unbuffered stream once it is consumed, so every
+    // token has to copy its text.
+    lexer.setTokenFactory(new CommonTokenFactory(true));
+    // Unlike CommonTokenStream, an unbuffered token stream passes on the whitespace tokens of the
+    // hidden channel, so they are dropped before they reach it.
+    expressionParser =
+        new ExpressionParser(new UnbufferedTokenStream<>(new DefaultChannelTokenSource(lexer)));
+    expressionParser.setErrorHandler(new BailErrorStrategy());
+  }
+
+  /**
+   * @return whether there is another expression in the script
+   * @throws ParserException if the script can not be read
+   */
+  public boolean hasNext() throws ParserException {
+    try {
+      return expressionParser.getCurrentToken().getType() != Token.EOF;
+    } catch (Exception e) {
+      throw new ParserException(e);
+    }
+  }
+
+  /**
+   * Parse the next expression of the script.
+   *
+   * @return the expression
+   * @throws NoSuchElementException if there are no more expressions
+   * @throws ParserException if the script can not be read or the expression can not be parsed
+   */
+  public Expression next() throws ParserException {
+    if (!hasNext()) {
+      throw new NoSuchElementException("No more expressions");
+    }
+
+    AST t;
+    try {
+      t = new AstBuilderVisitor(parser.getAstInterner()).visit(expressionParser.expr());
+    } catch (Exception e) {
+      throw new ParserException(e);
+    }
+    return new Expression(parser, t);
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  /** Passes on the tokens of the default channel of a token source. */
+  private static final class DefaultChannelTokenSource implements TokenSource {
+    private final TokenSource source;
+
+    DefaultChannelTokenSource(TokenSource source) {
+      this.source = source;
+    }
+
+    @Override
+    public Token nextToken() {
+      Token token = source.nextToken();
+      while (token.getChannel() != Token.DEFAULT_CHANNEL && token.getType() != Token.EOF) {
+        token = source.nextToken();
+      }
+      return token;
+    }
+
+    @Override
+    public int getLine() {
+      return source.getLine();
+    }
+
+    @Override
+    public int getCharPositionInLine() {
+      return source.getCharPositionInLine();
+    }
+
+    @Override
+    public CharStream getInputStream() {
+      return source.getInputStream();
+    }
+
+    @Override
+    public String getSourceName() {
+      return source.getSourceName();
+    }
+
+    @Override
+    public void setTokenFactory(TokenFactory<?> factory) {
+      source.setTokenFactory(factory);
+    }
+
+    @Override
+    public TokenFactory<?> getTokenFactory() {
+      return source.getTokenFactory();
+    }
+  }
+}
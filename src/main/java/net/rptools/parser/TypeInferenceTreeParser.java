@@ -0,0 +1,129 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import net.rptools.CaseInsensitiveHashMap;
+import net.rptools.parser.ast.AST;
+import net.rptools.parser.function.Function;
+import net.rptools.parser.function.ValueType;
+
+/**
+ * Infers the {@linkplain ValueType type} of every node of an {@link AST} before evaluation.
+ *
+ * <p>Literals have the type of their value, a call has the {@linkplain Function#getReturnType
+ * return type} of its function for the types of its parameters, and a variable has the type
+ * {@linkplain VariableResolver#getVariableType hinted} by a resolver. Since a variable that the
+ * tree assigns may change its type during the evaluation, such a variable is {@link
+ * ValueType#UNKNOWN} no matter what its hint is. If the tree calls a function that {@linkplain
+ * Function#assignsVariables assigns variables}, such as {@code eval()} or {@code set()} with a
+ * computed name, it may assign any variable, so no hints are used at all.
+ *
+ * <p>{@link ExpressionLinker} and {@link ExpressionCompiler} use the inferred types to call
+ * {@linkplain Function#specialize specialized} implementations of functions, and to skip type
+ * checks that are known to pass.
+ */
+public class TypeInferenceTreeParser {
+  private final Parser parser;
+
+  public TypeInferenceTreeParser(Parser parser) {
+    this.parser = parser;
+  }
+
+  /**
+   * Infer the types of a tree without any variable hints.
+   *
+   * @param node the tree
+   * @return the type of each node of the tree, keyed by identity
+   */
+  public Map<AST, ValueType> infer(AST node) {
+    return infer(node, NoVariableResolver.INSTANCE);
+  }
+
+  /**
+   * Infer the types of a tree.
+   *
+   * @param node the tree
+   * @param typeHints the resolver that provides the types of variables
+   * @return the type of each node of the tree, keyed by identity
+   */
+  public Map<AST, ValueType> infer(AST node, VariableResolver typeHints) {
+    var hints = new CaseInsensitiveHashMap<ValueType>();
+    Expression.forEachVariable(
+        node,
+        name -> {
+          ValueType type = typeHints.getVariableType(name);
+          if (type != ValueType.UNKNOWN) {
+            hints.put(name, type);
+          }
+        });
+    if (!hints.isEmpty() && !new ConstantFoldingTreeParser(parser).removeAssigned(node, hints)) {
+      hints.clear();
+    }
+
+    var types = new IdentityHashMap<AST, ValueType>();
+    infer(node, hints, types);
+    return Collections.unmodifiableMap(types);
+  }
+
+  /**
+   * @param node a node
+   * @return the type of {@code node} if it is a literal, otherwise {@link ValueType#UNKNOWN}
+   */
+  static ValueType literalType(AST node) {
+    return switch (node) {
+      case AST.NumberLiteral numberLiteral -> ValueType.NUMBER;
+      case AST.StringLiteral stringLiteral -> ValueType.STRING;
+      default -> ValueType.UNKNOWN;
+    };
+  }
+
+  private ValueType infer(AST node, Map<String, ValueType> hints, Map<AST, ValueType> types) {
+    ValueType type =
+        switch (node) {
+          case AST.Variable variable -> hints.getOrDefault(variable.variable(), ValueType.UNKNOWN);
+          case AST.PromptVariable promptVariable -> ValueType.UNKNOWN;
+          case AST.NumberLiteral numberLiteral -> ValueType.NUMBER;
+          case AST.StringLiteral stringLiteral -> ValueType.STRING;
+          case AST.Unary unary ->
+              call(unary.operator().asText(), List.of(infer(unary.operand(), hints, types)));
+          case AST.Binary binary ->
+              call(
+                  binary.operator().asText(),
+                  List.of(infer(binary.lhs(), hints, types), infer(binary.rhs(), hints, types)));
+          case AST.Assignment assignment ->
+              // The left-hand side is passed to the function by name.
+              call("=", List.of(ValueType.STRING, infer(assignment.rhs(), hints, types)));
+          case AST.FunctionCall functionCall -> {
+            var parameterTypes = new ArrayList<ValueType>(functionCall.parameters().size());
+            for (var parameter : functionCall.parameters()) {
+              parameterTypes.add(infer(parameter, hints, types));
+            }
+            yield call(functionCall.function(), parameterTypes);
+          }
+        };
+    types.put(node, type);
+    return type;
+  }
+
+  private ValueType call(String functionName, List<ValueType> parameterTypes) {
+    Function function = parser.getFunction(functionName);
+    return function == null ? ValueType.UNKNOWN : function.getReturnType(parameterTypes);
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.rptools.CaseInsensitiveHashMap;
+
+/**
+ * Variable bindings for a batch of evaluations, stored column by column.
+ *
+ * <p>Each variable maps to an array holding its value for every row of the batch. Row {@code i} of
+ * a batch evaluation sees the {@code i}th element of every column. Variable names are case
+ * insensitive, just like in {@link MapVariableResolver}.
+ */
+public class VariableBatch {
+  private final int size;
+  private final Map<String, Object[]> columns = new CaseInsensitiveHashMap<>();
+
+  /**
+   * @param size the number of rows in the batch
+   */
+  public VariableBatch(int size) {
+    if (size < 0) {
+      throw new IllegalArgumentException("Batch size must not be negative: " + size);
+    }
+    this.size = size;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Set the values of a variable for every row.
+   *
+   * <p>The array is not copied, so it must not be modified while the batch is being evaluated.
+   *
+   * @param name the name of the variable
+   * @param values the value for each row
+   * @throws IllegalArgumentException if there is not exactly one value per row
+   */
+  public void setVariable(String name, Object[] values) {
+    if (values.length != size) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Variable %s has %d values, but the batch has %d rows", name, values.length, size));
+    }
+    columns.put(name, values);
+  }
+
+  /**
+   * Set the values of a variable for every row.
+   *
+   * @param name the name of the variable
+   * @param values the value for each row
+   * @throws IllegalArgumentException if there is not exactly one value per row
+   */
+  public void setVariable(String name, List<?> values) {
+    setVariable(name, values.toArray());
+  }
+
+  public boolean containsVariable(String name) {
+    return columns.containsKey(name);
+  }
+
+  /**
+   * @param name the name of the variable
+   * @return the value of the variable for every row, or {@code null} if it is not in the batch
+   */
+  public Object[] getColumn(String name) {
+    return columns.get(name);
+  }
+
+  public Object getVariable(String name, int row) {
+    Object[] column = columns.get(name);
+    return column == null ? null : column[row];
+  }
+
+  public Set<String> getVariables() {
+    return Collections.unmodifiableSet(columns.keySet());
+  }
+}
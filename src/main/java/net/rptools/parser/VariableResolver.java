@@ -15,6 +15,7 @@
 package net.rptools.parser;
 
 import java.util.Set;
+import net.rptools.parser.function.ValueType;
 
 /**
  * Interface that does variable resolution for the parser. If the parser is constructed with an
@@ -22,6 +23,15 @@ import java.util.Set;
  * through the default {@link MapVariableResolver} instance.
  */
 public interface VariableResolver {
+  /** The result of {@link #lookupVariable} for a variable that is not defined. */
+  public static final Object UNDEFINED =
+      new Object() {
+        @Override
+        public String toString() {
+          return "UNDEFINED";
+        }
+      };
+
   public boolean containsVariable(String name) throws ParserException;
 
   public void setVariable(String name, Object value) throws ParserException;
@@ -36,4 +46,37 @@ public interface VariableResolver {
   public Object getVariable(String variableName, VariableModifiers vType) throws ParserException;
 
   public Set<String> getVariables();
+
+  /**
+   * Look up a variable in a single call.
+   *
+   * <p>Evaluators use this rather than {@link #containsVariable(String, VariableModifiers)}
+   * followed by {@link #getVariable(String, VariableModifiers)}. The default implementation does
+   * just that, so resolvers backed by an expensive store should override it to look the variable up
+   * only once.
+   *
+   * @param name the name of the variable
+   * @param vType the modifiers of the variable
+   * @return the value of the variable, or {@link #UNDEFINED} if it is not defined
+   */
+  public default Object lookupVariable(String name, VariableModifiers vType)
+      throws ParserException {
+    return containsVariable(name, vType) ? getVariable(name, vType) : UNDEFINED;
+  }
+
+  /**
+   * A hint about the type of a variable, used when an expression is {@linkplain
+   * Expression#link(VariableResolver) linked} or {@linkplain Expression#compile(VariableResolver)
+   * compiled} to pick implementations that are specialized for the types of their parameters.
+   *
+   * <p>A hint is a promise: a variable that has a type other than {@link ValueType#UNKNOWN} must
+   * hold a value of that type in every resolver the linked or compiled expression is evaluated
+   * with. Evaluating it with a value of another type may fail with a {@link ClassCastException}.
+   *
+   * @param name the name of the variable
+   * @return the type of the variable, or {@link ValueType#UNKNOWN} if it is not known up front
+   */
+  public default ValueType getVariableType(String name) {
+    return ValueType.UNKNOWN;
+  }
 }
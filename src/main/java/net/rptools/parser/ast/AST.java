@@ -33,8 +33,9 @@ public sealed interface AST {
   String text();
 
   default boolean equalsTree(AST other) {
-    // Everything is implemented as records, which makes this trivial.
-    return this.equals(other);
+    // Everything is implemented as records, which makes this trivial. Interned trees that are equal
+    // are also identical, so check that first.
+    return this == other || this.equals(other);
   }
 
   /**
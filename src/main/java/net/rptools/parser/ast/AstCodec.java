@@ -0,0 +1,333 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser.ast;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary encoding of {@link AST}s.
+ *
+ * <p>An encoded tree consists of:
+ *
+ * <ol>
+ *   <li>the magic number {@code RPTA} and a format version byte,
+ *   <li>a table of all distinct strings of the tree, each stored once as UTF-8,
+ *   <li>the nodes in pre-order, each a tag byte followed by its fields and then its children.
+ * </ol>
+ *
+ * <p>Strings, including the text of nodes and the operators, are referenced by their index in the
+ * string table. Numbers are stored as the bytes of their unscaled value plus their scale, so they
+ * are decoded to exactly the {@link BigDecimal} that was encoded. All counts and indices are
+ * unsigned variable-length integers of 7 bits per byte.
+ *
+ * <p>Each encoded tree is self-contained, and decoding reads exactly the bytes of one tree, so any
+ * number of trees can be written to the same stream one after another.
+ *
+ * <p>Decoding does not trust the counts and lengths it reads: memory is only allocated for bytes
+ * that are actually there, and trees nested deeper than {@link #MAX_DEPTH} are rejected, so corrupt
+ * input fails with an {@link IOException}.
+ */
+public final class AstCodec {
+  /** The magic number that starts every encoded tree: {@code RPTA}. */
+  public static final int MAGIC = 0x52505441;
+
+  /** The version of the format written by this class. */
+  public static final int VERSION = 1;
+
+  /** The deepest nesting of nodes that can be encoded and decoded. */
+  public static final int MAX_DEPTH = 1024;
+
+  static final int VARIABLE = 1;
+  static final int PROMPT_VARIABLE = 2;
+  static final int NUMBER_LITERAL = 3;
+  static final int STRING_LITERAL = 4;
+  static final int UNARY = 5;
+  static final int BINARY = 6;
+  static final int ASSIGNMENT = 7;
+  static final int FUNCTION_CALL = 8;
+
+  /** The largest count that is trusted to size a collection before its elements are read. */
+  private static final int PRESIZE_LIMIT = 256;
+
+  private static final Map<String, UnaryOperator> UNARY_OPERATORS = new HashMap<>();
+  private static final Map<String, BinaryOperator> BINARY_OPERATORS = new HashMap<>();
+
+  static {
+    for (UnaryOperator operator : UnaryOperator.values()) {
+      UNARY_OPERATORS.put(operator.asText(), operator);
+    }
+    for (BinaryOperator operator : BinaryOperator.values()) {
+      BINARY_OPERATORS.put(operator.asText(), operator);
+    }
+  }
+
+  private AstCodec() {}
+
+  /**
+   * Encode a tree.
+   *
+   * @param tree the tree
+   * @param out the stream to write to, which is not closed
+   * @throws IOException if writing fails, or the tree is nested deeper than {@link #MAX_DEPTH}
+   */
+  public static void write(AST tree, OutputStream out) throws IOException {
+    var strings = new LinkedHashMap<String, Integer>();
+    var nodes = new ByteArrayOutputStream();
+    writeNode(tree, new DataOutputStream(nodes), strings, 0);
+
+    var data = new DataOutputStream(out);
+    data.writeInt(MAGIC);
+    data.writeByte(VERSION);
+    writeVarint(data, strings.size());
+    for (String string : strings.keySet()) {
+      byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+      writeVarint(data, bytes.length);
+      data.write(bytes);
+    }
+    nodes.writeTo(data);
+    data.flush();
+  }
+
+  /**
+   * Decode a tree.
+   *
+   * @param in the stream to read from, which is left positioned after the tree
+   * @return the tree
+   * @throws IOException if reading fails, or the stream does not hold a tree of a supported version
+   */
+  public static AST read(InputStream in) throws IOException {
+    var data = new DataInputStream(in);
+    if (data.readInt() != MAGIC) {
+      throw new IOException("Not an encoded expression");
+    }
+    int version = data.readUnsignedByte();
+    if (version != VERSION) {
+      throw new IOException("Unsupported expression format version: " + version);
+    }
+
+    // Every string takes at least one byte, so the table only grows with the input.
+    int count = readLength(data);
+    var strings = new ArrayList<String>(Math.min(count, PRESIZE_LIMIT));
+    for (int i = 0; i < count; i++) {
+      strings.add(new String(readBytes(data), StandardCharsets.UTF_8));
+    }
+    return readNode(data, strings.toArray(new String[0]), 0);
+  }
+
+  private static void writeNode(AST node, DataOutput out, Map<String, Integer> strings, int depth)
+      throws IOException {
+    if (depth > MAX_DEPTH) {
+      throw new IOException("Expression nested too deeply to encode");
+    }
+    switch (node) {
+      case AST.Variable variable -> {
+        out.writeByte(VARIABLE);
+        writeString(out, strings, variable.text());
+        writeString(out, strings, variable.variable());
+      }
+      case AST.PromptVariable promptVariable -> {
+        out.writeByte(PROMPT_VARIABLE);
+        writeString(out, strings, promptVariable.text());
+        writeString(out, strings, promptVariable.variable());
+      }
+      case AST.NumberLiteral numberLiteral -> {
+        out.writeByte(NUMBER_LITERAL);
+        writeString(out, strings, numberLiteral.text());
+        BigDecimal value = numberLiteral.value();
+        // Zig-zag encoding keeps small negative scales short.
+        int scale = value.scale();
+        writeVarint(out, (scale << 1) ^ (scale >> 31));
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        writeVarint(out, unscaled.length);
+        out.write(unscaled);
+      }
+      case AST.StringLiteral stringLiteral -> {
+        out.writeByte(STRING_LITERAL);
+        writeString(out, strings, stringLiteral.text());
+        writeString(out, strings, stringLiteral.value());
+      }
+      case AST.Unary unary -> {
+        out.writeByte(UNARY);
+        writeString(out, strings, unary.text());
+        writeString(out, strings, unary.operator().asText());
+        writeNode(unary.operand(), out, strings, depth + 1);
+      }
+      case AST.Binary binary -> {
+        out.writeByte(BINARY);
+        writeString(out, strings, binary.text());
+        writeString(out, strings, binary.operator().asText());
+        writeNode(binary.lhs(), out, strings, depth + 1);
+        writeNode(binary.rhs(), out, strings, depth + 1);
+      }
+      case AST.Assignment assignment -> {
+        out.writeByte(ASSIGNMENT);
+        writeString(out, strings, assignment.text());
+        writeString(out, strings, assignment.lhs().text());
+        writeString(out, strings, assignment.lhs().variable());
+        writeNode(assignment.rhs(), out, strings, depth + 1);
+      }
+      case AST.FunctionCall functionCall -> {
+        out.writeByte(FUNCTION_CALL);
+        writeString(out, strings, functionCall.text());
+        writeString(out, strings, functionCall.function());
+        writeVarint(out, functionCall.parameters().size());
+        for (AST parameter : functionCall.parameters()) {
+          writeNode(parameter, out, strings, depth + 1);
+        }
+      }
+    }
+  }
+
+  private static AST readNode(DataInputStream in, String[] strings, int depth) throws IOException {
+    if (depth > MAX_DEPTH) {
+      throw new IOException("Expression nested too deeply");
+    }
+    int tag = in.readUnsignedByte();
+    return switch (tag) {
+      case VARIABLE -> new AST.Variable(readString(in, strings), readString(in, strings));
+      case PROMPT_VARIABLE ->
+          new AST.PromptVariable(readString(in, strings), readString(in, strings));
+      case NUMBER_LITERAL -> {
+        String text = readString(in, strings);
+        int zigzag = readVarint(in);
+        int scale = (zigzag >>> 1) ^ -(zigzag & 1);
+        byte[] unscaled = readBytes(in);
+        if (unscaled.length == 0) {
+          throw new IOException("Invalid number: no digits");
+        }
+        yield new AST.NumberLiteral(text, new BigDecimal(new BigInteger(unscaled), scale));
+      }
+      case STRING_LITERAL ->
+          new AST.StringLiteral(readString(in, strings), readString(in, strings));
+      case UNARY -> {
+        String text = readString(in, strings);
+        UnaryOperator operator = readOperator(in, strings, UNARY_OPERATORS);
+        yield new AST.Unary(text, operator, readNode(in, strings, depth + 1));
+      }
+      case BINARY -> {
+        String text = readString(in, strings);
+        BinaryOperator operator = readOperator(in, strings, BINARY_OPERATORS);
+        AST lhs = readNode(in, strings, depth + 1);
+        yield new AST.Binary(text, operator, lhs, readNode(in, strings, depth + 1));
+      }
+      case ASSIGNMENT -> {
+        String text = readString(in, strings);
+        var lhs = new AST.Variable(readString(in, strings), readString(in, strings));
+        yield new AST.Assignment(text, lhs, readNode(in, strings, depth + 1));
+      }
+      case FUNCTION_CALL -> {
+        String text = readString(in, strings);
+        String function = readString(in, strings);
+        // Every parameter takes at least two bytes, so the list only grows with the input.
+        int count = readLength(in);
+        List<AST> parameters = new ArrayList<>(Math.min(count, PRESIZE_LIMIT));
+        for (int i = 0; i < count; i++) {
+          parameters.add(readNode(in, strings, depth + 1));
+        }
+        yield new AST.FunctionCall(text, function, parameters);
+      }
+      default -> throw new IOException("Invalid node tag: " + tag);
+    };
+  }
+
+  private static void writeString(DataOutput out, Map<String, Integer> strings, String string)
+      throws IOException {
+    Integer index = strings.get(string);
+    if (index == null) {
+      index = strings.size();
+      strings.put(string, index);
+    }
+    writeVarint(out, index);
+  }
+
+  private static String readString(DataInput in, String[] strings) throws IOException {
+    int index = readLength(in);
+    if (index >= strings.length) {
+      throw new IOException("Invalid string index: " + index);
+    }
+    return strings[index];
+  }
+
+  private static <T> T readOperator(DataInput in, String[] strings, Map<String, T> operators)
+      throws IOException {
+    String text = readString(in, strings);
+    T operator = operators.get(text);
+    if (operator == null) {
+      throw new IOException("Invalid operator: " + text);
+    }
+    return operator;
+  }
+
+  private static void writeVarint(DataOutput out, int value) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      out.writeByte((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  private static int readVarint(DataInput in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = in.readUnsignedByte();
+      // The fifth byte only holds the top four bits, and ends the integer.
+      if (shift == 28 && b > 0x0f) {
+        break;
+      }
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed variable-length integer");
+  }
+
+  /**
+   * @return the bytes of a length followed by that many bytes
+   */
+  private static byte[] readBytes(DataInputStream in) throws IOException {
+    int length = readLength(in);
+    // Unlike readFully, this only allocates as much as the stream actually holds.
+    byte[] bytes = in.readNBytes(length);
+    if (bytes.length < length) {
+      throw new EOFException();
+    }
+    return bytes;
+  }
+
+  private static int readLength(DataInput in) throws IOException {
+    int length = readVarint(in);
+    if (length < 0) {
+      throw new IOException("Invalid length: " + Integer.toUnsignedString(length));
+    }
+    return length;
+  }
+}
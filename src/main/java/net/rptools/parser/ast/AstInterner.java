@@ -0,0 +1,170 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser.ast;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns structurally equal {@link AST} nodes, so that identical subtrees of any number of trees
+ * share a single instance.
+ *
+ * <p>Since nodes are immutable, a tree built from interned nodes behaves exactly like one built
+ * from fresh nodes, but common leaves such as {@code 1} or {@code Strength}, and common calls such
+ * as {@code max(a, b)}, are only held once on the heap. Equal interned trees are also the same
+ * instance, so {@link AST#equalsTree} becomes an identity check.
+ *
+ * <p>Trees have to be interned bottom-up: a node is only matched to an interned node if its
+ * children are the interned instances themselves. This keeps interning a node at constant cost,
+ * rather than comparing and hashing whole subtrees. A node whose children were not interned is
+ * still correct to use, it just shares less.
+ *
+ * <p>The interner is thread-safe. Once it holds more than its maximum size it is cleared, so that
+ * nodes of trees that are no longer used do not accumulate.
+ */
+public class AstInterner {
+  private final int maximumSize;
+
+  private final Map<Key, AST> nodes = new ConcurrentHashMap<>();
+
+  public AstInterner(int maximumSize) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("Interner size must be positive: " + maximumSize);
+    }
+    this.maximumSize = maximumSize;
+  }
+
+  /**
+   * Intern a node whose children have already been interned.
+   *
+   * @param node the node
+   * @param <T> the type of the node
+   * @return the interned node that is structurally equal to {@code node}, which is {@code node}
+   *     itself if there was none yet
+   */
+  @SuppressWarnings("unchecked")
+  public <T extends AST> T intern(T node) {
+    if (nodes.size() >= maximumSize) {
+      nodes.clear();
+    }
+    // Equal keys always wrap nodes of the same class.
+    AST existing = nodes.putIfAbsent(new Key(node), node);
+    return existing == null ? node : (T) existing;
+  }
+
+  public void clear() {
+    nodes.clear();
+  }
+
+  public int size() {
+    return nodes.size();
+  }
+
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  /** Compares nodes by their own fields, but their children by identity. */
+  private static final class Key {
+    private final AST node;
+    private final int hash;
+
+    Key(AST node) {
+      this.node = node;
+      this.hash = hash(node);
+    }
+
+    private static int hash(AST node) {
+      return switch (node) {
+        case AST.Variable variable -> variable.hashCode();
+        case AST.PromptVariable promptVariable -> promptVariable.hashCode();
+        case AST.NumberLiteral numberLiteral -> numberLiteral.hashCode();
+        case AST.StringLiteral stringLiteral -> stringLiteral.hashCode();
+        case AST.Unary unary ->
+            Objects.hash(unary.text(), unary.operator(), System.identityHashCode(unary.operand()));
+        case AST.Binary binary ->
+            Objects.hash(
+                binary.text(),
+                binary.operator(),
+                System.identityHashCode(binary.lhs()),
+                System.identityHashCode(binary.rhs()));
+        case AST.Assignment assignment ->
+            Objects.hash(
+                assignment.text(), assignment.lhs(), System.identityHashCode(assignment.rhs()));
+        case AST.FunctionCall functionCall -> {
+          int h = Objects.hash(functionCall.text(), functionCall.function());
+          for (AST parameter : functionCall.parameters()) {
+            h = 31 * h + System.identityHashCode(parameter);
+          }
+          yield h;
+        }
+      };
+    }
+
+    private static boolean shallowEquals(AST a, AST b) {
+      return switch (a) {
+        case AST.Variable variable -> variable.equals(b);
+        case AST.PromptVariable promptVariable -> promptVariable.equals(b);
+        case AST.NumberLiteral numberLiteral -> numberLiteral.equals(b);
+        case AST.StringLiteral stringLiteral -> stringLiteral.equals(b);
+        case AST.Unary unary ->
+            b instanceof AST.Unary other
+                && unary.text().equals(other.text())
+                && unary.operator() == other.operator()
+                && unary.operand() == other.operand();
+        case AST.Binary binary ->
+            b instanceof AST.Binary other
+                && binary.text().equals(other.text())
+                && binary.operator() == other.operator()
+                && binary.lhs() == other.lhs()
+                && binary.rhs() == other.rhs();
+        case AST.Assignment assignment ->
+            b instanceof AST.Assignment other
+                && assignment.text().equals(other.text())
+                && assignment.lhs().equals(other.lhs())
+                && assignment.rhs() == other.rhs();
+        case AST.FunctionCall functionCall ->
+            b instanceof AST.FunctionCall other
+                && functionCall.text().equals(other.text())
+                && functionCall.function().equals(other.function())
+                && sameElements(functionCall.parameters(), other.parameters());
+      };
+    }
+
+    private static boolean sameElements(List<AST> a, List<AST> b) {
+      if (a.size() != b.size()) {
+        return false;
+      }
+      for (int i = 0; i < a.size(); i++) {
+        if (a.get(i) != b.get(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Key other && hash == other.hash && shallowEquals(node, other.node);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
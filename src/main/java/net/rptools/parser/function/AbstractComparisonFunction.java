@@ -16,7 +16,6 @@ package net.rptools.parser.function;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.util.List;
 
 public abstract class AbstractComparisonFunction extends AbstractLogicalOperatorFunction {
 
@@ -34,17 +33,8 @@ public abstract class AbstractComparisonFunction extends AbstractLogicalOperator
   }
 
   @Override
-  public void checkParameters(String functionName, List<Object> parameters)
-      throws ParameterException {
-    super.checkParameters(functionName, parameters);
-
-    for (Object param : parameters) {
-      if (!(param instanceof BigDecimal) && !(param instanceof String))
-        throw new ParameterException(
-            String.format(
-                "Illegal argument type %s, expecting %s",
-                param == null ? "null" : param.getClass().getName(), BigDecimal.class.getName()));
-    }
+  public ParameterType getParameterType(int index) {
+    return ParameterType.COMPARABLE;
   }
 
   protected boolean ConvertToBoolean(Object o) {
@@ -15,7 +15,9 @@
 package net.rptools.parser.function;
 
 import java.math.BigDecimal;
+import java.math.MathContext;
 import java.util.List;
+import net.rptools.parser.NumericMode;
 import net.rptools.parser.Parser;
 import net.rptools.parser.ParserException;
 import net.rptools.parser.VariableResolver;
@@ -33,6 +35,7 @@ public abstract class AbstractFunction implements Function {
       "Function '%s' requires at least %d parameters; %d were provided.";
   private static final String TOO_MANY_PARAM =
       "Function '%s' requires no more than %d parameters; %d were provided.";
+  private static final String ILLEGAL_TYPE = "Illegal argument type %s, expecting %s";
 
   public AbstractFunction(String... aliases) {
     this(0, UNLIMITED_PARAMETERS, aliases);
@@ -76,8 +79,8 @@ public abstract class AbstractFunction implements Function {
   }
 
   /**
-   * Default implementation only checks count. Override this to implement more complex parameter
-   * checking.
+   * Default implementation checks the count and the {@link #getParameterType(int) type} of each
+   * parameter. Override this to implement more complex parameter checking.
    *
    * @param functionName the name of the function
    * @param parameters the list of parameters
@@ -85,7 +88,20 @@ public abstract class AbstractFunction implements Function {
   public void checkParameters(String functionName, List<Object> parameters)
       throws ParameterException {
     int pCount = parameters == null ? 0 : parameters.size();
+    checkParameterCount(functionName, pCount);
 
+    for (int i = 0; i < pCount; i++) {
+      checkParameterType(i, parameters.get(i));
+    }
+  }
+
+  /**
+   * Check that a number of parameters is allowed for this function.
+   *
+   * @param functionName the name of the function
+   * @param pCount the number of parameters
+   */
+  public final void checkParameterCount(String functionName, int pCount) throws ParameterException {
     if (minParameters == maxParameters) {
       if (pCount != maxParameters)
         throw new ParameterException(
@@ -100,6 +116,23 @@ public abstract class AbstractFunction implements Function {
     }
   }
 
+  /**
+   * Check the type of a single parameter against {@link #getParameterType(int)}.
+   *
+   * @param index the index of the parameter
+   * @param param the value of the parameter
+   */
+  public final void checkParameterType(int index, Object param) throws ParameterException {
+    ParameterType type = getParameterType(index);
+    if (!type.accepts(param)) {
+      throw new ParameterException(
+          String.format(
+              ILLEGAL_TYPE,
+              param == null ? "null" : param.getClass().getName(),
+              type.getExpectedType().getName()));
+    }
+  }
+
   protected boolean containsOnlyBigDecimals(List<Object> parameters) {
     for (Object param : parameters) {
       if (!(param instanceof BigDecimal)) return false;
@@ -107,6 +140,22 @@ public abstract class AbstractFunction implements Function {
     return true;
   }
 
+  /**
+   * @param parser the parser evaluating this function, may be {@code null}
+   * @return the numeric mode of the parser, or {@link NumericMode#EXACT} if there is no parser
+   */
+  protected NumericMode getNumericMode(Parser parser) {
+    return parser == null ? NumericMode.EXACT : parser.getNumericMode();
+  }
+
+  /**
+   * @param parser the parser evaluating this function, may be {@code null}
+   * @return the math context to use for inexact arithmetic
+   */
+  protected MathContext getMathContext(Parser parser) {
+    return getNumericMode(parser).getMathContext();
+  }
+
   public abstract Object childEvaluate(
       Parser parser, VariableResolver resolver, String functionName, List<Object> parameters)
       throws ParserException;
@@ -16,7 +16,6 @@ package net.rptools.parser.function;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.util.List;
 
 public abstract class AbstractLogicalOperatorFunction extends AbstractFunction {
 
@@ -34,20 +33,8 @@ public abstract class AbstractLogicalOperatorFunction extends AbstractFunction {
   }
 
   @Override
-  public void checkParameters(String functionName, List<Object> parameters)
-      throws ParameterException {
-    super.checkParameters(functionName, parameters);
-
-    for (Object param : parameters) {
-      if (!(param instanceof Boolean)
-          && !(param instanceof BigDecimal)
-          && !(param instanceof BigInteger)
-          && !(param instanceof String))
-        throw new ParameterException(
-            String.format(
-                "Illegal argument type %s, expecting %s",
-                param == null ? "null" : param.getClass().getName(), BigDecimal.class.getName()));
-    }
+  public ParameterType getParameterType(int index) {
+    return ParameterType.LOGICAL;
   }
 
   protected boolean ConvertToBoolean(Object o) {
@@ -14,9 +14,6 @@
  */
 package net.rptools.parser.function;
 
-import java.math.BigDecimal;
-import java.util.List;
-
 public abstract class AbstractNumberFunction extends AbstractFunction {
   public AbstractNumberFunction(String... aliases) {
     super(aliases);
@@ -32,16 +29,7 @@ public abstract class AbstractNumberFunction extends AbstractFunction {
   }
 
   @Override
-  public void checkParameters(String functionName, List<Object> parameters)
-      throws ParameterException {
-    super.checkParameters(functionName, parameters);
-
-    for (Object param : parameters) {
-      if (!(param instanceof BigDecimal))
-        throw new ParameterException(
-            String.format(
-                "Illegal argument type %s, expecting %s",
-                param == null ? "null" : param.getClass().getName(), BigDecimal.class.getName()));
-    }
+  public ParameterType getParameterType(int index) {
+    return ParameterType.NUMBER;
   }
 }
@@ -35,5 +35,54 @@ public interface Function {
 
   public int getMaximumParameterCount();
 
+  /**
+   * The type of value this function accepts for a parameter, which {@link #checkParameters} is
+   * expected to enforce.
+   *
+   * @param index the index of the parameter
+   * @return the type of the parameter
+   */
+  public default ParameterType getParameterType(int index) {
+    return ParameterType.ANY;
+  }
+
+  /**
+   * The type of value this function returns for parameters of the given types.
+   *
+   * @param parameterTypes the types of the parameters, as far as they are known
+   * @return the type of the result, or {@link ValueType#UNKNOWN} if it can not be told up front
+   */
+  public default ValueType getReturnType(List<ValueType> parameterTypes) {
+    return ValueType.UNKNOWN;
+  }
+
+  /**
+   * Get an implementation of this function that is specialized for parameters of the given types.
+   *
+   * <p>The returned function only has to handle parameters of those types, and may skip checks and
+   * conversions that they make unnecessary. Evaluators that know the parameter types of a call up
+   * front call the specialized function instead of this one.
+   *
+   * @param parameterTypes the types of the parameters, as far as they are known
+   * @return the specialized function, or this function if there is no better implementation
+   */
+  public default Function specialize(List<ValueType> parameterTypes) {
+    return this;
+  }
+
   public boolean isDeterministic();
+
+  /**
+   * Whether this function may assign variables through the resolver it is passed.
+   *
+   * <p>Passes that rely on variables keeping their values during an evaluation, like {@link
+   * net.rptools.parser.Expression#specialize}, common subexpression elimination and type hints,
+   * leave expressions that call such a function alone. There is no telling what a function does
+   * with the resolver, so this is {@code true} unless a function says otherwise.
+   *
+   * @return {@code false} if the function never assigns variables
+   */
+  public default boolean assignsVariables() {
+    return true;
+  }
 }
@@ -0,0 +1,44 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser.function;
+
+import java.util.List;
+import net.rptools.parser.Parser;
+import net.rptools.parser.ParserException;
+import net.rptools.parser.VariableResolver;
+
+/**
+ * A function that evaluates its parameters on demand.
+ *
+ * <p>The evaluators call {@link #evaluateLazily} instead of {@link #evaluate}, passing each
+ * parameter unevaluated. The function evaluates only the parameters it needs, so for instance
+ * {@code &&} can skip its right-hand side once the left-hand side is false. Parameters are
+ * evaluated in the order the function asks for them, and every call to {@link Parameter#evaluate()}
+ * evaluates the parameter again.
+ *
+ * <p>{@link #evaluate} is still used where the parameters have already been evaluated, and must
+ * give the same result.
+ */
+public interface LazyFunction extends Function {
+  /** A parameter that has not been evaluated yet. */
+  @FunctionalInterface
+  public interface Parameter {
+    public Object evaluate() throws ParserException;
+  }
+
+  public Object evaluateLazily(
+      Parser parser, VariableResolver resolver, String functionName, List<Parameter> parameters)
+      throws ParserException;
+}
@@ -0,0 +1,76 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser.function;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/** The type of value a function accepts for a parameter. */
+public enum ParameterType {
+  /** Any value at all. */
+  ANY(Object.class),
+
+  /** A number. */
+  NUMBER(BigDecimal.class),
+
+  /** A string. */
+  STRING(String.class),
+
+  /** A number or a string, which can be compared to each other. */
+  COMPARABLE(BigDecimal.class),
+
+  /** Anything that can be converted to a boolean: a boolean, a number or a string. */
+  LOGICAL(BigDecimal.class);
+
+  private final Class<?> expectedType;
+
+  ParameterType(Class<?> expectedType) {
+    this.expectedType = expectedType;
+  }
+
+  /**
+   * @return the type named in error messages
+   */
+  public Class<?> getExpectedType() {
+    return expectedType;
+  }
+
+  public boolean accepts(Object value) {
+    return switch (this) {
+      case ANY -> true;
+      case NUMBER -> value instanceof BigDecimal;
+      case STRING -> value instanceof String;
+      case COMPARABLE -> value instanceof BigDecimal || value instanceof String;
+      case LOGICAL ->
+          value instanceof Boolean
+              || value instanceof BigDecimal
+              || value instanceof BigInteger
+              || value instanceof String;
+    };
+  }
+
+  /**
+   * @param type the type of a value as far as it is known before evaluation
+   * @return whether every value of that type is {@linkplain #accepts(Object) accepted}
+   */
+  public boolean isSatisfiedBy(ValueType type) {
+    return switch (this) {
+      case ANY -> true;
+      case NUMBER -> type.isNumber();
+      case STRING -> type == ValueType.STRING;
+      case COMPARABLE, LOGICAL -> type != ValueType.UNKNOWN;
+    };
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser.function;
+
+import java.math.BigDecimal;
+
+/**
+ * The type of a value as far as it is known before evaluation.
+ *
+ * <p>Booleans are represented by the numbers {@code 0} and {@code 1}, so a {@link #BOOLEAN} is also
+ * a {@linkplain #isNumber() number}.
+ */
+public enum ValueType {
+  /** The type is not known up front. */
+  UNKNOWN,
+
+  /** A number. */
+  NUMBER,
+
+  /** A number that is either {@code 0} or {@code 1}. */
+  BOOLEAN,
+
+  /** A string. */
+  STRING;
+
+  /**
+   * @return whether values of this type are {@link BigDecimal}s
+   */
+  public boolean isNumber() {
+    return this == NUMBER || this == BOOLEAN;
+  }
+
+  /**
+   * @param value a value
+   * @return the type of {@code value}
+   */
+  public static ValueType of(Object value) {
+    if (value instanceof BigDecimal) {
+      return NUMBER;
+    } else if (value instanceof String) {
+      return STRING;
+    } else {
+      return UNKNOWN;
+    }
+  }
+}
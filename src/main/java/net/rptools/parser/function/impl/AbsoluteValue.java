@@ -19,6 +19,7 @@ import java.util.List;
 import net.rptools.parser.Parser;
 import net.rptools.parser.VariableResolver;
 import net.rptools.parser.function.AbstractNumberFunction;
+import net.rptools.parser.function.ValueType;
 
 public class AbsoluteValue extends AbstractNumberFunction {
   public AbsoluteValue() {
@@ -32,4 +33,14 @@ public class AbsoluteValue extends AbstractNumberFunction {
 
     return value.abs();
   }
+
+  @Override
+  public ValueType getReturnType(List<ValueType> parameterTypes) {
+    return ValueType.NUMBER;
+  }
+
+  @Override
+  public boolean assignsVariables() {
+    return false;
+  }
 }
@@ -19,12 +19,20 @@ import java.util.List;
 import net.rptools.parser.Parser;
 import net.rptools.parser.VariableResolver;
 import net.rptools.parser.function.AbstractFunction;
+import net.rptools.parser.function.AbstractNumberFunction;
 import net.rptools.parser.function.EvaluationException;
+import net.rptools.parser.function.Function;
 import net.rptools.parser.function.ParameterException;
+import net.rptools.parser.function.ValueType;
 
 public class Addition extends AbstractFunction {
+  private static final String[] ALIASES = {"add", "sum", "+", "concat"};
+
+  private static final Function SUM = new Sum();
+  private static final Function CONCATENATION = new Concatenation();
+
   public Addition() {
-    super(1, -1, "add", "sum", "+", "concat");
+    super(1, -1, ALIASES);
   }
 
   @Override
@@ -55,4 +63,79 @@ public class Addition extends AbstractFunction {
       }
     }
   }
+
+  @Override
+  public ValueType getReturnType(List<ValueType> parameterTypes) {
+    if (parameterTypes.size() == 1) {
+      return parameterTypes.get(0);
+    } else if (parameterTypes.stream().allMatch(ValueType::isNumber)) {
+      return ValueType.NUMBER;
+    } else if (parameterTypes.contains(ValueType.STRING)) {
+      return ValueType.STRING;
+    } else {
+      return ValueType.UNKNOWN;
+    }
+  }
+
+  @Override
+  public Function specialize(List<ValueType> parameterTypes) {
+    if (parameterTypes.size() < 2) {
+      return this;
+    } else if (parameterTypes.stream().allMatch(ValueType::isNumber)) {
+      return SUM;
+    } else if (parameterTypes.contains(ValueType.STRING)) {
+      return CONCATENATION;
+    } else {
+      return this;
+    }
+  }
+
+  @Override
+  public boolean assignsVariables() {
+    return false;
+  }
+
+  /** Addition of parameters that are all known to be numbers. */
+  private static final class Sum extends AbstractNumberFunction {
+    Sum() {
+      super(2, -1, ALIASES);
+    }
+
+    @Override
+    public Object childEvaluate(
+        Parser parser, VariableResolver resolver, String functionName, List<Object> parameters) {
+      BigDecimal total = BigDecimal.ZERO;
+      for (Object param : parameters) {
+        total = total.add((BigDecimal) param);
+      }
+      return total;
+    }
+
+    @Override
+    public ValueType getReturnType(List<ValueType> parameterTypes) {
+      return ValueType.NUMBER;
+    }
+  }
+
+  /** Addition of parameters of which at least one is known to be a string. */
+  private static final class Concatenation extends AbstractFunction {
+    Concatenation() {
+      super(2, -1, ALIASES);
+    }
+
+    @Override
+    public Object childEvaluate(
+        Parser parser, VariableResolver resolver, String functionName, List<Object> parameters) {
+      StringBuilder sb = new StringBuilder();
+      for (Object param : parameters) {
+        sb.append(param.toString());
+      }
+      return sb.toString();
+    }
+
+    @Override
+    public ValueType getReturnType(List<ValueType> parameterTypes) {
+      return ValueType.STRING;
+    }
+  }
 }
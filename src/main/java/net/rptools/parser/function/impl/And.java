@@ -16,12 +16,15 @@ package net.rptools.parser.function.impl;
 
 import java.util.List;
 import net.rptools.parser.Parser;
+import net.rptools.parser.ParserException;
 import net.rptools.parser.VariableResolver;
 import net.rptools.parser.function.AbstractLogicalOperatorFunction;
 import net.rptools.parser.function.EvaluationException;
+import net.rptools.parser.function.LazyFunction;
 import net.rptools.parser.function.ParameterException;
+import net.rptools.parser.function.ValueType;
 
-public class And extends AbstractLogicalOperatorFunction {
+public class And extends AbstractLogicalOperatorFunction implements LazyFunction {
   public And() {
     super(2, -1, "and", "&&");
   }
@@ -30,12 +33,40 @@ public class And extends AbstractLogicalOperatorFunction {
   public Object childEvaluate(
       Parser parser, VariableResolver resolver, String functionName, List<Object> parameters)
       throws EvaluationException, ParameterException {
-    boolean value = true;
-
     for (Object param : parameters) {
-      value &= ConvertToBoolean(param);
+      if (!ConvertToBoolean(param)) {
+        return BooleanAsBigDecimal(false);
+      }
+    }
+
+    return BooleanAsBigDecimal(true);
+  }
+
+  @Override
+  public Object evaluateLazily(
+      Parser parser, VariableResolver resolver, String functionName, List<Parameter> parameters)
+      throws ParserException {
+    checkParameterCount(functionName, parameters.size());
+
+    // Stop at the first false parameter, without evaluating the rest.
+    for (int i = 0; i < parameters.size(); i++) {
+      Object value = parameters.get(i).evaluate();
+      checkParameterType(i, value);
+      if (!ConvertToBoolean(value)) {
+        return BooleanAsBigDecimal(false);
+      }
     }
 
-    return BooleanAsBigDecimal(value);
+    return BooleanAsBigDecimal(true);
+  }
+
+  @Override
+  public ValueType getReturnType(List<ValueType> parameterTypes) {
+    return ValueType.BOOLEAN;
+  }
+
+  @Override
+  public boolean assignsVariables() {
+    return false;
   }
 }
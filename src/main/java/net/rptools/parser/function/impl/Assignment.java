@@ -19,6 +19,7 @@ import net.rptools.parser.Parser;
 import net.rptools.parser.ParserException;
 import net.rptools.parser.VariableResolver;
 import net.rptools.parser.function.AbstractFunction;
+import net.rptools.parser.function.ValueType;
 
 public class Assignment extends AbstractFunction {
   public Assignment() {
@@ -38,4 +39,9 @@ public class Assignment extends AbstractFunction {
 
     return value;
   }
+
+  @Override
+  public ValueType getReturnType(List<ValueType> parameterTypes) {
+    return parameterTypes.size() == 2 ? parameterTypes.get(1) : ValueType.UNKNOWN;
+  }
 }
@@ -22,6 +22,7 @@ import net.rptools.parser.VariableResolver;
 import net.rptools.parser.function.AbstractNumberFunction;
 import net.rptools.parser.function.EvaluationException;
 import net.rptools.parser.function.ParameterException;
+import net.rptools.parser.function.ValueType;
 
 public class BitwiseAnd extends AbstractNumberFunction {
   public BitwiseAnd() {
@@ -45,4 +46,14 @@ public class BitwiseAnd extends AbstractNumberFunction {
 
     return new BigDecimal(value);
   }
+
+  @Override
+  public ValueType getReturnType(List<ValueType> parameterTypes) {
+    return ValueType.NUMBER;
+  }
+
+  @Override
+  public boolean assignsVariables() {
+    return false;
+  }
 }
@@ -22,6 +22,7 @@ import net.rptools.parser.VariableResolver;
 import net.rptools.parser.function.AbstractNumberFunction;
 import net.rptools.parser.function.EvaluationException;
 import net.rptools.parser.function.ParameterException;
+import net.rptools.parser.function.ValueType;
 
 public class BitwiseNot extends AbstractNumberFunction {
   public BitwiseNot() {
@@ -36,4 +37,14 @@ public class BitwiseNot extends AbstractNumberFunction {
 
     return new BigDecimal(value.not());
   }
+
+  @Override
+  public ValueType getReturnType(List<ValueType> parameterTypes) {
+    return ValueType.NUMBER;
+  }
+
+  @Override
+  public boolean assignsVariables() {
+    return false;
+  }
 }
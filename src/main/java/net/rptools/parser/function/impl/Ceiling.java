@@ -21,6 +21,7 @@ import net.rptools.parser.VariableResolver;
 import net.rptools.parser.function.AbstractNumberFunction;
 import net.rptools.parser.function.EvaluationException;
 import net.rptools.parser.function.ParameterException;
+import net.rptools.parser.function.ValueType;
 
 public class Ceiling extends AbstractNumberFunction {
   public Ceiling() {
@@ -34,4 +35,14 @@ public class Ceiling extends AbstractNumberFunction {
     BigDecimal value = (BigDecimal) parameters.get(0);
     return new BigDecimal(Math.ceil(value.doubleValue()));
   }
+
+  @Override
+  public ValueType getReturnType(List<ValueType> parameterTypes) {
+    return ValueType.NUMBER;
+  }
+
+  @Override
+  public boolean assignsVariables() {
+    return false;
+  }
 }
@@ -15,13 +15,13 @@
 package net.rptools.parser.function.impl;
 
 import java.math.BigDecimal;
-import java.math.MathContext;
 import java.util.List;
 import net.rptools.parser.Parser;
 import net.rptools.parser.VariableResolver;
 import net.rptools.parser.function.AbstractNumberFunction;
 import net.rptools.parser.function.EvaluationException;
 import net.rptools.parser.function.ParameterException;
+import net.rptools.parser.function.ValueType;
 
 public class Division extends AbstractNumberFunction {
   public Division() {
@@ -42,10 +42,20 @@ public class Division extends AbstractNumberFunction {
         total = n;
         first = false;
       } else {
-        total = total.divide(n, MathContext.DECIMAL128);
+        total = total.divide(n, getMathContext(parser));
       }
     }
 
     return total;
   }
+
+  @Override
+  public ValueType getReturnType(List<ValueType> parameterTypes) {
+    return ValueType.NUMBER;
+  }
+
+  @Override
+  public boolean assignsVariables() {
+    return false;
+  }
 }
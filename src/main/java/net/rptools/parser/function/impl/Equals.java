@@ -21,6 +21,7 @@ import net.rptools.parser.VariableResolver;
 import net.rptools.parser.function.AbstractFunction;
 import net.rptools.parser.function.EvaluationException;
 import net.rptools.parser.function.ParameterException;
+import net.rptools.parser.function.ValueType;
 
 public class Equals extends AbstractFunction {
   public Equals() {
@@ -54,4 +55,14 @@ public class Equals extends AbstractFunction {
 
     return value ? BigDecimal.ONE : BigDecimal.ZERO;
   }
+
+  @Override
+  public ValueType getReturnType(List<ValueType> parameterTypes) {
+    return ValueType.BOOLEAN;
+  }
+
+  @Override
+  public boolean assignsVariables() {
+    return false;
+  }
 }
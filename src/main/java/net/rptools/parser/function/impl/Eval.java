@@ -21,6 +21,7 @@ import net.rptools.parser.ParserException;
 import net.rptools.parser.VariableResolver;
 import net.rptools.parser.function.AbstractFunction;
 import net.rptools.parser.function.ParameterException;
+import net.rptools.parser.function.ParameterType;
 
 public class Eval extends AbstractFunction {
 
@@ -52,16 +53,7 @@ public class Eval extends AbstractFunction {
   }
 
   @Override
-  public void checkParameters(String functionName, List<Object> parameters)
-      throws ParameterException {
-    super.checkParameters(functionName, parameters);
-
-    for (Object param : parameters) {
-      if (!(param instanceof String))
-        throw new ParameterException(
-            String.format(
-                "Illegal argument type %s, expecting %s",
-                param.getClass().getName(), String.class.getName()));
-    }
+  public ParameterType getParameterType(int index) {
+    return ParameterType.STRING;
   }
 }
@@ -21,6 +21,7 @@ import net.rptools.parser.VariableResolver;
 import net.rptools.parser.function.AbstractNumberFunction;
 import net.rptools.parser.function.EvaluationException;
 import net.rptools.parser.function.ParameterException;
+import net.rptools.parser.function.ValueType;
 
 public class Floor extends AbstractNumberFunction {
   public Floor() {
@@ -34,4 +35,14 @@ public class Floor extends AbstractNumberFunction {
     BigDecimal value = (BigDecimal) parameters.get(0);
     return new BigDecimal(Math.floor(value.doubleValue()));
   }
+
+  @Override
+  public ValueType getReturnType(List<ValueType> parameterTypes) {
+    return ValueType.NUMBER;
+  }
+
+  @Override
+  public boolean assignsVariables() {
+    return false;
+  }
 }
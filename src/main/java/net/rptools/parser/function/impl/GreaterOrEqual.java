@@ -21,6 +21,7 @@ import net.rptools.parser.VariableResolver;
 import net.rptools.parser.function.AbstractNumberFunction;
 import net.rptools.parser.function.EvaluationException;
 import net.rptools.parser.function.ParameterException;
+import net.rptools.parser.function.ValueType;
 
 public class GreaterOrEqual extends AbstractNumberFunction {
   public GreaterOrEqual() {
@@ -42,4 +43,14 @@ public class GreaterOrEqual extends AbstractNumberFunction {
 
     return value ? BigDecimal.ONE : BigDecimal.ZERO;
   }
+
+  @Override
+  public ValueType getReturnType(List<ValueType> parameterTypes) {
+    return ValueType.BOOLEAN;
+  }
+
+  @Override
+  public boolean assignsVariables() {
+    return false;
+  }
 }
@@ -22,6 +22,7 @@ import net.rptools.parser.VariableResolver;
 import net.rptools.parser.function.AbstractNumberFunction;
 import net.rptools.parser.function.EvaluationException;
 import net.rptools.parser.function.ParameterException;
+import net.rptools.parser.function.ValueType;
 
 public class Hex extends AbstractNumberFunction {
   public Hex() {
@@ -37,4 +38,14 @@ public class Hex extends AbstractNumberFunction {
 
     return "0x" + value.toString(16).toUpperCase();
   }
+
+  @Override
+  public ValueType getReturnType(List<ValueType> parameterTypes) {
+    return ValueType.STRING;
+  }
+
+  @Override
+  public boolean assignsVariables() {
+    return false;
+  }
 }
@@ -21,6 +21,7 @@ import net.rptools.parser.VariableResolver;
 import net.rptools.parser.function.AbstractNumberFunction;
 import net.rptools.parser.function.EvaluationException;
 import net.rptools.parser.function.ParameterException;
+import net.rptools.parser.function.ValueType;
 
 public class Hypotenuse extends AbstractNumberFunction {
   public Hypotenuse() {
@@ -34,6 +35,17 @@ public class Hypotenuse extends AbstractNumberFunction {
     BigDecimal value1 = (BigDecimal) parameters.get(0);
     BigDecimal value2 = (BigDecimal) parameters.get(1);
 
-    return new BigDecimal(Math.hypot(value1.doubleValue(), value2.doubleValue()));
+    return getNumericMode(parser)
+        .toBigDecimal(Math.hypot(value1.doubleValue(), value2.doubleValue()));
+  }
+
+  @Override
+  public ValueType getReturnType(List<ValueType> parameterTypes) {
+    return ValueType.NUMBER;
+  }
+
+  @Override
+  public boolean assignsVariables() {
+    return false;
   }
 }
@@ -21,6 +21,7 @@ import net.rptools.parser.VariableResolver;
 import net.rptools.parser.function.AbstractNumberFunction;
 import net.rptools.parser.function.EvaluationException;
 import net.rptools.parser.function.ParameterException;
+import net.rptools.parser.function.ValueType;
 
 public class Ln extends AbstractNumberFunction {
 
@@ -34,6 +35,16 @@ public class Ln extends AbstractNumberFunction {
       throws EvaluationException, ParameterException {
     BigDecimal value = (BigDecimal) parameters.get(0);
 
-    return new BigDecimal(Math.log(value.doubleValue()));
+    return getNumericMode(parser).toBigDecimal(Math.log(value.doubleValue()));
+  }
+
+  @Override
+  public ValueType getReturnType(List<ValueType> parameterTypes) {
+    return ValueType.NUMBER;
+  }
+
+  @Override
+  public boolean assignsVariables() {
+    return false;
   }
 }
@@ -15,13 +15,14 @@
 package net.rptools.parser.function.impl;
 
 import java.math.BigDecimal;
-import java.math.MathContext;
 import java.util.List;
 import net.rptools.parser.Parser;
 import net.rptools.parser.VariableResolver;
 import net.rptools.parser.function.AbstractFunction;
 import net.rptools.parser.function.EvaluationException;
 import net.rptools.parser.function.ParameterException;
+import net.rptools.parser.function.ParameterType;
+import net.rptools.parser.function.ValueType;
 
 public class Mean extends AbstractFunction {
   public Mean() {
@@ -45,21 +46,22 @@ public class Mean extends AbstractFunction {
         total = total.add(n);
       }
 
-      return total.divide(new BigDecimal(parameters.size()), MathContext.DECIMAL128);
+      return total.divide(new BigDecimal(parameters.size()), getMathContext(parser));
     }
   }
 
   @Override
-  public void checkParameters(String functionName, List<Object> parameters)
-      throws ParameterException {
-    super.checkParameters(functionName, parameters);
+  public ParameterType getParameterType(int index) {
+    return ParameterType.NUMBER;
+  }
 
-    for (Object param : parameters) {
-      if (!(param instanceof BigDecimal))
-        throw new ParameterException(
-            String.format(
-                "Illegal argument type %s, expecting %s",
-                param.getClass().getName(), BigDecimal.class.getName()));
-    }
+  @Override
+  public ValueType getReturnType(List<ValueType> parameterTypes) {
+    return ValueType.NUMBER;
+  }
+
+  @Override
+  public boolean assignsVariables() {
+    return false;
   }
 }
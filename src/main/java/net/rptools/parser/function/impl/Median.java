@@ -15,7 +15,6 @@
 package net.rptools.parser.function.impl;
 
 import java.math.BigDecimal;
-import java.math.MathContext;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -24,6 +23,8 @@ import net.rptools.parser.VariableResolver;
 import net.rptools.parser.function.AbstractFunction;
 import net.rptools.parser.function.EvaluationException;
 import net.rptools.parser.function.ParameterException;
+import net.rptools.parser.function.ParameterType;
+import net.rptools.parser.function.ValueType;
 
 public class Median extends AbstractFunction {
   public Median() {
@@ -56,7 +57,7 @@ public class Median extends AbstractFunction {
         BigDecimal d1 = (BigDecimal) parameters.get(parameters.size() / 2 - 1);
         BigDecimal d2 = (BigDecimal) parameters.get(parameters.size() / 2);
 
-        return d1.add(d2).divide(new BigDecimal(2), MathContext.DECIMAL128);
+        return d1.add(d2).divide(new BigDecimal(2), getMathContext(parser));
       } else {
         // There are an odd number, select the middle one.
 
@@ -66,16 +67,17 @@ public class Median extends AbstractFunction {
   }
 
   @Override
-  public void checkParameters(String functionName, List<Object> parameters)
-      throws ParameterException {
-    super.checkParameters(functionName, parameters);
+  public ParameterType getParameterType(int index) {
+    return ParameterType.NUMBER;
+  }
 
-    for (Object param : parameters) {
-      if (!(param instanceof BigDecimal))
-        throw new ParameterException(
-            String.format(
-                "Illegal argument type %s, expecting %s",
-                param.getClass().getName(), BigDecimal.class.getName()));
-    }
+  @Override
+  public ValueType getReturnType(List<ValueType> parameterTypes) {
+    return ValueType.NUMBER;
+  }
+
+  @Override
+  public boolean assignsVariables() {
+    return false;
   }
 }
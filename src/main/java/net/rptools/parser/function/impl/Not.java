@@ -20,6 +20,7 @@ import net.rptools.parser.VariableResolver;
 import net.rptools.parser.function.AbstractLogicalOperatorFunction;
 import net.rptools.parser.function.EvaluationException;
 import net.rptools.parser.function.ParameterException;
+import net.rptools.parser.function.ValueType;
 
 public class Not extends AbstractLogicalOperatorFunction {
   public Not() {
@@ -32,4 +33,14 @@ public class Not extends AbstractLogicalOperatorFunction {
       throws EvaluationException, ParameterException {
     return BooleanAsBigDecimal(!ConvertToBoolean(parameters.get(0)));
   }
+
+  @Override
+  public ValueType getReturnType(List<ValueType> parameterTypes) {
+    return ValueType.BOOLEAN;
+  }
+
+  @Override
+  public boolean assignsVariables() {
+    return false;
+  }
 }
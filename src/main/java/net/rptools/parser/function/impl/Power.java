@@ -15,13 +15,13 @@
 package net.rptools.parser.function.impl;
 
 import java.math.BigDecimal;
-import java.math.MathContext;
 import java.util.List;
 import net.rptools.parser.Parser;
 import net.rptools.parser.VariableResolver;
 import net.rptools.parser.function.AbstractNumberFunction;
 import net.rptools.parser.function.EvaluationException;
 import net.rptools.parser.function.ParameterException;
+import net.rptools.parser.function.ValueType;
 
 public class Power extends AbstractNumberFunction {
   private static final int DEFAULT_SCALE = 2;
@@ -41,6 +41,16 @@ public class Power extends AbstractNumberFunction {
       scale = ((BigDecimal) parameters.get(1)).intValue();
     }
 
-    return value.pow(scale, MathContext.DECIMAL128);
+    return value.pow(scale, getMathContext(parser));
+  }
+
+  @Override
+  public ValueType getReturnType(List<ValueType> parameterTypes) {
+    return ValueType.NUMBER;
+  }
+
+  @Override
+  public boolean assignsVariables() {
+    return false;
   }
 }
@@ -14,21 +14,29 @@
  */
 package net.rptools.parser.transform;
 
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Replaces string literals with tokens before parsing and puts them back afterwards.
+ *
+ * <p>The transformers may be used by several threads at the same time. Every literal gets a unique
+ * token, so expressions transformed concurrently do not interfere with each other.
+ */
 public class StringLiteralTransformer {
-  private int id = 0;
-  private HashMap<String, String> strings = new HashMap<String, String>();
+  private final AtomicInteger id = new AtomicInteger();
+  private final Map<String, String> strings = new ConcurrentHashMap<>();
 
   public StringLiteralTransformer() {}
 
   private String getNextToken() {
-    return String.format("StringLiteralTransformer%dTOKEN", id++);
+    return String.format("StringLiteralTransformer%dTOKEN", id.getAndIncrement());
   }
 
-  private synchronized String removeStringsTransform(String str) {
+  private String removeStringsTransform(String str) {
 
     StringBuilder ret = new StringBuilder();
 
@@ -68,11 +76,11 @@ public class StringLiteralTransformer {
     return ret.toString();
   }
 
-  private Pattern tokenRegex = Pattern.compile("StringLiteralTransformer\\d+TOKEN");
+  private static final Pattern tokenRegex = Pattern.compile("StringLiteralTransformer\\d+TOKEN");
 
-  private synchronized String replaceStringsTransform(String str) {
+  private String replaceStringsTransform(String str) {
     Matcher m = tokenRegex.matcher(str);
-    StringBuffer sb = new StringBuffer();
+    StringBuilder sb = new StringBuilder();
 
     while (m.find()) {
       String token = m.group();
@@ -0,0 +1,114 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+public class CaseInsensitiveHashMapTest {
+  @Test
+  public void testCaseInsensitiveLookup() {
+    Map<String, Integer> map = new CaseInsensitiveHashMap<>();
+    map.put("Strength", 10);
+
+    assertEquals(10, map.get("strength"));
+    assertEquals(10, map.get("STRENGTH"));
+    assertTrue(map.containsKey("sTrEnGtH"));
+    assertNull(map.get("Strengt"));
+    assertEquals(-1, map.getOrDefault("Dexterity", -1));
+
+    assertEquals(10, map.put("STRENGTH", 12));
+    assertEquals(1, map.size());
+    assertEquals(12, map.get("Strength"));
+    assertEquals(Set.of("STRENGTH"), ((CaseInsensitiveHashMap<Integer>) map).keySetRaw());
+    assertEquals(Set.of("strength"), map.keySet());
+  }
+
+  @Test
+  public void testNonAsciiKeys() {
+    Map<String, Integer> map = new CaseInsensitiveHashMap<>();
+    map.put("Ärger", 1);
+    map.put("𐐀", 2); // DESERET CAPITAL LETTER LONG I
+
+    assertEquals(1, map.get("äRGER"));
+    assertEquals(2, map.get("𐐨")); // DESERET SMALL LETTER LONG I
+  }
+
+  @Test
+  public void testViewsReflectChanges() {
+    Map<String, Integer> map = new CaseInsensitiveHashMap<>();
+    Set<String> keys = map.keySet();
+    map.put("A", 1);
+    map.put("b", 2);
+
+    assertEquals(Set.of("a", "b"), keys);
+    assertTrue(keys.contains("B"));
+
+    keys.remove("A");
+    assertFalse(map.containsKey("a"));
+
+    map.values().clear();
+    assertTrue(map.isEmpty());
+  }
+
+  @Test
+  public void testMatchesReferenceMap() {
+    Random random = new Random(42);
+    Map<String, Integer> map = new CaseInsensitiveHashMap<>();
+    Map<String, Integer> reference = new HashMap<>();
+
+    for (int n = 0; n < 20000; n++) {
+      String key = "key" + random.nextInt(300);
+      if (random.nextBoolean()) key = key.toUpperCase();
+      int op = random.nextInt(3);
+      if (op == 0) {
+        assertEquals(reference.put(key.toLowerCase(), n), map.put(key, n));
+      } else if (op == 1) {
+        assertEquals(reference.remove(key.toLowerCase()), map.remove(key));
+      } else {
+        assertEquals(reference.get(key.toLowerCase()), map.get(key));
+      }
+    }
+    assertEquals(reference.size(), map.size());
+    assertEquals(reference.keySet(), map.keySet());
+  }
+
+  @Test
+  public void testIteratorRemoveVisitsEveryEntry() {
+    Map<String, Integer> map = new CaseInsensitiveHashMap<>();
+    for (int i = 0; i < 1000; i++) {
+      map.put("k" + i, i);
+    }
+
+    int visited = 0;
+    for (Iterator<Map.Entry<String, Integer>> it = map.entrySet().iterator(); it.hasNext(); ) {
+      Map.Entry<String, Integer> e = it.next();
+      visited++;
+      if (e.getValue() % 3 != 0) it.remove();
+    }
+
+    assertEquals(1000, visited);
+    assertEquals(334, map.size());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i % 3 == 0, map.containsKey("K" + i));
+    }
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.Set;
+import net.rptools.parser.function.EvaluationException;
+import org.junit.jupiter.api.Test;
+
+public class ArrayVariableResolverTest {
+  /** Counts how variables are looked up. */
+  private static final class CountingResolver extends ArrayVariableResolver {
+    int slotLookups;
+    int nameLookups;
+
+    @Override
+    public int getSlot(String name) {
+      slotLookups++;
+      return super.getSlot(name);
+    }
+
+    @Override
+    public Object getVariable(String variableName, VariableModifiers vType) throws ParserException {
+      nameLookups++;
+      return super.getVariable(variableName, vType);
+    }
+  }
+
+  @Test
+  public void testSlots() throws ParserException {
+    var r = new ArrayVariableResolver();
+    int slot = r.getSlot("Str");
+    assertEquals(slot, r.getSlot("STR"));
+    assertFalse(r.containsVariable(slot));
+    assertFalse(r.containsVariable("str"));
+    assertEquals(Set.of("true", "false"), r.getVariables());
+
+    r.setVariable("str", new BigDecimal(16));
+    assertTrue(r.containsVariable(slot));
+    assertEquals(new BigDecimal(16), r.getVariable(slot));
+
+    r.setVariable(slot, new BigDecimal(18));
+    assertEquals(new BigDecimal(18), r.getVariable("Str"));
+    assertEquals(BigDecimal.ONE, r.getVariable(r.getSlot("true")));
+    assertThrows(ParserException.class, () -> r.setVariable("true", BigDecimal.ZERO));
+
+    for (int i = 0; i < 100; i++) {
+      r.setVariable("v" + i, new BigDecimal(i));
+    }
+    assertEquals(new BigDecimal(18), r.getVariable(slot));
+    assertEquals(new BigDecimal(99), r.getVariable("V99"));
+  }
+
+  @Test
+  public void testLinkedExpressionReadsBySlot() throws ParserException {
+    LinkedExpression linked = new Parser().parseExpression("Str * 2 + Dex + str").link();
+
+    var r = new CountingResolver();
+    r.setVariable("Str", new BigDecimal(16));
+    r.setVariable("Dex", new BigDecimal(13));
+    int dex = r.getSlot("Dex");
+    r.slotLookups = 0;
+    assertEquals(new BigDecimal(61), linked.evaluate(r));
+
+    r.setVariable(dex, new BigDecimal(14));
+    assertEquals(new BigDecimal(62), linked.evaluate(r));
+
+    // The slots are looked up once for the resolver, and no variable is read by name.
+    assertEquals(3, r.slotLookups);
+    assertEquals(0, r.nameLookups);
+  }
+
+  @Test
+  public void testSlotsAreLookedUpForEachResolver() throws ParserException {
+    LinkedExpression linked = new Parser().parseExpression("a + b").link();
+
+    var first = new ArrayVariableResolver();
+    first.setVariable("a", BigDecimal.ONE);
+    first.setVariable("b", BigDecimal.ONE);
+    var second = new ArrayVariableResolver();
+    second.getSlot("unrelated");
+    second.setVariable("b", BigDecimal.TEN);
+    second.setVariable("a", BigDecimal.TEN);
+
+    assertEquals(new BigDecimal(2), linked.evaluate(first));
+    assertEquals(new BigDecimal(20), linked.evaluate(second));
+    assertEquals(new BigDecimal(2), linked.evaluate(first));
+  }
+
+  @Test
+  public void testAssignmentsAndUndefinedVariables() throws ParserException {
+    Parser p = new Parser();
+    var r = new ArrayVariableResolver();
+
+    assertEquals(new BigDecimal(10), p.parseExpression("set('a', 5) + a").link().evaluate(r));
+    assertEquals(new BigDecimal(7), p.parseExpression("b = a + 2").link().evaluate(r));
+    assertEquals(new BigDecimal(7), r.getVariable("b"));
+
+    LinkedExpression undefined = p.parseExpression("a + c").link();
+    var e = assertThrows(EvaluationException.class, () -> undefined.evaluate(r));
+    assertEquals("Undefined variable: c", e.getMessage());
+  }
+
+  @Test
+  public void testAdapter() throws ParserException {
+    var map = new MapVariableResolver();
+    map.setVariable("x", BigDecimal.TEN);
+
+    var adapter = new IndexedVariableResolverAdapter(map);
+    int slot = adapter.getSlot("x");
+    assertEquals(slot, adapter.getSlot("x"));
+    assertNotEquals(slot, adapter.getSlot("y"));
+    assertTrue(adapter.containsVariable(slot));
+    assertFalse(adapter.containsVariable(adapter.getSlot("y")));
+
+    adapter.setVariable(slot, BigDecimal.ONE);
+    assertEquals(BigDecimal.ONE, map.getVariable("x"));
+    assertEquals(new BigDecimal(2), new Parser().parseExpression("x * 2").link().evaluate(adapter));
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import net.rptools.parser.function.EvaluationException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvFileSource;
+
+public class BatchEvaluatorTest {
+  @ParameterizedTest(name = "{0}; {1}")
+  @CsvFileSource(
+      resources = "EvaluationTest.testSuccessfulEvaluations.csv",
+      numLinesToSkip = 1,
+      delimiter = ';',
+      quoteCharacter = '`',
+      ignoreLeadingAndTrailingWhitespace = false)
+  public void testMatchesTreeEvaluation(String label, String input) throws ParserException {
+    Parser p = new Parser();
+    Expression xp = p.parseExpression(input);
+
+    Object expected = xp.evaluate(new MapVariableResolver());
+    assertArrayEquals(
+        new Object[] {expected, expected, expected}, xp.evaluate(new VariableBatch(3)));
+  }
+
+  @Test
+  public void testColumns() throws ParserException {
+    Expression xp = new Parser().parseExpression("max(x, 2) * ?y + bonus");
+
+    var batch = new VariableBatch(3);
+    batch.setVariable("X", new Object[] {BigDecimal.ONE, new BigDecimal(3), new BigDecimal(5)});
+    batch.setVariable("y", List.of(BigDecimal.TEN, BigDecimal.ONE, BigDecimal.ZERO));
+
+    var shared = new MapVariableResolver();
+    shared.setVariable("bonus", new BigDecimal(100));
+
+    assertArrayEquals(
+        new Object[] {new BigDecimal(120), new BigDecimal(103), new BigDecimal(100)},
+        xp.evaluate(batch, shared));
+  }
+
+  @Test
+  public void testAssignmentsStayInTheirRow() throws ParserException {
+    Expression xp = new Parser().parseExpression("set('a', x) + a + b");
+
+    var batch = new VariableBatch(2);
+    batch.setVariable("x", new Object[] {BigDecimal.ONE, BigDecimal.TEN});
+
+    var shared = new MapVariableResolver();
+    shared.setVariable("a", new BigDecimal(1000));
+    shared.setVariable("b", new BigDecimal(100));
+
+    assertArrayEquals(
+        new Object[] {new BigDecimal(102), new BigDecimal(120)}, xp.evaluate(batch, shared));
+    assertEquals(new BigDecimal(1000), shared.getVariable("a"));
+  }
+
+  @Test
+  public void testEmptyBatch() throws ParserException {
+    Expression xp = new Parser().parseExpression("1 / 0");
+    assertArrayEquals(new Object[0], xp.evaluate(new VariableBatch(0)));
+  }
+
+  @Test
+  public void testUndefinedVariable() throws ParserException {
+    Expression xp = new Parser().parseExpression("x + y");
+
+    var batch = new VariableBatch(2);
+    batch.setVariable("x", new Object[] {BigDecimal.ONE, BigDecimal.TEN});
+
+    assertThrows(EvaluationException.class, () -> xp.evaluate(batch));
+  }
+
+  @Test
+  public void testColumnSizeMustMatchBatch() {
+    var batch = new VariableBatch(2);
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> batch.setVariable("x", new Object[] {BigDecimal.ONE}));
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.rptools.parser.ast.AST;
+import net.rptools.parser.function.AbstractFunction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvFileSource;
+
+public class CommonSubexpressionTreeParserTest {
+  private final AtomicInteger calls = new AtomicInteger();
+  private Parser parser;
+
+  @BeforeEach
+  public void setUp() {
+    parser = new Parser();
+    parser.setCommonSubexpressionElimination(true);
+    // Deterministic, so repeated calls with the same parameter are common subexpressions.
+    parser.addFunction(
+        new AbstractFunction(1, 1, "touch") {
+          @Override
+          public Object childEvaluate(
+              Parser parser, VariableResolver resolver, String functionName, List<Object> params) {
+            calls.incrementAndGet();
+            return params.get(0);
+          }
+
+          @Override
+          public boolean assignsVariables() {
+            return false;
+          }
+        });
+    parser.addFunction(
+        new AbstractFunction(1, 1, false, "tick") {
+          @Override
+          public Object childEvaluate(
+              Parser parser, VariableResolver resolver, String functionName, List<Object> params) {
+            calls.incrementAndGet();
+            return params.get(0);
+          }
+        });
+  }
+
+  @ParameterizedTest(name = "{0}; {1}")
+  @CsvFileSource(
+      resources = "EvaluationTest.testSuccessfulEvaluations.csv",
+      numLinesToSkip = 1,
+      delimiter = ';',
+      quoteCharacter = '`',
+      ignoreLeadingAndTrailingWhitespace = false)
+  public void testMatchesTreeEvaluation(String label, String input) throws ParserException {
+    Expression xp = parser.parseExpression(input);
+
+    assertEquals(
+        xp.evaluate(new MapVariableResolver()), xp.link().evaluate(new MapVariableResolver()));
+  }
+
+  @Test
+  public void testFindOutermostCommonSubexpressions() throws ParserException {
+    var cse = new CommonSubexpressionTreeParser(parser);
+    AST tree =
+        cse.share(parser.parseExpression("max(Str*2+Dex, 10) + max(Str*2+Dex, 10)/2").getTree());
+
+    var sum = (AST.Binary) tree;
+    var quotient = (AST.Binary) sum.rhs();
+    assertSame(sum.lhs(), quotient.lhs());
+    // Str*2+Dex only occurs within the common call.
+    assertEquals(List.of(sum.lhs()), List.copyOf(cse.findCommon(tree)));
+  }
+
+  @Test
+  public void testEvaluateCommonSubexpressionsOnce() throws ParserException {
+    LinkedExpression linked = parser.parseExpression("touch(x) * 2 + touch(x) / 2").link();
+
+    var r = new MapVariableResolver();
+    r.setVariable("x", new BigDecimal(4));
+    assertEquals(new BigDecimal(10), linked.evaluate(r));
+    assertEquals(1, calls.get());
+
+    // The slots are not kept between evaluations.
+    r.setVariable("x", new BigDecimal(6));
+    assertEquals(new BigDecimal(15), linked.evaluate(r));
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void testDisabled() throws ParserException {
+    assertFalse(new Parser().isCommonSubexpressionElimination());
+
+    parser.setCommonSubexpressionElimination(false);
+    LinkedExpression linked = parser.parseExpression("touch(4) * 2 + touch(4) / 2").link();
+    assertEquals(new BigDecimal(10), linked.evaluate());
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void testNonDeterministicFunctionsAreNotCommon() throws ParserException {
+    LinkedExpression linked = parser.parseExpression("tick(4) * 2 + tick(4) / 2").link();
+    assertEquals(new BigDecimal(10), linked.evaluate());
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void testAssignedVariablesAreNotCommon() throws ParserException {
+    var r = new MapVariableResolver();
+    r.setVariable("x", BigDecimal.ONE);
+    assertEquals(
+        new BigDecimal(12),
+        parser.parseExpression("touch(x * 2) + set('x', 5) * 0 + touch(x * 2)").link().evaluate(r));
+    assertEquals(2, calls.get());
+
+    r.setVariable("x", BigDecimal.ONE);
+    assertEquals(
+        new BigDecimal(11),
+        parser.parseExpression("touch(x * 2) + eval('x = 3') + touch(x * 2)").link().evaluate(r));
+    assertEquals(4, calls.get());
+  }
+
+  @Test
+  public void testFunctionsThatAssignVariablesAreNotCommon() throws ParserException {
+    parser.addFunction(
+        new AbstractFunction(1, 1, "bump") {
+          @Override
+          public Object childEvaluate(
+              Parser parser, VariableResolver resolver, String functionName, List<Object> params)
+              throws ParserException {
+            calls.incrementAndGet();
+            resolver.setVariable("x", ((BigDecimal) resolver.getVariable("x")).add(BigDecimal.ONE));
+            return params.get(0);
+          }
+        });
+
+    var r = new MapVariableResolver();
+    r.setVariable("x", BigDecimal.ONE);
+    assertEquals(
+        new BigDecimal(8),
+        parser
+            .parseExpression("touch(x * 2) + bump(0) + bump(0) + touch(x * 2)")
+            .link()
+            .evaluate(r));
+    assertEquals(4, calls.get());
+  }
+
+  @Test
+  public void testSkippedOccurrencesAreEvaluatedLater() throws ParserException {
+    assertEquals(
+        BigDecimal.ONE,
+        parser.parseExpression("(0 && touch(2) > 1) || touch(2) > 1").link().evaluate());
+    assertEquals(1, calls.get());
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import net.rptools.parser.function.AbstractFunction;
+import net.rptools.parser.function.EvaluationException;
+import net.rptools.parser.function.ParameterException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvFileSource;
+
+public class CompiledExpressionTest {
+  @ParameterizedTest(name = "{0}; {1}")
+  @CsvFileSource(
+      resources = "EvaluationTest.testSuccessfulEvaluations.csv",
+      numLinesToSkip = 1,
+      delimiter = ';',
+      quoteCharacter = '`',
+      ignoreLeadingAndTrailingWhitespace = false)
+  public void testMatchesTreeEvaluation(String label, String input) throws ParserException {
+    Parser p = new Parser();
+    Expression xp = p.parseExpression(input);
+
+    assertEquals(
+        xp.evaluate(new MapVariableResolver()), xp.compile().evaluate(new MapVariableResolver()));
+  }
+
+  @Test
+  public void testReuseCompiledExpression() throws ParserException {
+    CompiledExpression exp = new Parser().parseExpression("x * 2 + ?y").compile();
+
+    VariableResolver vars = new MapVariableResolver();
+    vars.setVariable("x", BigDecimal.ONE);
+    vars.setVariable("y", VariableModifiers.Prompt, BigDecimal.TEN);
+    assertEquals(new BigDecimal(12), exp.evaluate(vars));
+
+    vars.setVariable("x", new BigDecimal(5));
+    assertEquals(new BigDecimal(20), exp.evaluate(vars));
+  }
+
+  @Test
+  public void testAssignmentAndEvaluationOrder() throws ParserException {
+    Parser p = new Parser();
+    VariableResolver r = new MapVariableResolver();
+    r.setVariable("a", BigDecimal.ONE);
+
+    // The left operand must be evaluated (and assign) before the right operand reads "a".
+    assertEquals(new BigDecimal(10), p.parseExpression("set('a', 5) + a").compile().evaluate(r));
+    assertEquals(new BigDecimal(7), p.parseExpression("b = a + 2").compile().evaluate(r));
+    assertEquals(new BigDecimal(7), r.getVariable("b"));
+  }
+
+  @Test
+  public void testFunctionsAreBoundAtCompileTime() throws ParserException {
+    Parser p = new Parser();
+    Expression xp = p.parseExpression("1 + increment(3)");
+
+    assertThrows(EvaluationException.class, xp::compile);
+
+    p.addFunction(
+        new AbstractFunction(1, 1, "increment") {
+          @Override
+          public Object childEvaluate(
+              Parser parser,
+              VariableResolver resolver,
+              String functionName,
+              List<Object> parameters) {
+            return ((BigDecimal) parameters.get(0)).add(BigDecimal.ONE);
+          }
+        });
+    assertEquals(new BigDecimal(5), xp.compile().evaluate());
+  }
+
+  @Test
+  public void testCallWithManyParameters() throws ParserException {
+    var sb = new StringBuilder("sum(x");
+    for (int i = 1; i < 300; i++) {
+      sb.append(", ").append(i);
+    }
+    sb.append(")");
+    Expression exp = new Parser().parseExpression(sb.toString());
+
+    var resolver = new MapVariableResolver();
+    resolver.setVariable("x", new BigDecimal(300));
+    assertEquals(new BigDecimal(45150), exp.compile().evaluate(resolver));
+  }
+
+  @Test
+  public void testUndefinedVariable() throws ParserException {
+    CompiledExpression exp = new Parser().parseExpression("1 + missing").compile();
+    assertThrows(EvaluationException.class, exp::evaluate);
+  }
+
+  @Test
+  public void testParameterCountCheckedAtCompileTime() throws ParserException {
+    Expression xp = new Parser().parseExpression("1 + abs(4, 9)");
+    assertThrows(ParameterException.class, xp::compile);
+  }
+
+  @Test
+  public void testParameterTypesCheckedOnEvaluation() throws ParserException {
+    Parser p = new Parser();
+    VariableResolver r = new MapVariableResolver();
+    r.setVariable("x", "abc");
+
+    CompiledExpression literal = p.parseExpression("abs('abc')").compile();
+    assertThrows(ParameterException.class, () -> literal.evaluate(r));
+
+    CompiledExpression variable = p.parseExpression("abs(x)").compile();
+    assertThrows(ParameterException.class, () -> variable.evaluate(r));
+
+    r.setVariable("x", new BigDecimal(-4));
+    assertEquals(new BigDecimal(4), variable.evaluate(r));
+  }
+}
@@ -0,0 +1,232 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import net.rptools.parser.ast.AST;
+import net.rptools.parser.function.AbstractFunction;
+import net.rptools.parser.function.AbstractNumberFunction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvFileSource;
+
+public class ConstantFoldingTreeParserTest {
+  @ParameterizedTest(name = "{0}; {1}")
+  @CsvFileSource(
+      resources = "EvaluationTest.testSuccessfulEvaluations.csv",
+      numLinesToSkip = 1,
+      delimiter = ';',
+      quoteCharacter = '`',
+      ignoreLeadingAndTrailingWhitespace = false)
+  public void testMatchesUnfoldedEvaluation(String label, String input) throws ParserException {
+    Parser folding = new Parser();
+    folding.setConstantFolding(true);
+
+    assertEquals(
+        new Parser().parseExpression(input).evaluate(), folding.parseExpression(input).evaluate());
+  }
+
+  @Test
+  public void testFoldArithmetic() throws ParserException {
+    Parser p = new Parser();
+    p.setConstantFolding(true);
+    Expression xp = p.parseExpression("1 + 2 * 10");
+
+    assertEquals(new AST.NumberLiteral("21", new BigDecimal(21)), xp.getEvaluationTree());
+    assertEquals(" ( + 1 ( * 2 10 ) )", xp.getTree().toStringTree());
+    assertEquals("1 + 2 * 10", xp.format());
+  }
+
+  @Test
+  public void testFoldAroundVariables() throws ParserException {
+    Parser p = new Parser();
+    p.setConstantFolding(true);
+
+    assertEquals(" ( + x 20 )", p.parseExpression("x + 2 * 10").getEvaluationTree().toStringTree());
+    assertEquals(" ( = a 3 )", p.parseExpression("a = 1 + 2").getEvaluationTree().toStringTree());
+    assertEquals(
+        " ( set 'a' 2 )", p.parseExpression("set('a', 1 + 1)").getEvaluationTree().toStringTree());
+    assertEquals(" 3", p.parseExpression("eval('1 + 2')").getEvaluationTree().toStringTree());
+    assertEquals(
+        " ( eval 'x + 2' )", p.parseExpression("eval('x + 2')").getEvaluationTree().toStringTree());
+  }
+
+  @Test
+  public void testDoNotFoldNonDeterministicFunctions() throws ParserException {
+    Parser p = new Parser();
+    p.setConstantFolding(true);
+    p.addFunction(
+        new AbstractFunction(0, 1, false, "random") {
+          @Override
+          public Object childEvaluate(
+              Parser parser, VariableResolver resolver, String functionName, List<Object> params) {
+            return BigDecimal.ONE;
+          }
+        });
+
+    assertEquals(
+        " ( + ( random 4 ) 1 )",
+        p.parseExpression("random(2 * 2) + 1").getEvaluationTree().toStringTree());
+  }
+
+  @Test
+  public void testFailuresAreLeftToEvaluation() throws ParserException {
+    Parser p = new Parser();
+    p.setConstantFolding(true);
+    Expression xp = p.parseExpression("1 / 0");
+
+    assertSame(xp.getTree(), xp.getEvaluationTree());
+    assertThrows(ArithmeticException.class, xp::evaluate);
+  }
+
+  @Test
+  public void testDisabledByDefault() throws ParserException {
+    Expression xp = new Parser().parseExpression("1 + 2");
+    assertSame(xp.getTree(), xp.getEvaluationTree());
+  }
+
+  @Test
+  public void testSpecialize() throws ParserException {
+    Parser p = new Parser();
+    Expression xp = p.parseExpression("max(Strength, dexterity) * 2 + floor(level / 2) + bonus");
+
+    Map<String, Object> sheet =
+        Map.of(
+            "strength", new BigDecimal(14),
+            "Dexterity", new BigDecimal(12),
+            "level", new BigDecimal(5),
+            "name", "Unrelated");
+    Expression specialized = xp.specialize(sheet);
+
+    assertEquals("30 + bonus", specialized.format());
+    assertEquals(" ( + 30 bonus )", specialized.getTree().toStringTree());
+
+    var resolver = new MapVariableResolver();
+    resolver.setVariable("bonus", new BigDecimal(3));
+    assertEquals(new BigDecimal(33), specialized.evaluate(resolver));
+  }
+
+  @Test
+  public void testSpecializationsAreRemembered() throws ParserException {
+    Expression xp = new Parser().parseExpression("a * 2 + b");
+
+    Expression specialized = xp.specialize(Map.of("a", BigDecimal.ONE));
+    assertSame(specialized, xp.specialize(Map.of("A", BigDecimal.ONE, "c", BigDecimal.TEN)));
+    assertNotSame(specialized, xp.specialize(Map.of("a", BigDecimal.TEN)));
+    assertSame(xp, xp.specialize(Map.of("c", BigDecimal.TEN)));
+  }
+
+  @Test
+  public void testDoNotSpecializeAssignedVariables() throws ParserException {
+    Parser p = new Parser();
+
+    Map<String, Object> values =
+        Map.of("a", BigDecimal.ONE, "b", new BigDecimal(2), "c", new BigDecimal(3));
+
+    assertEquals(
+        "set('a', 3) + a + 3",
+        p.parseExpression("set('a', b + 1) + a + c").specialize(values).format());
+    assertEquals(
+        " ( + ( = a 3 ) a )",
+        p.parseExpression("(a = b + 1) + a").specialize(values).getTree().toStringTree());
+    assertEquals(
+        "eval('a = 2') + a + b",
+        p.parseExpression("eval('a = 2') + a + b").specialize(values).format());
+  }
+
+  @Test
+  public void testDoNotSpecializeWithFunctionsThatAssignVariables() throws ParserException {
+    Parser p = new Parser();
+    p.addFunction(
+        new AbstractFunction(1, 1, "bump") {
+          @Override
+          public Object childEvaluate(
+              Parser parser, VariableResolver resolver, String functionName, List<Object> params)
+              throws ParserException {
+            String name = (String) params.get(0);
+            resolver.setVariable(
+                name, ((BigDecimal) resolver.getVariable(name)).add(BigDecimal.ONE));
+            return BigDecimal.ZERO;
+          }
+        });
+    p.addFunction(
+        new AbstractFunction(1, 1, "same") {
+          @Override
+          public Object childEvaluate(
+              Parser parser, VariableResolver resolver, String functionName, List<Object> params) {
+            return params.get(0);
+          }
+
+          @Override
+          public boolean assignsVariables() {
+            return false;
+          }
+        });
+
+    Map<String, Object> values = Map.of("a", BigDecimal.ONE, "b", new BigDecimal(2));
+
+    assertEquals(
+        "bump('a') + a + b", p.parseExpression("bump('a') + a + b").specialize(values).format());
+    assertEquals("3", p.parseExpression("same(a) + b").specialize(values).format());
+  }
+
+  @Test
+  public void testDoNotSpecializeWithNumberFunctionsThatAssignVariables() throws ParserException {
+    Parser p = new Parser();
+    // Taking numbers says nothing about what a function does with the resolver.
+    p.addFunction(
+        new AbstractNumberFunction(1, 1, "bump") {
+          @Override
+          public Object childEvaluate(
+              Parser parser, VariableResolver resolver, String functionName, List<Object> params)
+              throws ParserException {
+            resolver.setVariable("x", params.get(0));
+            return BigDecimal.ZERO;
+          }
+        });
+
+    Expression xp = p.parseExpression("bump(100) + x");
+    var resolver = new MapVariableResolver();
+    resolver.setVariable("x", new BigDecimal(5));
+
+    assertEquals(new BigDecimal(100), xp.evaluate(resolver));
+    resolver.setVariable("x", new BigDecimal(5));
+    assertEquals(
+        new BigDecimal(100), xp.specialize(Map.of("x", new BigDecimal(5))).evaluate(resolver));
+  }
+
+  @Test
+  public void testStringsWithBothQuotesAreNotFolded() throws ParserException {
+    Parser p = new Parser();
+    p.setConstantFolding(true);
+
+    // There is no literal for a string that contains both kinds of quotes.
+    Expression folded = p.parseExpression("'a\"b' + \"'c\"");
+    assertEquals("'a\"b' + \"'c\"", folded.format());
+    assertEquals("a\"b'c", folded.evaluate());
+
+    Expression specialized =
+        p.parseExpression("x + ('a\"b' + \"'c\") + y").specialize(Map.of("x", "z", "y", "'\""));
+    assertEquals("'z' + 'a\"b' + \"'c\" + y", specialized.format());
+    var resolver = new MapVariableResolver();
+    resolver.setVariable("y", "!");
+    assertEquals("za\"b'c!", specialized.evaluate(resolver));
+    assertEquals("za\"b'c!", p.parseExpression(specialized.format()).evaluate(resolver));
+  }
+}
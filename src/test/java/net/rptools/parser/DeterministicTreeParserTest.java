@@ -121,6 +121,18 @@ public class DeterministicTreeParserTest {
     assertEquals(" ( + 1 I am a string )", dxp.getTree().toStringTree());
   }
 
+  @Test
+  public void testUnchangedSubtreesAreShared() throws ParserException {
+    Parser p = new Parser();
+    p.addFunction(new NonDeterministicFunction());
+
+    Expression xp = p.parseExpression("(1 + 2) * sum(3, 4) + nondeterministic(4, 1)");
+    Expression dxp = xp.getDeterministicExpression(new MapVariableResolver());
+
+    var lhs = ((AST.Binary) xp.getTree()).lhs();
+    assertSame(lhs, ((AST.Binary) dxp.getTree()).lhs());
+  }
+
   /**
    * Test function that declares itself non-deterministic for the purposes of comparing the result
    * of getting a deterministic expression from another expression.
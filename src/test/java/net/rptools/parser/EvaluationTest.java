@@ -72,6 +72,39 @@ public class EvaluationTest {
     evaluateExpression(p, resolver, input, expectedValue);
   }
 
+  @ParameterizedTest(name = "{0}; {1}; {2}")
+  @CsvFileSource(
+      resources = "EvaluationTest.testSuccessfulEvaluations.csv",
+      numLinesToSkip = 1,
+      delimiter = ';',
+      quoteCharacter = '`',
+      ignoreLeadingAndTrailingWhitespace = false)
+  public void testSuccessfulEvaluationsInFastMode(String label, String input, Object expectedValue)
+      throws ParserException {
+    if (expectedValue instanceof String s) {
+      try {
+        expectedValue = new BigDecimal(s);
+      } catch (NumberFormatException e) {
+        // Ignore. It's just not a number, okay?
+      }
+    }
+
+    Parser p = new Parser(true);
+    p.setNumericMode(NumericMode.FAST);
+
+    evaluateExpression(p, new MapVariableResolver(), input, expectedValue);
+  }
+
+  @Test
+  public void testNumericModePrecision() throws ParserException {
+    Parser p = new Parser();
+    evaluateExpression(p, "1 / 3", new BigDecimal("0.3333333333333333333333333333333333"));
+
+    p.setNumericMode(NumericMode.FAST);
+    evaluateExpression(p, "1 / 3", new BigDecimal("0.3333333333333333"));
+    evaluateExpression(p, "ln(2)", new BigDecimal("0.6931471805599453"));
+  }
+
   @Test
   public void testAssignment() throws ParserException {
     Parser p = new Parser();
@@ -0,0 +1,110 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import net.rptools.parser.function.impl.Division;
+import net.rptools.parser.transform.RegexpStringTransformer;
+import org.junit.jupiter.api.Test;
+
+public class ExpressionCacheTest {
+  @Test
+  public void testCacheDisabledByDefault() throws ParserException {
+    Parser p = new Parser();
+    assertNull(p.getExpressionCache());
+    assertNotSame(p.parseExpression("1 + 2"), p.parseExpression("1 + 2"));
+  }
+
+  @Test
+  public void testRepeatedParseReturnsSharedExpression() throws ParserException {
+    Parser p = new Parser();
+    p.setExpressionCacheSize(10);
+
+    Expression first = p.parseExpression("x + 1");
+    Expression second = p.parseExpression("x + 1");
+
+    assertSame(first, second);
+    assertEquals(1, p.getExpressionCache().getMissCount());
+    assertEquals(1, p.getExpressionCache().getHitCount());
+
+    VariableResolver vars = new MapVariableResolver();
+    vars.setVariable("x", BigDecimal.ONE);
+    assertEquals(new BigDecimal(2), second.evaluate(vars));
+  }
+
+  @Test
+  public void testCacheIsKeyedByTransformedText() throws ParserException {
+    Parser p = new Parser();
+    p.addTransformer(new RegexpStringTransformer(new String[][] {{"plus", "+"}}));
+    p.setExpressionCacheSize(10);
+
+    assertSame(p.parseExpression("1 plus 2"), p.parseExpression("1 + 2"));
+    assertEquals(1, p.getExpressionCache().size());
+  }
+
+  @Test
+  public void testSettingsClearCache() throws ParserException {
+    Parser p = new Parser();
+    p.setConstantFolding(true);
+    p.setExpressionCacheSize(10);
+
+    p.setNumericMode(NumericMode.FAST);
+    Expression fast = p.parseExpression("1 / 3");
+    assertEquals(new BigDecimal("0.3333333333333333"), fast.evaluate());
+
+    // The folded value of the fast expression must not be served in exact mode.
+    p.setNumericMode(NumericMode.EXACT);
+    Expression exact = p.parseExpression("1 / 3");
+    assertNotSame(fast, exact);
+    assertEquals(new BigDecimal("0.3333333333333333333333333333333333"), exact.evaluate());
+
+    p.setConstantFolding(false);
+    assertNotSame(exact, p.parseExpression("1 / 3"));
+
+    Expression before = p.parseExpression("1 / 3");
+    p.addFunction(new Division());
+    assertNotSame(before, p.parseExpression("1 / 3"));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEviction() throws ParserException {
+    Parser p = new Parser();
+    p.setExpressionCacheSize(2);
+
+    Expression a = p.parseExpression("a");
+    p.parseExpression("b");
+    // Touch "a" so that "b" becomes the eldest entry.
+    assertSame(a, p.parseExpression("a"));
+    p.parseExpression("c");
+
+    ExpressionCache<String> cache = p.getExpressionCache();
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.getEvictionCount());
+    assertSame(a, p.parseExpression("a"));
+    assertNotNull(cache.get("c"));
+    assertNull(cache.get("b"));
+  }
+
+  @Test
+  public void testFailedParsesAreNotCached() {
+    Parser p = new Parser();
+    p.setExpressionCacheSize(10);
+
+    assertThrows(ParserException.class, () -> p.parseExpression("\"a\" = 5"));
+    assertEquals(0, p.getExpressionCache().size());
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ExpressionLibraryTest {
+  private Path file;
+
+  @BeforeEach
+  public void createFile() throws IOException {
+    file = Files.createTempFile("library", ".rptl");
+  }
+
+  @AfterEach
+  public void deleteFile() throws IOException {
+    Files.delete(file);
+  }
+
+  @Test
+  public void testGetByName() throws ParserException, IOException {
+    Parser p = new Parser();
+    var expressions = new LinkedHashMap<String, Expression>();
+    expressions.put("double", p.parseExpression("x * 2"));
+    expressions.put("greeting", p.parseExpression("'Hello, ' + name"));
+    expressions.put("größte", p.parseExpression("max(1, 7, 3)"));
+    ExpressionLibrary.write(file, expressions);
+
+    ExpressionLibrary library = ExpressionLibrary.open(p, file);
+    assertEquals(3, library.size());
+    assertEquals(Set.of("double", "greeting", "größte"), Set.copyOf(library.getNames()));
+
+    var r = new MapVariableResolver();
+    r.setVariable("x", new BigDecimal(21));
+    r.setVariable("name", "World");
+    assertEquals(new BigDecimal(42), library.get("double").evaluate(r));
+    assertEquals("Hello, World", library.get("greeting").evaluate(r));
+    assertEquals(new BigDecimal(7), library.get("größte").evaluate(r));
+
+    assertFalse(library.contains("missing"));
+    assertNull(library.get("missing"));
+  }
+
+  @Test
+  public void testNamesWithTheSameHash() throws ParserException, IOException {
+    // "Aa" and "BB" have the same hash code.
+    assertEquals("Aa".hashCode(), "BB".hashCode());
+
+    Parser p = new Parser();
+    ExpressionLibrary.write(
+        file,
+        Map.of(
+            "Aa", p.parseExpression("1"),
+            "BB", p.parseExpression("2"),
+            "C", p.parseExpression("3")));
+
+    ExpressionLibrary library = ExpressionLibrary.open(p, file);
+    assertEquals(new BigDecimal(1), library.get("Aa").evaluate());
+    assertEquals(new BigDecimal(2), library.get("BB").evaluate());
+    assertEquals(new BigDecimal(3), library.get("C").evaluate());
+    assertFalse(library.contains("Ab"));
+  }
+
+  @Test
+  public void testDecodedExpressionsAreCached() throws ParserException, IOException {
+    Parser p = new Parser();
+    ExpressionLibrary.write(file, Map.of("a", p.parseExpression("1 + 2")));
+
+    ExpressionLibrary uncached = ExpressionLibrary.open(p, file);
+    assertNull(uncached.getExpressionCache());
+    assertNotSame(uncached.get("a"), uncached.get("a"));
+
+    ExpressionLibrary cached = ExpressionLibrary.open(p, file, 10);
+    assertSame(cached.get("a"), cached.get("a"));
+    assertEquals(1, cached.getExpressionCache().getHitCount());
+  }
+
+  @Test
+  public void testEmptyLibrary() throws IOException {
+    ExpressionLibrary.write(file, Map.of());
+
+    ExpressionLibrary library = ExpressionLibrary.open(new Parser(), file);
+    assertEquals(0, library.size());
+    assertNull(library.get("a"));
+  }
+
+  @Test
+  public void testRejectInvalidFile() throws ParserException, IOException {
+    Files.writeString(file, "not a library");
+    assertThrows(IOException.class, () -> ExpressionLibrary.open(new Parser(), file));
+
+    ExpressionLibrary.write(file, Map.of("a", new Parser().parseExpression("1")));
+    byte[] bytes = Files.readAllBytes(file);
+    Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+    assertThrows(IOException.class, () -> ExpressionLibrary.open(new Parser(), file));
+  }
+
+  @Test
+  public void testRejectUnsortedIndex() throws ParserException, IOException {
+    Parser p = new Parser();
+    ExpressionLibrary.write(file, Map.of("a", p.parseExpression("1"), "b", p.parseExpression("2")));
+    byte[] bytes = Files.readAllBytes(file);
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    // Swap the hash codes of the two entries.
+    int first = buffer.getInt(12);
+    buffer.putInt(12, buffer.getInt(32));
+    buffer.putInt(32, first);
+    Files.write(file, bytes);
+
+    var e = assertThrows(IOException.class, () -> ExpressionLibrary.open(p, file));
+    assertEquals("Expression library index is not sorted", e.getMessage());
+  }
+}
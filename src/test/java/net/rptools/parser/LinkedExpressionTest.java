@@ -0,0 +1,172 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import net.rptools.parser.function.EvaluationException;
+import net.rptools.parser.function.ParameterException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvFileSource;
+
+public class LinkedExpressionTest {
+  @ParameterizedTest(name = "{0}; {1}")
+  @CsvFileSource(
+      resources = "EvaluationTest.testSuccessfulEvaluations.csv",
+      numLinesToSkip = 1,
+      delimiter = ';',
+      quoteCharacter = '`',
+      ignoreLeadingAndTrailingWhitespace = false)
+  public void testMatchesTreeEvaluation(String label, String input) throws ParserException {
+    Parser p = new Parser();
+    Expression xp = p.parseExpression(input);
+
+    assertEquals(
+        xp.evaluate(new MapVariableResolver()), xp.link().evaluate(new MapVariableResolver()));
+  }
+
+  @ParameterizedTest(name = "{0}; {1}")
+  @CsvFileSource(
+      resources = "EvaluationTest.testSuccessfulEvaluations.csv",
+      numLinesToSkip = 1,
+      delimiter = ';',
+      quoteCharacter = '`',
+      ignoreLeadingAndTrailingWhitespace = false)
+  public void testMatchesTreeEvaluationInFastMode(String label, String input)
+      throws ParserException {
+    Parser p = new Parser();
+    p.setNumericMode(NumericMode.FAST);
+    Expression xp = p.parseExpression(input);
+
+    assertEquals(
+        xp.evaluate(new MapVariableResolver()), xp.link().evaluate(new MapVariableResolver()));
+  }
+
+  @Test
+  public void testLongArithmeticInFastMode() throws ParserException {
+    Parser p = new Parser();
+    p.setNumericMode(NumericMode.FAST);
+    LinkedExpression exp = p.parseExpression("a * 3 + b - -c").link();
+
+    VariableResolver r = new MapVariableResolver();
+    r.setVariable("a", new BigDecimal(4));
+    r.setVariable("b", new BigDecimal(-5));
+    r.setVariable("c", new BigDecimal(6));
+    assertEquals(new BigDecimal(13), exp.evaluate(r));
+
+    // Not an integer: only this evaluation falls back to the functions.
+    r.setVariable("a", new BigDecimal("1.5"));
+    assertEquals(new BigDecimal("5.5"), exp.evaluate(r));
+    r.setVariable("a", new BigDecimal(4));
+    assertEquals(new BigDecimal(13), exp.evaluate(r));
+  }
+
+  @Test
+  public void testLongArithmeticFallsBackInFastMode() throws ParserException {
+    Parser p = new Parser();
+    p.setNumericMode(NumericMode.FAST);
+    VariableResolver r = new MapVariableResolver();
+
+    r.setVariable("a", new BigDecimal("999999999999999999"));
+    assertEquals(
+        new BigDecimal("9999999999999999990"), p.parseExpression("a * 10").link().evaluate(r));
+
+    r.setVariable("a", "x");
+    assertEquals("x1", p.parseExpression("a + 1").link().evaluate(r));
+    assertThrows(ParameterException.class, () -> p.parseExpression("a * 2").link().evaluate(r));
+
+    r.setVariable("a", new BigDecimal(2));
+    assertThrows(EvaluationException.class, () -> p.parseExpression("a * b").link().evaluate(r));
+  }
+
+  @Test
+  public void testLongArithmeticFallbackReusesVariables() throws ParserException {
+    Parser p = new Parser();
+    p.setNumericMode(NumericMode.FAST);
+    LinkedExpression exp = p.parseExpression("a * 3 + b - -c").link();
+
+    var lookups = new int[1];
+    VariableResolver r =
+        new MapVariableResolver() {
+          @Override
+          public Object lookupVariable(String name, VariableModifiers vType)
+              throws ParserException {
+            lookups[0]++;
+            return super.lookupVariable(name, vType);
+          }
+        };
+    r.setVariable("a", new BigDecimal(4));
+    r.setVariable("b", new BigDecimal("1.5"));
+    r.setVariable("c", new BigDecimal(6));
+
+    // The long arithmetic reads a and b before it fails, and the functions take them from there.
+    assertEquals(new BigDecimal("19.5"), exp.evaluate(r));
+    assertEquals(3, lookups[0]);
+  }
+
+  @Test
+  public void testReuseLinkedExpression() throws ParserException {
+    LinkedExpression exp = new Parser().parseExpression("max(x, 2) * ?y").link();
+
+    VariableResolver vars = new MapVariableResolver();
+    vars.setVariable("x", BigDecimal.ONE);
+    vars.setVariable("y", VariableModifiers.Prompt, BigDecimal.TEN);
+    assertEquals(new BigDecimal(20), exp.evaluate(vars));
+
+    vars.setVariable("x", new BigDecimal(5));
+    assertEquals(new BigDecimal(50), exp.evaluate(vars));
+  }
+
+  @Test
+  public void testAssignmentAndEvaluationOrder() throws ParserException {
+    Parser p = new Parser();
+    VariableResolver r = new MapVariableResolver();
+    r.setVariable("a", BigDecimal.ONE);
+
+    assertEquals(new BigDecimal(10), p.parseExpression("set('a', 5) + a").link().evaluate(r));
+    assertEquals(new BigDecimal(7), p.parseExpression("b = a + 2").link().evaluate(r));
+    assertEquals(new BigDecimal(7), r.getVariable("b"));
+  }
+
+  @Test
+  public void testUndefinedFunctionFailsToLink() throws ParserException {
+    Expression xp = new Parser().parseExpression("1 + increment(3)");
+    assertThrows(EvaluationException.class, xp::link);
+  }
+
+  @Test
+  public void testParameterCountCheckedAtLinkTime() throws ParserException {
+    Expression xp = new Parser().parseExpression("1 + abs(4, 9)");
+    assertThrows(ParameterException.class, xp::link);
+  }
+
+  @Test
+  public void testParameterTypesCheckedOnEvaluation() throws ParserException {
+    Parser p = new Parser();
+    VariableResolver r = new MapVariableResolver();
+    r.setVariable("x", "abc");
+
+    LinkedExpression literal = p.parseExpression("abs('abc')").link();
+    assertThrows(ParameterException.class, () -> literal.evaluate(r));
+
+    LinkedExpression variable = p.parseExpression("abs(x)").link();
+    assertThrows(ParameterException.class, () -> variable.evaluate(r));
+
+    r.setVariable("x", new BigDecimal(-4));
+    assertEquals(new BigDecimal(4), variable.evaluate(r));
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+public class MapVariableResolverTest {
+  @Test
+  public void testScopeReadsThroughToParent() throws ParserException {
+    var parent = new MapVariableResolver();
+    parent.setVariable("Str", new BigDecimal(12));
+    var scope = new MapVariableResolver(parent);
+
+    assertSame(parent, scope.getParent());
+    assertTrue(scope.containsVariable("str"));
+    assertEquals(new BigDecimal(12), scope.getVariable("STR"));
+    assertEquals(new BigDecimal(12), scope.lookupVariable("Str", VariableModifiers.None));
+    assertFalse(scope.containsVariable("Dex"));
+    assertSame(VariableResolver.UNDEFINED, scope.lookupVariable("Dex", VariableModifiers.None));
+  }
+
+  @Test
+  public void testScopeSeesLaterChangesToParent() throws ParserException {
+    var parent = new MapVariableResolver();
+    var scope = new MapVariableResolver(parent);
+
+    parent.setVariable("a", BigDecimal.ONE);
+
+    assertEquals(BigDecimal.ONE, scope.getVariable("a"));
+  }
+
+  @Test
+  public void testAssignmentsStayInScope() throws ParserException {
+    Parser p = new Parser();
+    var parent = new MapVariableResolver();
+    parent.setVariable("a", BigDecimal.ONE);
+    var scope = new MapVariableResolver(parent);
+
+    assertEquals(new BigDecimal(3), p.parseExpression("a = a + 2").evaluate(scope));
+    assertEquals(new BigDecimal(5), p.parseExpression("b = a + 2").evaluate(scope));
+
+    assertEquals(new BigDecimal(3), scope.getVariable("a"));
+    assertEquals(BigDecimal.ONE, parent.getVariable("a"));
+    assertFalse(parent.containsVariable("b"));
+  }
+
+  @Test
+  public void testNestedScopes() throws ParserException {
+    var root = new MapVariableResolver();
+    root.setVariable("depth", BigDecimal.ZERO);
+    root.setVariable("name", "root");
+
+    MapVariableResolver scope = root;
+    for (int i = 1; i <= 10; i++) {
+      scope = new MapVariableResolver(scope);
+      scope.setVariable("depth", new BigDecimal(i));
+    }
+
+    assertEquals(new BigDecimal(10), scope.getVariable("depth"));
+    assertEquals("root", scope.getVariable("name"));
+    assertEquals(new BigDecimal(9), ((MapVariableResolver) scope.getParent()).getVariable("depth"));
+    assertEquals(BigDecimal.ZERO, root.getVariable("depth"));
+  }
+
+  @Test
+  public void testScopeKeepsConstants() throws ParserException {
+    var scope = new MapVariableResolver(new MapVariableResolver());
+
+    assertEquals(BigDecimal.ONE, new Parser().parseExpression("true").evaluate(scope));
+    assertThrows(ParserException.class, () -> scope.setVariable("false", BigDecimal.ONE));
+  }
+
+  @Test
+  public void testScopeVariables() throws ParserException {
+    var parent = new MapVariableResolver();
+    parent.setVariable("a", BigDecimal.ONE);
+    var scope = new MapVariableResolver(parent);
+    scope.setVariable("A", BigDecimal.TEN);
+    scope.setVariable("b", BigDecimal.TEN);
+
+    assertEquals(Set.of("a", "b", "true", "false"), scope.getVariables());
+    assertEquals(Set.of("a", "true", "false"), parent.getVariables());
+  }
+}
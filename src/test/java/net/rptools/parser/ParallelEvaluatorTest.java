@@ -0,0 +1,76 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import net.rptools.parser.function.EvaluationException;
+import org.junit.jupiter.api.Test;
+
+public class ParallelEvaluatorTest {
+  @Test
+  public void testEvaluateExpressions() throws ParserException {
+    Parser p = new Parser();
+    p.freeze();
+
+    var expressions = new ArrayList<Expression>();
+    var expected = new Object[500];
+    for (int i = 0; i < expected.length; i++) {
+      expressions.add(p.parseExpression("(a = " + i + " * 2) + 1"));
+      expected[i] = new BigDecimal(i * 2 + 1);
+    }
+
+    var pool = new ForkJoinPool(4);
+    try {
+      var evaluator = new ParallelEvaluator(pool, 8);
+      assertArrayEquals(expected, evaluator.evaluate(expressions, MapVariableResolver::new));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testEvaluateBindings() throws ParserException {
+    Parser p = new Parser();
+    p.freeze();
+    Expression xp = p.parseExpression("set('b', x * x) + b");
+
+    var resolvers = new ArrayList<VariableResolver>();
+    var expected = new Object[200];
+    for (int i = 0; i < expected.length; i++) {
+      var resolver = new MapVariableResolver();
+      resolver.setVariable("x", new BigDecimal(i));
+      resolvers.add(resolver);
+      expected[i] = new BigDecimal(2 * i * i);
+    }
+
+    assertArrayEquals(expected, new ParallelEvaluator().evaluate(xp, resolvers));
+  }
+
+  @Test
+  public void testFailure() throws ParserException {
+    Parser p = new Parser();
+    List<Expression> expressions =
+        List.of(p.parseExpression("1 + 1"), p.parseExpression("undefined + 1"));
+
+    assertThrows(
+        EvaluationException.class,
+        () -> new ParallelEvaluator().evaluate(expressions, MapVariableResolver::new));
+  }
+}
@@ -17,6 +17,10 @@ package net.rptools.parser;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import net.rptools.parser.function.Function;
+import net.rptools.parser.function.impl.Max;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvFileSource;
@@ -57,13 +61,47 @@ public class ParserTest {
 
   @ParameterizedTest(name = "{0}; {1}")
   @CsvFileSource(
-          resources = "ParserTest.testFailedParses.csv",
-          numLinesToSkip = 1,
-          delimiter = ';',
-          quoteCharacter = '`',
-          ignoreLeadingAndTrailingWhitespace = false)
+      resources = "ParserTest.testFailedParses.csv",
+      numLinesToSkip = 1,
+      delimiter = ';',
+      quoteCharacter = '`',
+      ignoreLeadingAndTrailingWhitespace = false)
   public void testFailedParses(String label, String input) {
     Parser p = new Parser();
     assertThrows(ParserException.class, () -> p.parseExpression(input));
   }
+
+  @Test
+  public void testFrozenParserRejectsChanges() throws ParserException {
+    Parser p = new Parser();
+    p.freeze();
+
+    assertTrue(p.isFrozen());
+    assertThrows(IllegalStateException.class, () -> p.addFunction(new Max()));
+    assertThrows(IllegalStateException.class, () -> p.setNumericMode(NumericMode.FAST));
+    assertThrows(IllegalStateException.class, () -> p.addTransformer(s -> s));
+    assertThrows(UnsupportedOperationException.class, () -> p.getFunctions().clear());
+    assertEquals(new BigDecimal(3), p.parseExpression("max(1, 3)").evaluate());
+  }
+
+  @Test
+  public void testFunctionsAreReadOnly() throws ParserException {
+    Parser p = new Parser(false);
+    Collection<Function> functions = p.getFunctions();
+
+    assertThrows(UnsupportedOperationException.class, functions::clear);
+    assertTrue(functions.isEmpty());
+    p.addFunction(new Max());
+    assertFalse(functions.isEmpty());
+  }
+
+  @Test
+  public void testWarmUp() throws ParserException {
+    Parser p = new Parser();
+    p.setExpressionCacheSize(10);
+
+    assertEquals(2, p.warmUp(List.of("1 + 2 * x", "1 +", "max(1, 3)")));
+    assertEquals(0, p.getExpressionCache().size());
+    assertEquals(new BigDecimal(3), p.parseExpression("max(1, 3)").evaluate());
+  }
 }
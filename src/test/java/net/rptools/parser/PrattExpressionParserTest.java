@@ -0,0 +1,90 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import net.rptools.parser.ast.AST;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvFileSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class PrattExpressionParserTest {
+  @ParameterizedTest(name = "{0}; {1}; {2}")
+  @CsvFileSource(
+      resources = "ParserTest.testSuccessfulParses.csv",
+      numLinesToSkip = 1,
+      delimiter = ';',
+      quoteCharacter = '`',
+      ignoreLeadingAndTrailingWhitespace = false)
+  public void testSuccessfulParses(String label, String input, String expectedStructure)
+      throws ParserException {
+    AST tree = PrattExpressionParser.parse(input);
+
+    assertEquals(expectedStructure, tree.toStringTree());
+    assertTrue(new Parser().parseExpression(input).getTree().equalsTree(tree));
+  }
+
+  @ParameterizedTest(name = "{0}; {1}")
+  @CsvFileSource(
+      resources = "ParserTest.testFailedParses.csv",
+      numLinesToSkip = 1,
+      delimiter = ';',
+      quoteCharacter = '`',
+      ignoreLeadingAndTrailingWhitespace = false)
+  public void testFailedParses(String label, String input) {
+    assertThrows(ParserException.class, () -> PrattExpressionParser.parse(input));
+  }
+
+  @ParameterizedTest
+  @ValueSource(
+      strings = {
+        "-2^2",
+        "!a && b || c",
+        "a = b = 1 + 2",
+        "1 + a = 2 * 3 || 4",
+        "f(1)(2)",
+        "1 2 3",
+        "0x",
+        "0x1F + 00x1",
+        "? x",
+        "a.b_c + été",
+        "'a\"b' + \"c'd\"",
+        "1\r\n+\t2"
+      })
+  public void testMatchesAntlr(String input) throws ParserException {
+    assertEquals(new Parser().parseExpression(input).getTree(), PrattExpressionParser.parse(input));
+  }
+
+  @ParameterizedTest
+  @ValueSource(
+      strings = {"", "1.", "1 +", "a | b", "a & b", "'abc", "\"abc", "1\r2", "(1", "f(1,)"})
+  public void testRejectedLikeAntlr(String input) {
+    assertThrows(ParserException.class, () -> new Parser().parseExpression(input));
+    assertThrows(ParserException.class, () -> PrattExpressionParser.parse(input));
+  }
+
+  @Test
+  public void testParserBackend() throws ParserException {
+    Parser p = new Parser();
+    p.setBackend(ParserBackend.PRATT);
+
+    assertEquals(ParserBackend.PRATT, p.getBackend());
+    assertEquals(new BigDecimal(7), p.parseExpression("1 + 2 * 3").evaluate());
+    assertThrows(ParserException.class, () -> p.parseExpression("1 +"));
+  }
+}
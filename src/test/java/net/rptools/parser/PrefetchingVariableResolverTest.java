@@ -0,0 +1,165 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import net.rptools.parser.function.EvaluationException;
+import org.junit.jupiter.api.Test;
+
+public class PrefetchingVariableResolverTest {
+  /** Counts the batched fetches and the variables that are still looked up one at a time. */
+  private static class CountingResolver extends MapVariableResolver
+      implements PrefetchingVariableResolver {
+    int fetches;
+    int lookups;
+
+    @Override
+    public Map<String, Object> fetchVariables(Set<String> names) throws ParserException {
+      fetches++;
+      var values = new HashMap<String, Object>();
+      for (String name : names) {
+        Object value = super.lookupVariable(name, VariableModifiers.None);
+        if (value != UNDEFINED) {
+          values.put(name, value);
+        }
+      }
+      return values;
+    }
+
+    @Override
+    public Object lookupVariable(String name, VariableModifiers vType) throws ParserException {
+      lookups++;
+      return super.lookupVariable(name, vType);
+    }
+  }
+
+  /** Completes its fetches when the test says so. */
+  private static final class AsyncResolver extends CountingResolver {
+    final CompletableFuture<Map<String, Object>> pending = new CompletableFuture<>();
+
+    @Override
+    public CompletableFuture<Map<String, Object>> fetchVariablesAsync(Set<String> names) {
+      fetches++;
+      return pending;
+    }
+  }
+
+  @Test
+  public void testGetVariables() throws ParserException {
+    Parser p = new Parser();
+
+    Set<String> variables = p.parseExpression("a + b * a + ?c").getVariables();
+    assertEquals(List.of("a", "b"), List.copyOf(variables));
+    assertEquals(List.of("y"), List.copyOf(p.parseExpression("x = y + 1").getVariables()));
+    assertEquals(Set.of(), p.parseExpression("1 + 2").getVariables());
+  }
+
+  @Test
+  public void testNamesIgnoreCase() throws ParserException {
+    Parser p = new Parser();
+    var resolver = new CountingResolver();
+    resolver.setVariable("str", new BigDecimal(7));
+
+    Expression sum = p.parseExpression("Str + str + STR");
+    assertEquals(List.of("Str"), List.copyOf(sum.getVariables()));
+    assertEquals(new BigDecimal(21), sum.evaluatePrefetched(resolver));
+
+    Expression assigned = p.parseExpression("max(a = 1, A)");
+    Object expected = assigned.evaluate(new MapVariableResolver());
+    assertEquals(expected, assigned.evaluatePrefetched(resolver));
+    assertEquals(0, resolver.lookups);
+  }
+
+  @Test
+  public void testGetVariablesIsUnmodifiable() throws ParserException {
+    Set<String> variables = new Parser().parseExpression("a + b").getVariables();
+
+    assertThrows(UnsupportedOperationException.class, () -> variables.add("c"));
+  }
+
+  @Test
+  public void testEvaluatePrefetched() throws ParserException {
+    Parser p = new Parser();
+    var resolver = new CountingResolver();
+    resolver.setVariable("a", new BigDecimal(2));
+    resolver.setVariable("b", new BigDecimal(3));
+
+    Object result = p.parseExpression("a + b * a + b").evaluatePrefetched(resolver);
+
+    assertEquals(new BigDecimal(11), result);
+    assertEquals(1, resolver.fetches);
+    assertEquals(0, resolver.lookups);
+  }
+
+  @Test
+  public void testUndefinedVariableIsNotLookedUpAgain() throws ParserException {
+    Parser p = new Parser();
+    var resolver = new CountingResolver();
+    Expression expression = p.parseExpression("1 + missing");
+
+    var e = assertThrows(EvaluationException.class, () -> expression.evaluatePrefetched(resolver));
+
+    assertEquals("Undefined variable: missing", e.getMessage());
+    assertEquals(1, resolver.fetches);
+    assertEquals(0, resolver.lookups);
+  }
+
+  @Test
+  public void testAssignmentIsWrittenThrough() throws ParserException {
+    Parser p = new Parser();
+    var resolver = new CountingResolver();
+
+    Object result = p.parseExpression("eval('x = 3') + x").evaluatePrefetched(resolver);
+
+    assertEquals(new BigDecimal(6), result);
+    assertEquals(new BigDecimal(3), resolver.getVariable("x"));
+    assertEquals(0, resolver.lookups);
+  }
+
+  @Test
+  public void testEvaluateAsync() throws Exception {
+    Parser p = new Parser();
+    var resolver = new AsyncResolver();
+
+    CompletableFuture<Object> result = p.parseExpression("a * b").evaluateAsync(resolver);
+    assertFalse(result.isDone());
+
+    resolver.pending.complete(Map.of("a", new BigDecimal(4), "b", new BigDecimal(5)));
+
+    assertEquals(new BigDecimal(20), result.get());
+    assertEquals(1, resolver.fetches);
+    assertEquals(0, resolver.lookups);
+  }
+
+  @Test
+  public void testEvaluateAsyncFailure() throws ParserException {
+    Parser p = new Parser();
+    var resolver = new CountingResolver();
+
+    CompletableFuture<Object> result = p.parseExpression("1 + missing").evaluateAsync(resolver);
+
+    var e = assertThrows(ExecutionException.class, result::get);
+    assertInstanceOf(EvaluationException.class, e.getCause());
+    assertEquals(1, resolver.fetches);
+  }
+}
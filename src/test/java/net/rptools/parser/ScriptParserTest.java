@@ -0,0 +1,125 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
+import org.junit.jupiter.api.Test;
+
+public class ScriptParserTest {
+  @Test
+  public void testParseExpressionsOneByOne() throws ParserException, IOException {
+    Parser p = new Parser();
+    MapVariableResolver r = new MapVariableResolver();
+
+    try (ScriptParser script = p.parseScript(new StringReader("1 + 2\n'a' + 'b'\n\nx = 3 * 2"))) {
+      assertTrue(script.hasNext());
+      assertEquals(new BigDecimal(3), script.next().evaluate(r));
+      assertTrue(script.hasNext());
+      assertEquals("ab", script.next().evaluate(r));
+      assertTrue(script.hasNext());
+      assertEquals(" ( = x ( * 3 2 ) )", script.next().getTree().toStringTree());
+      assertFalse(script.hasNext());
+      assertThrows(NoSuchElementException.class, script::next);
+    }
+  }
+
+  @Test
+  public void testEmptyScript() throws ParserException, IOException {
+    try (ScriptParser script = new Parser().parseScript(new StringReader("  \n"))) {
+      assertFalse(script.hasNext());
+    }
+  }
+
+  @Test
+  public void testSyntaxError() throws ParserException, IOException {
+    try (ScriptParser script = new Parser().parseScript(new StringReader("1 + 2\n)"))) {
+      assertThrows(
+          ParserException.class,
+          () -> {
+            while (script.hasNext()) {
+              script.next();
+            }
+          });
+    }
+  }
+
+  @Test
+  public void testParseFile() throws ParserException, IOException {
+    Path file = Files.createTempFile("script", ".txt");
+    try {
+      Files.writeString(file, "max(1, 5, 3)\nhex(255)\n", StandardCharsets.UTF_8);
+
+      try (ScriptParser script = new Parser().parseScript(file)) {
+        assertEquals(new BigDecimal(5), script.next().evaluate());
+        assertEquals("0xFF", script.next().evaluate());
+        assertFalse(script.hasNext());
+      }
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testParseGeneratedScript() throws ParserException, IOException {
+    int count = 10_000;
+    Parser p = new Parser();
+
+    try (ScriptParser script = p.parseScript(new GeneratedScript(count))) {
+      int i = 0;
+      while (script.hasNext()) {
+        assertEquals(new BigDecimal(i * 2), script.next().evaluate());
+        i++;
+      }
+      assertEquals(count, i);
+    }
+  }
+
+  /** A script of {@code i * 2} for each {@code i}, generated as it is read. */
+  private static final class GeneratedScript extends Reader {
+    private final int count;
+    private int line = 0;
+    private String pending = "";
+
+    GeneratedScript(int count) {
+      this.count = count;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) {
+      if (pending.isEmpty()) {
+        if (line == count) {
+          return -1;
+        }
+        pending = line++ + " * 2\n";
+      }
+      int n = Math.min(len, pending.length());
+      pending.getChars(0, n, cbuf, off);
+      pending = pending.substring(n);
+      return n;
+    }
+
+    @Override
+    public void close() {}
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.rptools.parser.function.AbstractFunction;
+import net.rptools.parser.function.EvaluationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class ShortCircuitEvaluationTest {
+  private final AtomicInteger calls = new AtomicInteger();
+  private Parser parser;
+
+  @BeforeEach
+  public void setUp() {
+    parser = new Parser();
+    parser.addFunction(
+        new AbstractFunction(0, 0, "touch") {
+          @Override
+          public Object childEvaluate(
+              Parser parser, VariableResolver resolver, String functionName, List<Object> params) {
+            calls.incrementAndGet();
+            return BigDecimal.ONE;
+          }
+        });
+  }
+
+  private Object evaluate(String evaluator, String input) throws ParserException {
+    Expression xp = parser.parseExpression(input);
+    return switch (evaluator) {
+      case "tree" -> xp.evaluate();
+      case "linked" -> xp.link().evaluate();
+      case "compiled" -> xp.compile().evaluate();
+      case "batch" -> xp.evaluate(new VariableBatch(1))[0];
+      default -> throw new IllegalArgumentException(evaluator);
+    };
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"tree", "linked", "compiled", "batch"})
+  public void testSkipUnneededParameters(String evaluator) throws ParserException {
+    assertEquals(BigDecimal.ZERO, evaluate(evaluator, "0 && touch()"));
+    assertEquals(BigDecimal.ONE, evaluate(evaluator, "1 || touch()"));
+    assertEquals(BigDecimal.ZERO, evaluate(evaluator, "and(1, 0, touch())"));
+    assertEquals(BigDecimal.ONE, evaluate(evaluator, "or(0, 2, touch())"));
+    assertEquals(BigDecimal.ZERO, evaluate(evaluator, "0 && undefined"));
+    assertEquals(0, calls.get());
+
+    assertEquals(BigDecimal.ONE, evaluate(evaluator, "1 && touch()"));
+    assertEquals(BigDecimal.ONE, evaluate(evaluator, "0 || touch()"));
+    assertEquals(2, calls.get());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"tree", "linked", "compiled", "batch"})
+  public void testEvaluatedParametersAreChecked(String evaluator) throws ParserException {
+    assertThrows(EvaluationException.class, () -> evaluate(evaluator, "1 && undefined"));
+    assertThrows(ParserException.class, () -> evaluate(evaluator, "and(1)"));
+  }
+}
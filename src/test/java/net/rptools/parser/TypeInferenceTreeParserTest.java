@@ -0,0 +1,119 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import net.rptools.parser.function.AbstractNumberFunction;
+import net.rptools.parser.function.ValueType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvFileSource;
+
+public class TypeInferenceTreeParserTest {
+  /** Hints that {@code n} is a number and {@code s} is a string. */
+  private static final class HintedResolver extends MapVariableResolver {
+    @Override
+    public ValueType getVariableType(String name) {
+      return switch (name) {
+        case "n" -> ValueType.NUMBER;
+        case "s" -> ValueType.STRING;
+        default -> ValueType.UNKNOWN;
+      };
+    }
+  }
+
+  @ParameterizedTest(name = "{0}; {1}")
+  @CsvFileSource(
+      resources = "EvaluationTest.testSuccessfulEvaluations.csv",
+      numLinesToSkip = 1,
+      delimiter = ';',
+      quoteCharacter = '`',
+      ignoreLeadingAndTrailingWhitespace = false)
+  public void testSpecializedMatchesTreeEvaluation(String label, String input)
+      throws ParserException {
+    Parser p = new Parser();
+    Expression xp = p.parseExpression(input);
+
+    Object expected = xp.evaluate();
+    assertEquals(expected, xp.link(new HintedResolver()).evaluate());
+    assertEquals(expected, xp.compile(new HintedResolver()).evaluate());
+  }
+
+  @Test
+  public void testInferFromLiteralsAndFunctions() throws ParserException {
+    assertEquals(ValueType.NUMBER, inferredType("1 + 2 * 3", new MapVariableResolver()));
+    assertEquals(ValueType.STRING, inferredType("'a' + x", new MapVariableResolver()));
+    assertEquals(ValueType.UNKNOWN, inferredType("x + 1", new MapVariableResolver()));
+    assertEquals(ValueType.BOOLEAN, inferredType("x == 1", new MapVariableResolver()));
+    assertEquals(ValueType.BOOLEAN, inferredType("1 > 2 && x", new MapVariableResolver()));
+    assertEquals(ValueType.STRING, inferredType("hex(255)", new MapVariableResolver()));
+    assertEquals(ValueType.NUMBER, inferredType("x = 1 + 2", new MapVariableResolver()));
+    assertEquals(ValueType.UNKNOWN, inferredType("undefined(1)", new MapVariableResolver()));
+  }
+
+  @Test
+  public void testInferFromVariableHints() throws ParserException {
+    assertEquals(ValueType.NUMBER, inferredType("n + 1", new HintedResolver()));
+    assertEquals(ValueType.STRING, inferredType("n + s", new HintedResolver()));
+    assertEquals(ValueType.UNKNOWN, inferredType("x + n", new HintedResolver()));
+
+    // Assigned variables may change their type, and eval() may assign any variable.
+    assertEquals(ValueType.UNKNOWN, inferredType("set('s', x) + s", new HintedResolver()));
+    assertEquals(ValueType.UNKNOWN, inferredType("eval('x') + s", new HintedResolver()));
+  }
+
+  @Test
+  public void testSpecializedAddition() throws ParserException {
+    Parser p = new Parser();
+    MapVariableResolver r = new HintedResolver();
+    r.setVariable("n", new BigDecimal(2));
+    r.setVariable("s", "a");
+
+    assertEquals(new BigDecimal(3), p.parseExpression("n + 1").link(r).evaluate(r));
+    assertEquals(new BigDecimal(3), p.parseExpression("n + 1").compile(r).evaluate(r));
+    assertEquals("a2", p.parseExpression("s + n").link(r).evaluate(r));
+    assertEquals("a2", p.parseExpression("s + n").compile(r).evaluate(r));
+  }
+
+  @Test
+  public void testNumberFunctionsMayReturnStrings() throws ParserException {
+    Parser p = new Parser();
+    // Taking numbers says nothing about what a function returns.
+    p.addFunction(
+        new AbstractNumberFunction(1, 1, "label") {
+          @Override
+          public Object childEvaluate(
+              Parser parser, VariableResolver resolver, String functionName, List<Object> params) {
+            return "#" + params.get(0);
+          }
+        });
+
+    Expression xp = p.parseExpression("1 + label(2)");
+    assertEquals("1#2", xp.evaluate());
+    assertEquals("1#2", xp.link().evaluate());
+    assertEquals("1#2", xp.compile().evaluate());
+  }
+
+  private static ValueType inferredType(String input, VariableResolver typeHints)
+      throws ParserException {
+    Expression xp = new Parser().parseExpression(input);
+    return new TypeInferenceTreeParser(xp.getParser())
+        .infer(xp.getTree(), typeHints)
+        .get(xp.getTree());
+  }
+}
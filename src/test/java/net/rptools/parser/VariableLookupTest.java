@@ -0,0 +1,197 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.Set;
+import net.rptools.parser.function.EvaluationException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class VariableLookupTest {
+  /** Counts the calls to each way of reading a variable. */
+  private static final class CountingResolver implements VariableResolver {
+    private final MapVariableResolver variables = new MapVariableResolver();
+    int contains;
+    int gets;
+    int lookups;
+
+    @Override
+    public boolean containsVariable(String name) throws ParserException {
+      return containsVariable(name, VariableModifiers.None);
+    }
+
+    @Override
+    public void setVariable(String name, Object value) throws ParserException {
+      variables.setVariable(name, value);
+    }
+
+    @Override
+    public Object getVariable(String variableName) throws ParserException {
+      return getVariable(variableName, VariableModifiers.None);
+    }
+
+    @Override
+    public boolean containsVariable(String name, VariableModifiers vType) throws ParserException {
+      contains++;
+      return variables.containsVariable(name, vType);
+    }
+
+    @Override
+    public void setVariable(String name, VariableModifiers vType, Object value)
+        throws ParserException {
+      variables.setVariable(name, vType, value);
+    }
+
+    @Override
+    public Object getVariable(String variableName, VariableModifiers vType) throws ParserException {
+      gets++;
+      return variables.getVariable(variableName, vType);
+    }
+
+    @Override
+    public Object lookupVariable(String name, VariableModifiers vType) throws ParserException {
+      lookups++;
+      return variables.lookupVariable(name, vType);
+    }
+
+    @Override
+    public Set<String> getVariables() {
+      return variables.getVariables();
+    }
+  }
+
+  /** Keeps numbers in tenths, and only overrides how they are read. */
+  private static final class TenthsResolver extends MapVariableResolver {
+    @Override
+    public Object getVariable(String variableName, VariableModifiers vType) throws ParserException {
+      return ((BigDecimal) super.getVariable(variableName, vType)).movePointLeft(1);
+    }
+  }
+
+  /** Only implements the required methods, so it uses the default lookup. */
+  private static final class MinimalResolver implements VariableResolver {
+    private final MapVariableResolver variables = new MapVariableResolver();
+
+    @Override
+    public boolean containsVariable(String name) throws ParserException {
+      return variables.containsVariable(name);
+    }
+
+    @Override
+    public void setVariable(String name, Object value) throws ParserException {
+      variables.setVariable(name, value);
+    }
+
+    @Override
+    public Object getVariable(String variableName) throws ParserException {
+      return variables.getVariable(variableName);
+    }
+
+    @Override
+    public boolean containsVariable(String name, VariableModifiers vType) throws ParserException {
+      return variables.containsVariable(name, vType);
+    }
+
+    @Override
+    public void setVariable(String name, VariableModifiers vType, Object value)
+        throws ParserException {
+      variables.setVariable(name, vType, value);
+    }
+
+    @Override
+    public Object getVariable(String variableName, VariableModifiers vType) throws ParserException {
+      return variables.getVariable(variableName, vType);
+    }
+
+    @Override
+    public Set<String> getVariables() {
+      return variables.getVariables();
+    }
+  }
+
+  private static Object evaluate(String evaluator, Expression xp, VariableResolver resolver)
+      throws ParserException {
+    return switch (evaluator) {
+      case "tree" -> xp.evaluate(resolver);
+      case "deterministic" -> xp.getDeterministicExpression(resolver).evaluate();
+      case "linked" -> xp.link().evaluate(resolver);
+      case "compiled" -> xp.compile().evaluate(resolver);
+      default -> throw new IllegalArgumentException(evaluator);
+    };
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"tree", "deterministic", "linked", "compiled"})
+  public void testOneCallPerVariableReference(String evaluator) throws ParserException {
+    Expression xp = new Parser().parseExpression("a + b * a + ?c");
+
+    var r = new CountingResolver();
+    r.setVariable("a", new BigDecimal(2));
+    r.setVariable("b", new BigDecimal(3));
+    r.setVariable("c", BigDecimal.ONE);
+    assertEquals(new BigDecimal(9), evaluate(evaluator, xp, r));
+
+    assertEquals(4, r.lookups);
+    assertEquals(0, r.contains);
+    assertEquals(0, r.gets);
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"tree", "deterministic", "linked", "compiled"})
+  public void testDefaultLookup(String evaluator) throws ParserException {
+    Expression xp = new Parser().parseExpression("a + b");
+
+    var r = new MinimalResolver();
+    r.setVariable("a", BigDecimal.ONE);
+    r.setVariable("b", BigDecimal.TEN);
+    assertEquals(new BigDecimal(11), evaluate(evaluator, xp, r));
+
+    Expression undefined = new Parser().parseExpression("a + c");
+    var e = assertThrows(EvaluationException.class, () -> evaluate(evaluator, undefined, r));
+    assertEquals("Undefined variable: c", e.getMessage());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"tree", "deterministic", "linked", "compiled"})
+  public void testOverriddenGetVariable(String evaluator) throws ParserException {
+    Expression xp = new Parser().parseExpression("a + b");
+
+    var r = new TenthsResolver();
+    r.setVariable("a", new BigDecimal(10));
+    r.setVariable("b", new BigDecimal(25));
+    assertEquals(new BigDecimal("3.5"), evaluate(evaluator, xp, r));
+    assertEquals(new BigDecimal("1.0"), r.lookupVariable("a", VariableModifiers.None));
+    assertSame(VariableResolver.UNDEFINED, r.lookupVariable("c", VariableModifiers.None));
+
+    assertEquals(new BigDecimal("3.5"), evaluate(evaluator, xp, new MapVariableResolver(r)));
+  }
+
+  @Test
+  public void testLookupVariable() throws ParserException {
+    for (VariableResolver r :
+        new VariableResolver[] {
+          new MapVariableResolver(), new ArrayVariableResolver(), new MinimalResolver()
+        }) {
+      r.setVariable("x", null);
+      assertNull(r.lookupVariable("X", VariableModifiers.None));
+      assertSame(VariableResolver.UNDEFINED, r.lookupVariable("y", VariableModifiers.None));
+      assertEquals(BigDecimal.ONE, r.lookupVariable("true", VariableModifiers.None));
+    }
+  }
+}
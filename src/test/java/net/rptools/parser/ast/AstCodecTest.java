@@ -0,0 +1,169 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser.ast;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import net.rptools.parser.Expression;
+import net.rptools.parser.MapVariableResolver;
+import net.rptools.parser.Parser;
+import net.rptools.parser.ParserException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvFileSource;
+
+public class AstCodecTest {
+  @ParameterizedTest(name = "{0}; {1}; {2}")
+  @CsvFileSource(
+      resources = "/net/rptools/parser/ParserTest.testSuccessfulParses.csv",
+      numLinesToSkip = 1,
+      delimiter = ';',
+      quoteCharacter = '`',
+      ignoreLeadingAndTrailingWhitespace = false)
+  public void testRoundTrip(String label, String input, String expectedStructure)
+      throws ParserException, IOException {
+    AST tree = new Parser().parseExpression(input).getTree();
+
+    assertEquals(tree, roundTrip(tree));
+  }
+
+  @Test
+  public void testNumbersKeepTheirScale() throws IOException {
+    for (String number : List.of("0", "1.50", "-7", "1E+3", "123456789012345678901234567890.5")) {
+      var literal = new AST.NumberLiteral(number, new BigDecimal(number));
+      AST decoded = roundTrip(literal);
+
+      assertEquals(literal, decoded);
+      assertEquals(literal.value().scale(), ((AST.NumberLiteral) decoded).value().scale());
+    }
+  }
+
+  @Test
+  public void testStringsAreStoredOnce() throws ParserException, IOException {
+    var parser = new Parser();
+    String name = "longVariableName";
+    int once = encode(parser.parseExpression(name).getTree()).length;
+    int thrice = encode(parser.parseExpression(name + "+" + name + "+" + name).getTree()).length;
+
+    assertTrue(thrice < once + 16, "Repeated names must not be stored again");
+  }
+
+  @Test
+  public void testExpressionsInSequence() throws ParserException, IOException {
+    var parser = new Parser();
+    var out = new ByteArrayOutputStream();
+    parser.parseExpression("x = 1 + 2").writeTo(out);
+    parser.parseExpression("max(x, 5) * 'a'").writeTo(out);
+    parser.parseExpression("x * 2").writeTo(out);
+
+    var in = new ByteArrayInputStream(out.toByteArray());
+    var resolver = new MapVariableResolver();
+    assertEquals(new BigDecimal(3), parser.readExpression(in).evaluate(resolver));
+    Expression second = parser.readExpression(in);
+    assertEquals(" ( * ( max x 5 ) 'a' )", second.getTree().toStringTree());
+    assertEquals(new BigDecimal(6), parser.readExpression(in).evaluate(resolver));
+    assertEquals(-1, in.read());
+  }
+
+  @Test
+  public void testRejectInvalidInput() throws IOException {
+    byte[] valid = encode(new AST.Variable("x", "x"));
+
+    byte[] wrongMagic = valid.clone();
+    wrongMagic[0] = 'X';
+    assertThrows(IOException.class, () -> AstCodec.read(new ByteArrayInputStream(wrongMagic)));
+
+    byte[] wrongVersion = valid.clone();
+    wrongVersion[4] = (byte) (AstCodec.VERSION + 1);
+    assertThrows(IOException.class, () -> AstCodec.read(new ByteArrayInputStream(wrongVersion)));
+
+    byte[] truncated = Arrays.copyOf(valid, valid.length - 1);
+    assertThrows(IOException.class, () -> AstCodec.read(new ByteArrayInputStream(truncated)));
+  }
+
+  @Test
+  public void testRejectCorruptLengths() {
+    // Each claims almost 2^31 elements or bytes, which must not be allocated up front.
+    byte[] stringCount = {'R', 'P', 'T', 'A', 1, -1, -1, -1, -1, 7};
+    assertThrows(IOException.class, () -> AstCodec.read(new ByteArrayInputStream(stringCount)));
+
+    byte[] stringLength = {'R', 'P', 'T', 'A', 1, 1, -1, -1, -1, -1, 7, 'x'};
+    assertThrows(IOException.class, () -> AstCodec.read(new ByteArrayInputStream(stringLength)));
+
+    byte[] numberLength = {
+      'R', 'P', 'T', 'A', 1, 1, 1, '1', AstCodec.NUMBER_LITERAL, 0, 0, -1, -1, -1, -1, 7, 1
+    };
+    assertThrows(IOException.class, () -> AstCodec.read(new ByteArrayInputStream(numberLength)));
+
+    byte[] parameterCount = {
+      'R', 'P', 'T', 'A', 1, 1, 1, 'f', AstCodec.FUNCTION_CALL, 0, 0, -1, -1, -1, -1, 7
+    };
+    assertThrows(IOException.class, () -> AstCodec.read(new ByteArrayInputStream(parameterCount)));
+
+    // A string index of 2^31, which does not fit an int.
+    byte[] stringIndex = {
+      'R', 'P', 'T', 'A', 1, 1, 1, 'x', AstCodec.VARIABLE, -128, -128, -128, -128, 8, 0
+    };
+    assertThrows(IOException.class, () -> AstCodec.read(new ByteArrayInputStream(stringIndex)));
+
+    byte[] noDigits = {'R', 'P', 'T', 'A', 1, 1, 1, '1', AstCodec.NUMBER_LITERAL, 0, 0, 0};
+    assertThrows(IOException.class, () -> AstCodec.read(new ByteArrayInputStream(noDigits)));
+
+    // The fifth byte of a variable-length integer only has room for four more bits, so this must
+    // not wrap around to the index 0.
+    byte[] overlongVarint = {
+      'R', 'P', 'T', 'A', 1, 1, 1, 'x', AstCodec.VARIABLE, -128, -128, -128, -128, 0x10, 0
+    };
+    assertThrows(IOException.class, () -> AstCodec.read(new ByteArrayInputStream(overlongVarint)));
+  }
+
+  @Test
+  public void testNestingLimit() throws IOException {
+    AST tree = new AST.Variable("x", "x");
+    for (int i = 0; i < AstCodec.MAX_DEPTH; i++) {
+      tree = new AST.Unary("-", UnaryOperator.Minus, tree);
+    }
+    byte[] deepest = encode(tree);
+    // Comparing trees this deep would overflow the stack in equals().
+    assertArrayEquals(deepest, encode(AstCodec.read(new ByteArrayInputStream(deepest))));
+
+    AST tooDeep = new AST.Unary("-", UnaryOperator.Minus, tree);
+    assertThrows(IOException.class, () -> encode(tooDeep));
+
+    // The strings "-" and "x" take up the ten bytes after the header, then the nodes follow.
+    byte[] deeper = new byte[deepest.length + 3];
+    System.arraycopy(deepest, 0, deeper, 0, 10);
+    deeper[10] = AstCodec.UNARY;
+    System.arraycopy(deepest, 10, deeper, 13, deepest.length - 10);
+    var e = assertThrows(IOException.class, () -> AstCodec.read(new ByteArrayInputStream(deeper)));
+    assertEquals("Expression nested too deeply", e.getMessage());
+  }
+
+  private static byte[] encode(AST tree) throws IOException {
+    var out = new ByteArrayOutputStream();
+    AstCodec.write(tree, out);
+    return out.toByteArray();
+  }
+
+  private static AST roundTrip(AST tree) throws IOException {
+    return AstCodec.read(new ByteArrayInputStream(encode(tree)));
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * RPTools Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.parser.ast;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import net.rptools.parser.MapVariableResolver;
+import net.rptools.parser.Parser;
+import net.rptools.parser.ParserBackend;
+import net.rptools.parser.ParserException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvFileSource;
+
+public class AstInternerTest {
+  @ParameterizedTest(name = "{0}; {1}; {2}")
+  @CsvFileSource(
+      resources = "/net/rptools/parser/ParserTest.testSuccessfulParses.csv",
+      numLinesToSkip = 1,
+      delimiter = ';',
+      quoteCharacter = '`',
+      ignoreLeadingAndTrailingWhitespace = false)
+  public void testInternedTreesAreEqual(String label, String input, String expectedStructure)
+      throws ParserException {
+    AST tree = new Parser().parseExpression(input).getTree();
+
+    for (ParserBackend backend : ParserBackend.values()) {
+      Parser p = new Parser();
+      p.setBackend(backend);
+      p.setAstInternerSize(1000);
+      AST interned = p.parseExpression(input).getTree();
+
+      assertEquals(tree, interned);
+      assertSame(interned, p.parseExpression(input).getTree());
+    }
+  }
+
+  @Test
+  public void testEqualSubtreesAreShared() throws ParserException {
+    Parser p = new Parser();
+    p.setAstInternerSize(1000);
+
+    var sum = (AST.Binary) p.parseExpression("Strength + max(a, 1)").getTree();
+    var call = (AST.FunctionCall) p.parseExpression("max(a, 1)").getTree();
+    var product = (AST.Binary) p.parseExpression("Strength * 2").getTree();
+
+    assertSame(sum.rhs(), call);
+    assertSame(sum.lhs(), product.lhs());
+    assertTrue(sum.rhs().equalsTree(call));
+  }
+
+  @Test
+  public void testDifferentTextIsNotShared() throws ParserException {
+    Parser p = new Parser();
+    p.setAstInternerSize(1000);
+
+    AST one = p.parseExpression("1").getTree();
+    AST scaled = p.parseExpression("1.0").getTree();
+    AST hex = p.parseExpression("0x1").getTree();
+
+    assertNotSame(one, scaled);
+    assertNotSame(one, hex);
+    assertNotEquals(one, hex);
+  }
+
+  @Test
+  public void testChildrenAreComparedByIdentity() {
+    var interner = new AstInterner(100);
+    var a = interner.intern(new AST.Variable("a", "a"));
+    var one = interner.intern(new AST.NumberLiteral("1", BigDecimal.ONE));
+    var sum = interner.intern(new AST.Binary("+", BinaryOperator.Plus, a, one));
+
+    assertSame(sum, interner.intern(new AST.Binary("+", BinaryOperator.Plus, a, one)));
+    assertSame(a, interner.intern(new AST.Variable("a", "a")));
+
+    // Equal, but the children are not interned, so it can not be matched.
+    var fresh =
+        new AST.Binary(
+            "+",
+            BinaryOperator.Plus,
+            new AST.Variable("a", "a"),
+            new AST.NumberLiteral("1", BigDecimal.ONE));
+    assertSame(fresh, interner.intern(fresh));
+    assertEquals(sum, fresh);
+
+    var call = interner.intern(new AST.FunctionCall("f", "f", List.of(a, one)));
+    assertSame(call, interner.intern(new AST.FunctionCall("f", "f", List.of(a, one))));
+    assertNotSame(call, interner.intern(new AST.FunctionCall("f", "f", List.of(one, a))));
+  }
+
+  @Test
+  public void testClearedWhenFull() {
+    var interner = new AstInterner(2);
+    interner.intern(new AST.Variable("a", "a"));
+    interner.intern(new AST.Variable("b", "b"));
+    assertEquals(2, interner.size());
+
+    interner.intern(new AST.Variable("c", "c"));
+    assertEquals(1, interner.size());
+
+    assertThrows(IllegalArgumentException.class, () -> new AstInterner(0));
+  }
+
+  @Test
+  public void testDeterministicExpressionIsInterned() throws ParserException {
+    Parser p = new Parser();
+    p.setAstInternerSize(1000);
+    AST two = p.parseExpression("2").getTree();
+
+    var r = new MapVariableResolver();
+    r.setVariable("x", new BigDecimal(2));
+    var deterministic = p.parseExpression("x + 1").getDeterministicExpression(r);
+
+    var sum = (AST.Binary) deterministic.getTree();
+    assertSame(two, sum.lhs());
+    assertSame(sum, p.parseExpression("2 + 1").getTree());
+    assertEquals(new BigDecimal(3), deterministic.evaluate());
+  }
+}
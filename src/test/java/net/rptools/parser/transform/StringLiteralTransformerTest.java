@@ -16,6 +16,7 @@ package net.rptools.parser.transform;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.stream.IntStream;
 import org.junit.jupiter.api.Test;
 
 public class StringLiteralTransformerTest {
@@ -41,4 +42,19 @@ public class StringLiteralTransformerTest {
             .getReplaceTransformer()
             .transform(transformer.getRemoveTransformer().transform(input)));
   }
+
+  @Test
+  public void testConcurrentUse() {
+    StringLiteralTransformer transformer = new StringLiteralTransformer();
+    Transformer remove = transformer.getRemoveTransformer();
+    Transformer replace = transformer.getReplaceTransformer();
+
+    IntStream.range(0, 1000)
+        .parallel()
+        .forEach(
+            i -> {
+              String input = "concat('a" + i + "', \"b" + i + "\")";
+              assertEquals(input, replace.transform(remove.transform(input)));
+            });
+  }
 }